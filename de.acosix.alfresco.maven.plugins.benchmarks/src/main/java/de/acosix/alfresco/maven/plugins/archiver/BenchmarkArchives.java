@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Utility methods to create archives with a realistic structure for benchmarks.
+ *
+ * @author Axel Faust
+ */
+public final class BenchmarkArchives
+{
+
+    public static final String FILE_MAPPINGS = "include.default=true\n" //
+            + "/web/share=/share\n" //
+            + "/web/share/components=/components\n" //
+            + "/web/share/modules=/modules\n" //
+            + "/web/share/res=/res\n" //
+            + "/config/alfresco/extension=/WEB-INF/classes/alfresco/extension\n" //
+            + "/config/alfresco/extension/templates=/WEB-INF/classes/alfresco/templates\n" //
+            + "/config/alfresco/messages=/WEB-INF/classes/alfresco/messages\n" //
+            + "/config/META-INF/resources=/WEB-INF/classes/META-INF/resources\n" //
+            + "/lib/native=/WEB-INF/lib/native\n" //
+            + "/web/WEB-INF=/WEB-INF\n";
+
+    private static final String[] AMP_DIRECTORIES = { "config/alfresco/module/benchmark/context", "config/alfresco/extension/templates",
+            "config/alfresco/messages", "config/META-INF/resources/benchmark/components", "lib", "web/share/components/dashlets",
+            "web/share/modules/documentlibrary", "web/share/res/images", "web/scripts", "web/css", "web/images", "licenses" };
+
+    private static final String[] WAR_DIRECTORIES = { "WEB-INF/classes/alfresco/subsystems/Authentication", "WEB-INF/classes/alfresco/model",
+            "WEB-INF/classes/alfresco/messages", "WEB-INF/classes/alfresco/templates/webscripts", "WEB-INF/lib", "scripts", "css",
+            "images/filetypes" };
+
+    private static final String[] EXTENSIONS = { ".xml", ".properties", ".js", ".ftl", ".css", ".png", ".jar" };
+
+    private BenchmarkArchives()
+    {
+        // NO-OP
+    }
+
+    /**
+     * Creates an AMP with a realistic file mapping table.
+     *
+     * @param ampFile
+     *            the AMP file to create
+     * @param entryCount
+     *            the number of file entries in addition to the module.properties and file-mapping.properties
+     */
+    public static void createAmp(final File ampFile, final int entryCount) throws IOException
+    {
+        final Random random = new Random(entryCount);
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(ampFile))
+        {
+            addEntry(zos, AmpUnArchiver.MODULE_PROPERTIES,
+                    "module.id=benchmark-module\nmodule.version=1.0.0\nmodule.title=Benchmark\nmodule.description=Benchmark module\n"
+                            .getBytes(StandardCharsets.UTF_8));
+            addEntry(zos, AmpUnArchiver.FILE_MAPPING_PROPERTIES, FILE_MAPPINGS.getBytes(StandardCharsets.UTF_8));
+            for (int idx = 0; idx < entryCount; idx++)
+            {
+                final String directory = AMP_DIRECTORIES[idx % AMP_DIRECTORIES.length];
+                final String extension = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+                addEntry(zos, directory + "/sub" + (idx % 7) + "/file" + idx + extension, content(random, 256));
+            }
+        }
+    }
+
+    /**
+     * Creates a web application archive containing a version.properties and manifest.
+     *
+     * @param warFile
+     *            the web application archive to create
+     * @param entryCount
+     *            the number of file entries in addition to the version.properties and manifest
+     */
+    public static void createWar(final File warFile, final int entryCount) throws IOException
+    {
+        final Random random = new Random(entryCount);
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(warFile))
+        {
+            addEntry(zos, AmpUnArchiver.MANIFEST_FILE,
+                    "Manifest-Version: 1.0\nSpecification-Version: 7.4.0\nImplementation-Title: Alfresco Repository Community\n\n"
+                            .getBytes(StandardCharsets.UTF_8));
+            for (int idx = 0; idx < entryCount; idx++)
+            {
+                final String directory = WAR_DIRECTORIES[idx % WAR_DIRECTORIES.length];
+                final String extension = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+                addEntry(zos, directory + "/sub" + (idx % 13) + "/file" + idx + extension, content(random, 1024));
+            }
+            // version.properties is located towards the end of real WARs as WEB-INF/classes is added late
+            addEntry(zos, AmpUnArchiver.VERSION_PROPERTIES,
+                    "version.major=7\nversion.minor=4\nversion.revision=0\nversion.edition=Community\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Determines the total uncompressed size of all entries of an archive.
+     *
+     * @param archiveFile
+     *            the archive
+     * @return the total uncompressed size in bytes
+     */
+    public static long uncompressedSize(final File archiveFile) throws IOException
+    {
+        try (ZipFile zipFile = new ZipFile(archiveFile))
+        {
+            return Collections.list(zipFile.getEntries()).stream().mapToLong(ZipArchiveEntry::getSize).filter(size -> size > 0).sum();
+        }
+    }
+
+    /**
+     * Deletes a directory including all its content.
+     *
+     * @param directory
+     *            the directory to delete
+     */
+    public static void deleteRecursively(final Path directory) throws IOException
+    {
+        if (directory != null && Files.exists(directory))
+        {
+            try (Stream<Path> paths = Files.walk(directory))
+            {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void addEntry(final ZipArchiveOutputStream zos, final String name, final byte[] content) throws IOException
+    {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        zos.putArchiveEntry(entry);
+        zos.write(content);
+        zos.closeArchiveEntry();
+    }
+
+    private static byte[] content(final Random random, final int maxSize)
+    {
+        final byte[] content = new byte[1 + random.nextInt(maxSize)];
+        for (int idx = 0; idx < content.length; idx++)
+        {
+            content[idx] = (byte) ('a' + random.nextInt(16));
+        }
+        return content;
+    }
+}
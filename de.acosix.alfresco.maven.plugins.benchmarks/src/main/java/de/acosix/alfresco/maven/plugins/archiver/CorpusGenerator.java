@@ -0,0 +1,441 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * Instances of this class synthesize corpora of AMPs and web application archives with a configurable number of entries, distribution of
+ * entry sizes, file mappings and chains of module dependencies. Generated content is deterministic for a given seed, with text-like entries
+ * being compressible and binary entries, e.g. JARs or images, being effectively incompressible, similar to real-world archives.
+ *
+ * @author Axel Faust
+ */
+public class CorpusGenerator
+{
+
+    /**
+     * The supported distributions of entry sizes.
+     *
+     * @author Axel Faust
+     */
+    public static enum SizeDistribution
+    {
+        /**
+         * Only small entries up to 4 KiB, e.g. configuration files and scripts.
+         */
+        SMALL(new int[] { 100 }, new int[] { 4 * 1024 }),
+        /**
+         * Mostly small entries, some medium-sized entries up to 64 KiB and few large entries up to 1 MiB, i.e. the typical mix of
+         * configuration, web resources and libraries of an Alfresco module.
+         */
+        MIXED(new int[] { 90, 9, 1 }, new int[] { 4 * 1024, 64 * 1024, 1024 * 1024 }),
+        /**
+         * Mostly medium-sized and large entries, e.g. a module bundling many libraries.
+         */
+        LARGE(new int[] { 40, 45, 15 }, new int[] { 8 * 1024, 256 * 1024, 4 * 1024 * 1024 });
+
+        private final int[] percentages;
+
+        private final int[] maxSizes;
+
+        private SizeDistribution(final int[] percentages, final int[] maxSizes)
+        {
+            this.percentages = percentages;
+            this.maxSizes = maxSizes;
+        }
+
+        private int nextSize(final Random random)
+        {
+            final int percentile = random.nextInt(100);
+            int cumulative = 0;
+            int bucket = 0;
+            for (int idx = 0; idx < this.percentages.length; idx++)
+            {
+                cumulative += this.percentages[idx];
+                if (percentile < cumulative)
+                {
+                    bucket = idx;
+                    break;
+                }
+            }
+            final int minSize = bucket == 0 ? 1 : this.maxSizes[bucket - 1];
+            return minSize + random.nextInt(this.maxSizes[bucket] - minSize);
+        }
+    }
+
+    // source directory in AMP => directory in WAR, reflecting the default file mappings
+    private static final String[][] AMP_DIRECTORIES = { { "config/alfresco/module/%s/context", "WEB-INF/classes" },
+            { "config/alfresco/extension/templates/webscripts/%s", "WEB-INF/classes" }, { "config/alfresco/messages/%s", "WEB-INF/classes" },
+            { "lib", "WEB-INF/lib" }, { "web/scripts/%s", "scripts" }, { "web/css/%s", "css" }, { "web/images/%s", "images" },
+            { "web/jsp/%s", "jsp" }, { "licenses", "WEB-INF/licenses" } };
+
+    private static final String[] WAR_DIRECTORIES = { "WEB-INF/classes/alfresco/subsystems", "WEB-INF/classes/alfresco/model",
+            "WEB-INF/classes/alfresco/messages", "WEB-INF/classes/alfresco/templates/webscripts", "WEB-INF/lib", "scripts", "css",
+            "images/filetypes", "jsp" };
+
+    private static final String[] TEXT_EXTENSIONS = { ".xml", ".properties", ".js", ".ftl", ".css", ".jsp" };
+
+    private static final String[] BINARY_EXTENSIONS = { ".jar", ".png", ".gif" };
+
+    private static final int BINARY_PERCENTAGE = 15;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private int entryCount = 1000;
+
+    private SizeDistribution sizeDistribution = SizeDistribution.MIXED;
+
+    private Properties fileMappings;
+
+    private long seed = 42;
+
+    /**
+     * @param entryCount
+     *            the number of file entries of each generated archive
+     */
+    public void setEntryCount(final int entryCount)
+    {
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * @return the entryCount
+     */
+    public int getEntryCount()
+    {
+        return this.entryCount;
+    }
+
+    /**
+     * @param sizeDistribution
+     *            the distribution of entry sizes
+     */
+    public void setSizeDistribution(final SizeDistribution sizeDistribution)
+    {
+        this.sizeDistribution = sizeDistribution;
+    }
+
+    /**
+     * @return the sizeDistribution
+     */
+    public SizeDistribution getSizeDistribution()
+    {
+        return this.sizeDistribution;
+    }
+
+    /**
+     * @param fileMappings
+     *            the custom file mappings to include in generated AMPs - if not set, generated AMPs use the default file mappings
+     */
+    public void setFileMappings(final Properties fileMappings)
+    {
+        this.fileMappings = fileMappings;
+    }
+
+    /**
+     * @return the fileMappings
+     */
+    public Properties getFileMappings()
+    {
+        return this.fileMappings;
+    }
+
+    /**
+     * @param seed
+     *            the seed for the generated structure and content
+     */
+    public void setSeed(final long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the seed
+     */
+    public long getSeed()
+    {
+        return this.seed;
+    }
+
+    /**
+     * Generates the exploded source directory of a module as it would be packaged into an AMP.
+     *
+     * @param directory
+     *            the directory to generate
+     * @param moduleId
+     *            the ID of the module
+     * @param dependencies
+     *            the dependencies of the module as module IDs mapped to version ranges
+     * @return the total size of all generated files in bytes
+     */
+    public long generateModuleDirectory(final File directory, final String moduleId, final Map<String, String> dependencies)
+            throws IOException
+    {
+        final Path root = directory.toPath();
+        long totalSize = 0;
+        totalSize += this.writeFile(root.resolve(AmpUnArchiver.MODULE_PROPERTIES), this.buildModuleProperties(moduleId, dependencies));
+        if (this.fileMappings != null)
+        {
+            totalSize += this.writeFile(root.resolve(AmpUnArchiver.FILE_MAPPING_PROPERTIES), this.buildFileMappings());
+        }
+
+        final Random random = new Random(this.seed ^ moduleId.hashCode());
+        final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        for (int idx = 0; idx < this.entryCount; idx++)
+        {
+            final String name = this.nextAmpEntryName(random, moduleId, idx);
+            final Path file = root.resolve(name);
+            Files.createDirectories(file.getParent());
+            try (OutputStream os = Files.newOutputStream(file))
+            {
+                totalSize += this.writeContent(os, random, name, buffer);
+            }
+        }
+        return totalSize;
+    }
+
+    /**
+     * Generates an AMP.
+     *
+     * @param ampFile
+     *            the AMP to generate
+     * @param moduleId
+     *            the ID of the module
+     * @param dependencies
+     *            the dependencies of the module as module IDs mapped to version ranges
+     * @return the total uncompressed size of all entries in bytes
+     */
+    public long generateAmp(final File ampFile, final String moduleId, final Map<String, String> dependencies) throws IOException
+    {
+        final Random random = new Random(this.seed ^ moduleId.hashCode());
+        final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        long totalSize = 0;
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(ampFile))
+        {
+            totalSize += this.addEntry(zos, AmpUnArchiver.MODULE_PROPERTIES, this.buildModuleProperties(moduleId, dependencies));
+            if (this.fileMappings != null)
+            {
+                totalSize += this.addEntry(zos, AmpUnArchiver.FILE_MAPPING_PROPERTIES, this.buildFileMappings());
+            }
+
+            for (int idx = 0; idx < this.entryCount; idx++)
+            {
+                final String name = this.nextAmpEntryName(random, moduleId, idx);
+                zos.putArchiveEntry(new ZipArchiveEntry(name));
+                totalSize += this.writeContent(zos, random, name, buffer);
+                zos.closeArchiveEntry();
+            }
+        }
+        return totalSize;
+    }
+
+    /**
+     * Generates a chain of AMPs in which each module depends on the module generated before it.
+     *
+     * @param directory
+     *            the directory in which to generate the AMPs
+     * @param modulePrefix
+     *            the prefix for the IDs of the modules
+     * @param chainLength
+     *            the number of AMPs to generate
+     * @return the generated AMPs, in dependency order
+     */
+    public List<File> generateAmpChain(final File directory, final String modulePrefix, final int chainLength) throws IOException
+    {
+        final List<File> ampFiles = new ArrayList<>(chainLength);
+        String previousModuleId = null;
+        for (int idx = 0; idx < chainLength; idx++)
+        {
+            final String moduleId = modulePrefix + "-" + idx;
+            final Map<String, String> dependencies = new TreeMap<>();
+            if (previousModuleId != null)
+            {
+                dependencies.put(previousModuleId, "1.0-");
+            }
+            final File ampFile = new File(directory, moduleId + ".amp");
+            this.generateAmp(ampFile, moduleId, dependencies);
+            ampFiles.add(ampFile);
+            previousModuleId = moduleId;
+        }
+        return ampFiles;
+    }
+
+    /**
+     * Generates a web application archive including a version.properties and manifest.
+     *
+     * @param warFile
+     *            the web application archive to generate
+     * @return the total uncompressed size of all entries in bytes
+     */
+    public long generateWar(final File warFile) throws IOException
+    {
+        final Random random = new Random(this.seed);
+        final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        long totalSize = 0;
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(warFile))
+        {
+            totalSize += this.addEntry(zos, AmpUnArchiver.MANIFEST_FILE, this.buildManifest());
+            for (int idx = 0; idx < this.entryCount; idx++)
+            {
+                final String name = this.nextWarEntryName(random, idx);
+                zos.putArchiveEntry(new ZipArchiveEntry(name));
+                totalSize += this.writeContent(zos, random, name, buffer);
+                zos.closeArchiveEntry();
+            }
+            totalSize += this.addEntry(zos, AmpUnArchiver.VERSION_PROPERTIES, this.buildVersionProperties());
+        }
+        return totalSize;
+    }
+
+    /**
+     * Generates an exploded web application only containing a version.properties and manifest.
+     *
+     * @param directory
+     *            the root directory of the web application
+     */
+    public void generateWebappDirectory(final File directory) throws IOException
+    {
+        final Path root = directory.toPath();
+        this.writeFile(root.resolve(AmpUnArchiver.VERSION_PROPERTIES), this.buildVersionProperties());
+        this.writeFile(root.resolve(AmpUnArchiver.MANIFEST_FILE), this.buildManifest());
+    }
+
+    private String nextAmpEntryName(final Random random, final String moduleId, final int idx)
+    {
+        final String[] directory = AMP_DIRECTORIES[random.nextInt(AMP_DIRECTORIES.length)];
+        final String extension = this.nextExtension(random, directory[0]);
+        return String.format(Locale.ENGLISH, directory[0], moduleId) + "/sub" + (idx % 17) + "/file" + idx + extension;
+    }
+
+    private String nextWarEntryName(final Random random, final int idx)
+    {
+        final String directory = WAR_DIRECTORIES[random.nextInt(WAR_DIRECTORIES.length)];
+        return directory + "/sub" + (idx % 23) + "/file" + idx + this.nextExtension(random, directory);
+    }
+
+    private String nextExtension(final Random random, final String directory)
+    {
+        final String extension;
+        if (directory.endsWith("lib"))
+        {
+            extension = ".jar";
+        }
+        else if (random.nextInt(100) < BINARY_PERCENTAGE)
+        {
+            extension = BINARY_EXTENSIONS[random.nextInt(BINARY_EXTENSIONS.length)];
+        }
+        else
+        {
+            extension = TEXT_EXTENSIONS[random.nextInt(TEXT_EXTENSIONS.length)];
+        }
+        return extension;
+    }
+
+    private long writeContent(final OutputStream os, final Random random, final String name, final byte[] buffer) throws IOException
+    {
+        final boolean binary = name.endsWith(".jar") || name.endsWith(".png") || name.endsWith(".gif");
+        final int size = this.sizeDistribution.nextSize(random);
+        int remaining = size;
+        while (remaining > 0)
+        {
+            final int chunk = Math.min(remaining, buffer.length);
+            if (binary)
+            {
+                random.nextBytes(buffer);
+            }
+            else
+            {
+                // limited alphabet yields compression ratios similar to source code / markup
+                for (int idx = 0; idx < chunk; idx++)
+                {
+                    buffer[idx] = (byte) ('a' + random.nextInt(12));
+                }
+            }
+            os.write(buffer, 0, chunk);
+            remaining -= chunk;
+        }
+        return size;
+    }
+
+    private long addEntry(final ZipArchiveOutputStream zos, final String name, final byte[] content) throws IOException
+    {
+        zos.putArchiveEntry(new ZipArchiveEntry(name));
+        zos.write(content);
+        zos.closeArchiveEntry();
+        return content.length;
+    }
+
+    private long writeFile(final Path file, final byte[] content) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+        return content.length;
+    }
+
+    private byte[] buildModuleProperties(final String moduleId, final Map<String, String> dependencies) throws IOException
+    {
+        final Properties properties = new Properties();
+        properties.setProperty(ModuleDetails.PROP_ID, moduleId);
+        properties.setProperty(ModuleDetails.PROP_VERSION, "1.0.0");
+        properties.setProperty(ModuleDetails.PROP_TITLE, "Synthetic module " + moduleId);
+        properties.setProperty(ModuleDetails.PROP_DESCRIPTION, "Synthetic module for benchmarks");
+        if (dependencies != null)
+        {
+            dependencies.forEach((id, versions) -> properties.setProperty(ModuleDetails.PROP_DEPENDS_PREFIX + id, versions));
+        }
+        return store(properties);
+    }
+
+    private byte[] buildFileMappings() throws IOException
+    {
+        return store(this.fileMappings);
+    }
+
+    private byte[] buildVersionProperties()
+    {
+        return "version.major=7\nversion.minor=4\nversion.revision=0\nversion.edition=Community\n".getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] buildManifest()
+    {
+        return "Manifest-Version: 1.0\nSpecification-Version: 7.4.0\nImplementation-Title: Alfresco Repository Community\n\n"
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] store(final Properties properties) throws IOException
+    {
+        final StringWriter writer = new StringWriter();
+        properties.store(writer, null);
+        return writer.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
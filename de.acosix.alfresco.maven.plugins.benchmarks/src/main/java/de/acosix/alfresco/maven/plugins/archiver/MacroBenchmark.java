@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Macro benchmark timing the packaging of AMPs via {@link AmpArchiver} and the installation of AMPs via {@link AmpUnArchiver} /
+ * {@link AmpBatchInstaller} on a synthetic corpus of realistic size, including the I/O which micro benchmarks deliberately avoid. For
+ * each scenario, the throughput in entries and megabytes per second as well as the peak heap usage are reported, both on the console and
+ * as a JSON result file.
+ *
+ * <p>
+ * Supported arguments (all optional) are {@code --entries=1000,10000}, {@code --distribution=MIXED}, {@code --chain=5},
+ * {@code --warmup=1}, {@code --iterations=3}, {@code --customMappings=true} and {@code --result=<file>}.
+ * </p>
+ *
+ * @author Axel Faust
+ */
+public class MacroBenchmark
+{
+
+    private static final double MEGABYTE = 1024 * 1024;
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    @FunctionalInterface
+    private static interface Scenario
+    {
+
+        void run(File workDirectory) throws IOException;
+    }
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    private static final class Result
+    {
+
+        private final String scenario;
+
+        private final int entryCount;
+
+        private final long entries;
+
+        private final long bytes;
+
+        private final long[] durations;
+
+        private final long peakHeap;
+
+        private Result(final String scenario, final int entryCount, final long entries, final long bytes, final long[] durations,
+                final long peakHeap)
+        {
+            this.scenario = scenario;
+            this.entryCount = entryCount;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.durations = durations;
+            this.peakHeap = peakHeap;
+        }
+
+        private long medianDuration()
+        {
+            final long[] sorted = this.durations.clone();
+            Arrays.sort(sorted);
+            return sorted[sorted.length / 2];
+        }
+
+        private double entriesPerSecond()
+        {
+            return this.entries / (this.medianDuration() / 1e9);
+        }
+
+        private double megabytesPerSecond()
+        {
+            return this.bytes / MEGABYTE / (this.medianDuration() / 1e9);
+        }
+    }
+
+    private final Map<String, String> arguments;
+
+    private final List<Result> results = new ArrayList<>();
+
+    private MacroBenchmark(final Map<String, String> arguments)
+    {
+        this.arguments = arguments;
+    }
+
+    public static void main(final String[] args) throws IOException
+    {
+        final Map<String, String> arguments = new HashMap<>();
+        for (final String arg : args)
+        {
+            if (arg.startsWith("--") && arg.indexOf('=') > 2)
+            {
+                arguments.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unsupported argument " + arg);
+            }
+        }
+
+        new MacroBenchmark(arguments).run();
+    }
+
+    private void run() throws IOException
+    {
+        final int warmup = Integer.parseInt(this.arguments.getOrDefault("warmup", "1"));
+        final int iterations = Integer.parseInt(this.arguments.getOrDefault("iterations", "3"));
+        final int chainLength = Integer.parseInt(this.arguments.getOrDefault("chain", "5"));
+        final CorpusGenerator.SizeDistribution distribution = CorpusGenerator.SizeDistribution
+                .valueOf(this.arguments.getOrDefault("distribution", CorpusGenerator.SizeDistribution.MIXED.name()).toUpperCase(Locale.ENGLISH));
+        final boolean customMappings = Boolean.parseBoolean(this.arguments.getOrDefault("customMappings", "true"));
+        final File resultFile = new File(this.arguments.getOrDefault("result", "macro-benchmark-result.json"));
+
+        final Path corpusDirectory = Files.createTempDirectory("amp-macro-benchmark");
+        try
+        {
+            for (final String entries : this.arguments.getOrDefault("entries", "1000,10000").split(","))
+            {
+                final int entryCount = Integer.parseInt(entries.trim());
+
+                final CorpusGenerator generator = new CorpusGenerator();
+                generator.setEntryCount(entryCount);
+                generator.setSizeDistribution(distribution);
+                if (customMappings)
+                {
+                    final Properties fileMappings = new Properties();
+                    fileMappings.setProperty("include.default", "true");
+                    fileMappings.setProperty("/web/jsp", "/WEB-INF/jsp");
+                    fileMappings.setProperty("/config/alfresco/messages", "/WEB-INF/classes/alfresco/messages");
+                    fileMappings.setProperty("/licenses", "/META-INF/licenses");
+                    generator.setFileMappings(fileMappings);
+                }
+
+                this.benchmarkCorpus(generator, corpusDirectory.resolve(String.valueOf(entryCount)), chainLength, warmup, iterations);
+            }
+        }
+        finally
+        {
+            BenchmarkArchives.deleteRecursively(corpusDirectory);
+        }
+
+        this.writeResults(resultFile, distribution, customMappings);
+    }
+
+    private void benchmarkCorpus(final CorpusGenerator generator, final Path corpusDirectory, final int chainLength, final int warmup,
+            final int iterations) throws IOException
+    {
+        final int entryCount = generator.getEntryCount();
+        Files.createDirectories(corpusDirectory);
+
+        final File moduleDirectory = corpusDirectory.resolve("module").toFile();
+        final long moduleSize = generator.generateModuleDirectory(moduleDirectory, "macro-benchmark", Collections.emptyMap());
+
+        final File ampFile = corpusDirectory.resolve("macro-benchmark.amp").toFile();
+        final long ampSize = generator.generateAmp(ampFile, "macro-benchmark", Collections.emptyMap());
+
+        final File warFile = corpusDirectory.resolve("alfresco.war").toFile();
+        generator.generateWar(warFile);
+
+        final File chainDirectory = corpusDirectory.resolve("chain").toFile();
+        chainDirectory.mkdirs();
+        final CorpusGenerator chainGenerator = new CorpusGenerator();
+        chainGenerator.setEntryCount(Math.max(1, entryCount / chainLength));
+        chainGenerator.setSizeDistribution(generator.getSizeDistribution());
+        chainGenerator.setFileMappings(generator.getFileMappings());
+        final List<File> chainAmps = chainGenerator.generateAmpChain(chainDirectory, "macro-benchmark-chain", chainLength);
+        long chainSize = 0;
+        for (final File chainAmp : chainAmps)
+        {
+            chainSize += BenchmarkArchives.uncompressedSize(chainAmp);
+        }
+
+        this.measure("package", entryCount, entryCount, moduleSize, warmup, iterations, workDirectory -> {
+            final AmpArchiver archiver = new AmpArchiver();
+            archiver.addDirectory(moduleDirectory);
+            archiver.setDestFile(new File(workDirectory, "packaged.amp"));
+            archiver.createArchive();
+        });
+
+        this.measure("install-directory", entryCount, entryCount, ampSize, warmup, iterations, workDirectory -> {
+            final File webappDirectory = new File(workDirectory, "webapp");
+            generator.generateWebappDirectory(webappDirectory);
+            final AmpUnArchiver unArchiver = new AmpUnArchiver(ampFile);
+            unArchiver.setDestDirectory(webappDirectory);
+            unArchiver.extract();
+        });
+
+        this.measure("install-war", entryCount, entryCount * 2L, ampSize + BenchmarkArchives.uncompressedSize(warFile), warmup, iterations,
+                workDirectory -> {
+                    final File targetWar = new File(workDirectory, "alfresco.war");
+                    Files.copy(warFile.toPath(), targetWar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    final AmpUnArchiver unArchiver = new AmpUnArchiver(ampFile);
+                    unArchiver.setDestFile(targetWar);
+                    unArchiver.extract();
+                });
+
+        this.measure("install-chain", entryCount, (long) chainGenerator.getEntryCount() * chainLength, chainSize, warmup, iterations,
+                workDirectory -> {
+                    final File webappDirectory = new File(workDirectory, "webapp");
+                    generator.generateWebappDirectory(webappDirectory);
+                    new AmpBatchInstaller(chainAmps).install(webappDirectory);
+                });
+    }
+
+    private void measure(final String scenario, final int entryCount, final long entries, final long bytes, final int warmup,
+            final int iterations, final Scenario run) throws IOException
+    {
+        final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                heapPools.add(pool);
+            }
+        }
+
+        final long[] durations = new long[iterations];
+        long peakHeap = 0;
+        for (int iteration = -warmup; iteration < iterations; iteration++)
+        {
+            final Path workDirectory = Files.createTempDirectory("amp-macro-benchmark-run");
+            try
+            {
+                System.gc();
+                heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+                final long start = System.nanoTime();
+                run.run(workDirectory.toFile());
+                final long duration = System.nanoTime() - start;
+
+                if (iteration >= 0)
+                {
+                    durations[iteration] = duration;
+                    peakHeap = Math.max(peakHeap, heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+                }
+            }
+            finally
+            {
+                BenchmarkArchives.deleteRecursively(workDirectory);
+            }
+        }
+
+        final Result result = new Result(scenario, entryCount, entries, bytes, durations, peakHeap);
+        this.results.add(result);
+        System.out.println(String.format(Locale.ENGLISH, "%-18s %8d entries: %10.1f ms %12.0f entries/s %10.2f MB/s %10.1f MB peak heap",
+                scenario, entryCount, result.medianDuration() / 1e6, result.entriesPerSecond(), result.megabytesPerSecond(),
+                peakHeap / MEGABYTE));
+    }
+
+    private void writeResults(final File resultFile, final CorpusGenerator.SizeDistribution distribution, final boolean customMappings)
+            throws IOException
+    {
+        final File parent = resultFile.getAbsoluteFile().getParentFile();
+        if (parent != null)
+        {
+            Files.createDirectories(parent.toPath());
+        }
+
+        try (Writer writer = Files.newBufferedWriter(resultFile.toPath(), StandardCharsets.UTF_8))
+        {
+            writer.write("[\n");
+            for (int idx = 0; idx < this.results.size(); idx++)
+            {
+                final Result result = this.results.get(idx);
+                writer.write(String.format(Locale.ENGLISH,
+                        "    {\"scenario\": \"%s\", \"entryCount\": %d, \"distribution\": \"%s\", \"customMappings\": %b, "
+                                + "\"entries\": %d, \"bytes\": %d, \"durationsNanos\": %s, \"medianNanos\": %d, "
+                                + "\"entriesPerSecond\": %.1f, \"megabytesPerSecond\": %.3f, \"peakHeapBytes\": %d}%s\n",
+                        result.scenario, result.entryCount, distribution.name(), customMappings, result.entries, result.bytes,
+                        Arrays.toString(result.durations), result.medianDuration(), result.entriesPerSecond(), result.megabytesPerSecond(),
+                        result.peakHeap, idx < this.results.size() - 1 ? "," : ""));
+            }
+            writer.write("]\n");
+        }
+        System.out.println("Macro benchmark results written to " + resultFile.getAbsolutePath());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Manifest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the lookup of meta files, i.e. the version.properties and manifest, from web application archives of different sizes, as
+ * performed when an AMP is validated against a web application archive.
+ *
+ * @author Axel Faust
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetaFileBenchmark
+{
+
+    @Param({ "50", "20000" })
+    public int entryCount;
+
+    private Path tempDirectory;
+
+    private File warFile;
+
+    private AmpUnArchiver unArchiver;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        this.tempDirectory = Files.createTempDirectory("meta-file-benchmark");
+        this.warFile = this.tempDirectory.resolve("alfresco.war").toFile();
+        BenchmarkArchives.createWar(this.warFile, this.entryCount);
+
+        this.unArchiver = new AmpUnArchiver();
+        this.unArchiver.setEncoding("UTF-8");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        BenchmarkArchives.deleteRecursively(this.tempDirectory);
+    }
+
+    @Benchmark
+    public Properties loadVersionProperties()
+    {
+        return this.unArchiver.loadMetaFile(this.warFile, AmpUnArchiver.VERSION_PROPERTIES, AmpUnArchiver.PROPERTIES_READER);
+    }
+
+    @Benchmark
+    public Manifest loadManifest()
+    {
+        return this.unArchiver.loadMetaFile(this.warFile, AmpUnArchiver.MANIFEST_FILE, AmpUnArchiver.MANIFEST_READER);
+    }
+}
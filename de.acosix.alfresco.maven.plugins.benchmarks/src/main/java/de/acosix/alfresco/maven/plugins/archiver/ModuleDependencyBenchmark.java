@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the construction of module dependencies from version range specifications and their evaluation against installed modules.
+ *
+ * @author Axel Faust
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModuleDependencyBenchmark
+{
+
+    private static final String DEPENDENCY_ID = "acosix-utility-core";
+
+    @Param({ "*", "1.0-", "1.0-2.0", "1.0-1.5, 2.0-2.5, 3.0-3.5, 4.0-", "[1.0,2.0),[3.0,)" })
+    public String versionString;
+
+    private ModuleDependency dependency;
+
+    private ModuleDetails[] installedModules;
+
+    private List<ModuleDependency> dependencies;
+
+    private List<ModuleDetails> candidateModules;
+
+    @Setup
+    public void setUp()
+    {
+        this.dependency = new ModuleDependencyImpl(DEPENDENCY_ID, this.versionString);
+
+        final String[] versions = { "0.9", "1.0", "1.2.3", "2.0", "2.4.1", "3.0.0-SNAPSHOT", "4.2", "10.0" };
+        this.installedModules = new ModuleDetails[versions.length];
+        for (int idx = 0; idx < versions.length; idx++)
+        {
+            this.installedModules[idx] = new ModuleDetailsImpl(DEPENDENCY_ID, new ComparableVersion(versions[idx]), "Utility Core",
+                    "Acosix utility module");
+        }
+
+        this.dependencies = new ArrayList<>();
+        for (int idx = 0; idx < 32; idx++)
+        {
+            this.dependencies.add(new ModuleDependencyImpl(DEPENDENCY_ID, this.versionString));
+        }
+        this.candidateModules = Arrays.asList(this.installedModules);
+    }
+
+    @Benchmark
+    public ModuleDependency construct()
+    {
+        return new ModuleDependencyImpl(DEPENDENCY_ID, this.versionString);
+    }
+
+    @Benchmark
+    public void isValidDependency(final Blackhole blackhole)
+    {
+        for (final ModuleDetails installedModule : this.installedModules)
+        {
+            blackhole.consume(this.dependency.isValidDependency(installedModule));
+        }
+    }
+
+    @Benchmark
+    public Map<ModuleDependency, List<ModuleDetails>> matchAll()
+    {
+        return VersionRangeSet.matchAll(this.dependencies, this.candidateModules);
+    }
+}
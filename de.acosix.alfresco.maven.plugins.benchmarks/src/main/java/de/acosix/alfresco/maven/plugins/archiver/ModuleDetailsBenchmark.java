@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the parsing of module details from the properties of a module.properties file typical for Alfresco modules.
+ *
+ * @author Axel Faust
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModuleDetailsBenchmark
+{
+
+    private Properties minimalProperties;
+
+    private Properties fullProperties;
+
+    @Setup
+    public void setUp()
+    {
+        this.minimalProperties = new Properties();
+        this.minimalProperties.setProperty(ModuleDetails.PROP_ID, "de.acosix.benchmark");
+        this.minimalProperties.setProperty(ModuleDetails.PROP_VERSION, "1.0.0");
+        this.minimalProperties.setProperty(ModuleDetails.PROP_TITLE, "Benchmark Module");
+        this.minimalProperties.setProperty(ModuleDetails.PROP_DESCRIPTION, "Module for benchmarks");
+
+        this.fullProperties = new Properties();
+        this.fullProperties.putAll(this.minimalProperties);
+        this.fullProperties.setProperty(ModuleDetails.PROP_ALIASES, "acosix-benchmark, benchmark-module");
+        this.fullProperties.setProperty(ModuleDetails.PROP_EDITIONS, "Community, Enterprise");
+        this.fullProperties.setProperty(ModuleDetails.PROP_REPO_VERSION_MIN, "6.1");
+        this.fullProperties.setProperty(ModuleDetails.PROP_REPO_VERSION_MAX, "23.99");
+        this.fullProperties.setProperty(ModuleDetails.PROP_DEPENDS_PREFIX + "acosix-utility-core", "1.4.0-");
+        this.fullProperties.setProperty(ModuleDetails.PROP_DEPENDS_PREFIX + "acosix-utility-repo", "1.4.0-1.5.99");
+        this.fullProperties.setProperty(ModuleDetails.PROP_DEPENDS_PREFIX + "org.alfresco.integrations.google.docs", "*");
+        this.fullProperties.setProperty(ModuleDetails.PROP_INSTALL_STATE, ModuleInstallState.INSTALLED.name());
+        this.fullProperties.setProperty(ModuleDetails.PROP_INSTALL_DATE, "2025-01-01T00:00:00.000Z");
+    }
+
+    @Benchmark
+    public ModuleDetails parseMinimal()
+    {
+        return new ModuleDetailsImpl(this.minimalProperties);
+    }
+
+    @Benchmark
+    public ModuleDetails parseFull()
+    {
+        return new ModuleDetailsImpl(this.fullProperties);
+    }
+}
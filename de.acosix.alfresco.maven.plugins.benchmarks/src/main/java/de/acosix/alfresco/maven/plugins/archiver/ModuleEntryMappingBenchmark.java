@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the mapping of AMP entry names to their target paths in a web application using a realistic file mapping table. Both the
+ * memoized mapping as used during extraction and the uncached resolution of the mapping are measured for all entries of an AMP.
+ *
+ * @author Axel Faust
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModuleEntryMappingBenchmark
+{
+
+    @Param({ "100", "2000" })
+    public int entryCount;
+
+    private Path tempDirectory;
+
+    private AmpUnArchiver unArchiver;
+
+    private List<String> entryNames;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        this.tempDirectory = Files.createTempDirectory("amp-mapping-benchmark");
+        final File ampFile = this.tempDirectory.resolve("benchmark.amp").toFile();
+        BenchmarkArchives.createAmp(ampFile, this.entryCount);
+
+        this.unArchiver = new AmpUnArchiver(ampFile);
+        this.unArchiver.getOrLoadModuleDetails();
+        this.unArchiver.getOrLoadFileMappings();
+        this.entryNames = this.unArchiver.getOrOpenSession().getEntries().stream().map(ZipArchiveEntry::getName)
+                .collect(Collectors.toList());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        this.unArchiver.closeSession();
+        BenchmarkArchives.deleteRecursively(this.tempDirectory);
+    }
+
+    @Benchmark
+    public void mapModuleEntryName(final Blackhole blackhole)
+    {
+        for (final String entryName : this.entryNames)
+        {
+            blackhole.consume(this.unArchiver.mapModuleEntryName(entryName, false));
+        }
+    }
+
+    @Benchmark
+    public void resolveModuleEntryName(final Blackhole blackhole)
+    {
+        for (final String entryName : this.entryNames)
+        {
+            blackhole.consume(this.unArchiver.resolveModuleEntryName(entryName, false));
+        }
+    }
+}
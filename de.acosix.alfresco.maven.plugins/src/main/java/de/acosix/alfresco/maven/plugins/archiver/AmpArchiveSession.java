@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import org.apache.commons.compress.archivers.EntryStreamOffsets;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Instances of this class represent an AMP archive opened for the duration of a single install operation. The central directory of the
+ * archive is only parsed once, and any module metadata derived from the archive is cached so that validation and extraction can share the
+ * same state without re-opening the archive.
+ *
+ * @author Axel Faust
+ */
+public class AmpArchiveSession implements Closeable
+{
+
+    // sentinel for memoized entries without a mapping since concurrent maps do not support null values
+    // effective entry names can never be empty as blank names are treated as unmapped
+    private static final String UNMAPPED = "";
+
+    // large enough for the operating system to serve reads of a cold archive as efficient sequential I/O
+    private static final int READ_AHEAD_SIZE = 1024 * 1024;
+
+    private final File sourceFile;
+
+    private final ZipFile zipFile;
+
+    private final List<ZipArchiveEntry> entries;
+
+    private ModuleDetails moduleDetails;
+
+    private Properties fileMappings;
+
+    private FileMappingResolver fileMappingResolver;
+
+    private final ConcurrentMap<String, String> mappedEntryNames = new ConcurrentHashMap<>();
+
+    private FileChannel fileChannel;
+
+    /**
+     * Creates a session for an AMP file, opening the archive for random access.
+     *
+     * @param sourceFile
+     *            the AMP file
+     * @param encoding
+     *            the encoding of entry names in the archive
+     * @param sequential
+     *            {@code true} if entries will only ever be read by one thread at a time, {@code false} if entries may be read
+     *            concurrently
+     */
+    public AmpArchiveSession(final File sourceFile, final String encoding, final boolean sequential) throws IOException
+    {
+        this.sourceFile = sourceFile.getAbsoluteFile();
+        final FileChannel fileChannel = FileChannel.open(this.sourceFile.toPath(), StandardOpenOption.READ);
+        try
+        {
+            // entry data is consumed in small buffers, so serve these from larger windows read ahead in the order entries are extracted
+            // concurrent reads require a file channel, as the archive serialises reads from any other channel
+            final SeekableByteChannel channel = sequential ? new ReadAheadChannel(fileChannel, READ_AHEAD_SIZE) : fileChannel;
+            this.zipFile = new ZipFile(channel, this.sourceFile.getPath(), encoding, true);
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            fileChannel.close();
+            throw e;
+        }
+        this.entries = Collections.unmodifiableList(Collections.list(this.zipFile.getEntriesInPhysicalOrder()));
+    }
+
+    /**
+     * Creates a session for an AMP which is read as a stream. Such a session provides no random access to the archive, so it only serves
+     * to cache the module metadata read from the head of the stream.
+     *
+     * @param sourceFile
+     *            the file the AMP has been obtained from, if any - may be {@code null}
+     */
+    public AmpArchiveSession(final File sourceFile)
+    {
+        this.sourceFile = sourceFile != null ? sourceFile.getAbsoluteFile() : null;
+        this.zipFile = null;
+        this.entries = Collections.emptyList();
+    }
+
+    /**
+     * Checks whether this session has been opened for a specific file.
+     *
+     * @param file
+     *            the file to check
+     * @return {@code true} if this session has been opened for the file, {@code false} otherwise
+     */
+    public boolean isSessionFor(final File file)
+    {
+        return file != null && this.sourceFile != null && this.sourceFile.equals(file.getAbsoluteFile());
+    }
+
+    /**
+     * @return {@code true} if this session is for an AMP read as a stream without random access, {@code false} otherwise
+     */
+    public boolean isStreamed()
+    {
+        return this.zipFile == null;
+    }
+
+    /**
+     * @return the sourceFile
+     */
+    public File getSourceFile()
+    {
+        return this.sourceFile;
+    }
+
+    /**
+     * @return the opened archive or {@code null} if this session is for an AMP read as a stream
+     */
+    public ZipFile getZipFile()
+    {
+        return this.zipFile;
+    }
+
+    /**
+     * @return the entries of the archive in the physical order in which they are stored
+     */
+    public List<ZipArchiveEntry> getEntries()
+    {
+        return this.entries;
+    }
+
+    /**
+     * @param name
+     *            the name of the entry to retrieve
+     * @return the entry or {@code null} if the archive does not contain an entry with the name
+     */
+    public ZipArchiveEntry getEntry(final String name)
+    {
+        return this.zipFile != null ? this.zipFile.getEntry(name) : null;
+    }
+
+    /**
+     * @return the cached module details or {@code null} if they have not been loaded yet
+     */
+    public ModuleDetails getModuleDetails()
+    {
+        return this.moduleDetails;
+    }
+
+    /**
+     * @param moduleDetails
+     *            the module details to cache
+     */
+    public void setModuleDetails(final ModuleDetails moduleDetails)
+    {
+        this.moduleDetails = moduleDetails;
+    }
+
+    /**
+     * @return the cached file mappings or {@code null} if they have not been loaded yet
+     */
+    public Properties getFileMappings()
+    {
+        return this.fileMappings;
+    }
+
+    /**
+     * Sets the file mappings to cache, compiling them for efficient resolution of mapped entry names.
+     *
+     * @param fileMappings
+     *            the file mappings to cache
+     */
+    public void setFileMappings(final Properties fileMappings)
+    {
+        this.fileMappings = fileMappings;
+        this.fileMappingResolver = fileMappings != null ? FileMappingResolver.compile(fileMappings) : null;
+        this.mappedEntryNames.clear();
+    }
+
+    /**
+     * @return the resolver for the cached file mappings or {@code null} if they have not been loaded yet
+     */
+    public FileMappingResolver getFileMappingResolver()
+    {
+        return this.fileMappingResolver;
+    }
+
+    /**
+     * Retrieves the mapped name of an entry, computing it only once for the lifetime of this session.
+     *
+     * @param entryName
+     *            the name of the entry
+     * @param mappingFunction
+     *            the function to compute the mapped name if it has not yet been computed
+     * @return the mapped name or {@code null} if the entry is not mapped
+     */
+    public String getMappedEntryName(final String entryName, final Function<String, String> mappingFunction)
+    {
+        final String mappedEntryName = this.mappedEntryNames.computeIfAbsent(entryName, name -> {
+            final String mappedName = mappingFunction.apply(name);
+            return mappedName != null ? mappedName : UNMAPPED;
+        });
+        return UNMAPPED.equals(mappedEntryName) ? null : mappedEntryName;
+    }
+
+    /**
+     * Retrieves a channel to the archive file for direct transfers of entry data. The channel is opened on first access and shared for
+     * the lifetime of this session - it must only be used with absolute positions.
+     *
+     * @return the channel to the archive file
+     */
+    public synchronized FileChannel getFileChannel() throws IOException
+    {
+        if (this.zipFile == null)
+        {
+            throw new IOException("Direct transfers are not supported for an AMP read as a stream");
+        }
+        if (this.fileChannel == null)
+        {
+            this.fileChannel = FileChannel.open(this.sourceFile.toPath(), StandardOpenOption.READ);
+        }
+        return this.fileChannel;
+    }
+
+    /**
+     * Determines the offset of the data of an entry within the archive file.
+     *
+     * @param entry
+     *            the entry
+     * @return the offset of the first byte of the (compressed) data of the entry
+     */
+    public long getDataOffset(final ZipArchiveEntry entry) throws IOException
+    {
+        long dataOffset = entry.getDataOffset();
+        if (dataOffset == EntryStreamOffsets.OFFSET_UNKNOWN)
+        {
+            // offset is only resolved from the local file header once the data of the entry is accessed
+            final InputStream rawStream = this.zipFile.getRawInputStream(entry);
+            if (rawStream != null)
+            {
+                rawStream.close();
+            }
+            dataOffset = entry.getDataOffset();
+        }
+        return dataOffset;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if (this.zipFile != null)
+            {
+                this.zipFile.close();
+            }
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                if (this.fileChannel != null)
+                {
+                    this.fileChannel.close();
+                    this.fileChannel = null;
+                }
+            }
+        }
+    }
+}
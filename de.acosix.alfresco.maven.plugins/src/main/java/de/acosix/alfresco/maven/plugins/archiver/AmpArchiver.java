@@ -1,6 +1,43 @@
 package de.acosix.alfresco.maven.plugins.archiver;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ArchivedFileSet;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.archiver.zip.ConcurrentJarCreator;
 import org.codehaus.plexus.archiver.zip.ZipArchiver;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.components.io.resources.PlexusIoResourceCollection;
+import org.codehaus.plexus.components.io.resources.proxy.PlexusIoProxyResourceCollection;
+
+import de.acosix.alfresco.maven.plugins.archiver.RawCopyZipResourceCollection.RawEntryInputStream;
 
 /**
  *
@@ -9,8 +46,676 @@ import org.codehaus.plexus.archiver.zip.ZipArchiver;
 public class AmpArchiver extends ZipArchiver
 {
 
+    // bump whenever the way an AMP is built from its inputs changes in a way not covered by the input digest
+    private static final String BUILD_CACHE_FORMAT = "amp-build-cache-2";
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<String> METADATA_ENTRY_NAMES = new HashSet<>(
+            Arrays.asList(AmpUnArchiver.MODULE_PROPERTIES, AmpUnArchiver.FILE_MAPPING_PROPERTIES));
+
+    private static final Set<String> RAW_COPY_ARCHIVE_EXTENSIONS = new HashSet<>(Arrays.asList("zip", "jar", "amp", "war", "ear"));
+
+    /**
+     * Instances of this class record the resources provided from an archived file set which may be added as raw copies, so that only the
+     * content of these resources is inspected for raw entry data.
+     *
+     * @author Axel Faust
+     */
+    private class RawCopyTrackingResourceCollection extends PlexusIoProxyResourceCollection
+    {
+
+        private RawCopyTrackingResourceCollection(final RawCopyZipResourceCollection src)
+        {
+            super(src);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public Iterator<PlexusIoResource> getResources() throws IOException
+        {
+            final Iterator<PlexusIoResource> resources = super.getResources();
+            return new Iterator<PlexusIoResource>()
+            {
+
+                /**
+                 *
+                 * {@inheritDoc}
+                 */
+                @Override
+                public boolean hasNext()
+                {
+                    return resources.hasNext();
+                }
+
+                /**
+                 *
+                 * {@inheritDoc}
+                 */
+                @Override
+                public PlexusIoResource next()
+                {
+                    final PlexusIoResource resource = resources.next();
+                    AmpArchiver.this.rawCopyResources.add(resource);
+                    return resource;
+                }
+            };
+        }
+    }
+
+    private boolean parallelCompression = false;
+
+    private int compressionThreadCount = 0;
+
+    private String storedExtensions = CompressionPolicy.DEFAULT_STORED_EXTENSIONS;
+
+    private Properties compressionLevels;
+
+    private String defaultCompressionLevel = CompressionPolicy.LEVEL_DEFAULT;
+
+    private File buildCacheDirectory;
+
+    private boolean rawCopyArchivedEntries = true;
+
+    private boolean rawCopyArchivedFileSetAdded = false;
+
+    private CompressionPolicy compressionPolicy;
+
+    private Path pendingBuildCacheEntry;
+
+    private ParallelEntryCompressor parallelEntryCompressor;
+
+    // resources are wrapped in proxies by the collections of archived file sets, so they are identified by the instances handed out
+    private final Set<PlexusIoResource> rawCopyResources = Collections.newSetFromMap(new IdentityHashMap<>());
+
     public AmpArchiver()
     {
         super.archiveType = "amp";
     }
+
+    /**
+     * Sets whether entries should be compressed using the scatter / gather compression of this archiver instead of the default parallel
+     * compression of the base class. Entries are compressed concurrently into temporary buffers using the
+     * {@link #setCompressionThreadCount(int) configured number of threads}, and then written into the archive in the order in which they
+     * have been added.
+     *
+     * @param parallelCompression
+     *            the parallelCompression to set
+     */
+    public void setParallelCompression(final boolean parallelCompression)
+    {
+        this.parallelCompression = parallelCompression;
+    }
+
+    /**
+     * @return the parallelCompression
+     */
+    public boolean isParallelCompression()
+    {
+        return this.parallelCompression;
+    }
+
+    /**
+     * Sets the number of threads to use for {@link #setParallelCompression(boolean) parallel compression}. A value of less than {@code 1}
+     * (the default) uses as many threads as there are available processors.
+     *
+     * @param compressionThreadCount
+     *            the compressionThreadCount to set
+     */
+    public void setCompressionThreadCount(final int compressionThreadCount)
+    {
+        this.compressionThreadCount = compressionThreadCount;
+    }
+
+    /**
+     * @return the compressionThreadCount
+     */
+    public int getCompressionThreadCount()
+    {
+        return this.compressionThreadCount;
+    }
+
+    /**
+     * Sets the file extensions of entries to store without compression, as their content is typically already compressed.
+     *
+     * @param storedExtensions
+     *            the comma-separated list of file extensions - an empty value disables storing entries based on their extension
+     */
+    public void setStoredExtensions(final String storedExtensions)
+    {
+        this.storedExtensions = storedExtensions;
+    }
+
+    /**
+     * @return the storedExtensions
+     */
+    public String getStoredExtensions()
+    {
+        return this.storedExtensions;
+    }
+
+    /**
+     * Sets the compression levels for entries matched by path globs, e.g. {@code web/**}{@code /*.js=9} or {@code lib/*=stored}. Levels
+     * may be specified as numbers from {@code 0} to {@code 9}, or as {@code stored} or {@code default}. If multiple globs match an
+     * entry, the longest glob takes precedence. Any levels other than the default level require
+     * {@link #setParallelCompression(boolean) parallel compression}, which is enabled implicitly if necessary.
+     *
+     * @param compressionLevels
+     *            the compressionLevels to set
+     */
+    public void setCompressionLevels(final Properties compressionLevels)
+    {
+        this.compressionLevels = compressionLevels;
+    }
+
+    /**
+     * @return the compressionLevels
+     */
+    public Properties getCompressionLevels()
+    {
+        return this.compressionLevels;
+    }
+
+    /**
+     * Sets the compression level for all entries not matched by either a {@link #setCompressionLevels(Properties) glob} or a
+     * {@link #setStoredExtensions(String) stored extension}.
+     *
+     * @param defaultCompressionLevel
+     *            the defaultCompressionLevel to set
+     */
+    public void setDefaultCompressionLevel(final String defaultCompressionLevel)
+    {
+        this.defaultCompressionLevel = defaultCompressionLevel;
+    }
+
+    /**
+     * @return the defaultCompressionLevel
+     */
+    public String getDefaultCompressionLevel()
+    {
+        return this.defaultCompressionLevel;
+    }
+
+    /**
+     * Sets the directory of the local build cache. If set, a digest over the content and metadata of all entries and the configuration of
+     * this archiver is computed before the AMP is built, and a previously built AMP for the same digest is reused instead of building the
+     * AMP again.
+     *
+     * @param buildCacheDirectory
+     *            the buildCacheDirectory to set
+     */
+    public void setBuildCacheDirectory(final File buildCacheDirectory)
+    {
+        this.buildCacheDirectory = buildCacheDirectory;
+    }
+
+    /**
+     * @return the buildCacheDirectory
+     */
+    public File getBuildCacheDirectory()
+    {
+        return this.buildCacheDirectory;
+    }
+
+    /**
+     * Sets whether entries of archived file sets, e.g. the contents of a pre-built JAR, should be copied into the AMP without inflating
+     * and deflating them again. The compressed data of an entry is copied verbatim if the entry content is not transformed and the
+     * compression method of the entry matches the method the {@link #setCompressionLevels(Properties) compression levels} and
+     * {@link #setStoredExtensions(String) stored extensions} would apply to it - entries for which an explicit deflate level has been
+     * configured are always compressed again. Raw copies require {@link #setParallelCompression(boolean) parallel compression}, which is
+     * enabled implicitly if any archived file set has been added.
+     *
+     * @param rawCopyArchivedEntries
+     *            the rawCopyArchivedEntries to set
+     */
+    public void setRawCopyArchivedEntries(final boolean rawCopyArchivedEntries)
+    {
+        this.rawCopyArchivedEntries = rawCopyArchivedEntries;
+    }
+
+    /**
+     * @return the rawCopyArchivedEntries
+     */
+    public boolean isRawCopyArchivedEntries()
+    {
+        return this.rawCopyArchivedEntries;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The module.properties and file-mapping.properties are always iterated first, so that they are written at the head of the AMP and
+     * the AMP can be {@link AmpUnArchiver#extract(InputStream, File) installed from a stream} in a single pass.
+     */
+    @Override
+    public ResourceIterator getResources() throws ArchiverException
+    {
+        final ResourceIterator resources = super.getResources();
+        final List<ArchiveEntry> metadataEntries = new ArrayList<>(METADATA_ENTRY_NAMES.size());
+        final List<ArchiveEntry> otherEntries = new ArrayList<>();
+        while (resources.hasNext())
+        {
+            final ArchiveEntry entry = resources.next();
+            if (isMetadataEntry(entry.getName()))
+            {
+                metadataEntries.add(entry);
+            }
+            else
+            {
+                otherEntries.add(entry);
+            }
+        }
+        metadataEntries.addAll(otherEntries);
+
+        final Iterator<ArchiveEntry> orderedEntries = metadataEntries.iterator();
+        return new ResourceIterator()
+        {
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public boolean hasNext()
+            {
+                return orderedEntries.hasNext();
+            }
+
+            /**
+             *
+             * {@inheritDoc}
+             */
+            @Override
+            public ArchiveEntry next()
+            {
+                return orderedEntries.next();
+            }
+        };
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected PlexusIoResourceCollection asResourceCollection(final ArchivedFileSet fileSet, final Charset charset)
+            throws ArchiverException
+    {
+        final File archiveFile = fileSet.getArchive();
+        final String archiveName = archiveFile.getName();
+        final String extension = archiveName.substring(archiveName.lastIndexOf('.') + 1).toLowerCase(Locale.ENGLISH);
+
+        final PlexusIoResourceCollection collection;
+        if (this.rawCopyArchivedEntries && RAW_COPY_ARCHIVE_EXTENSIONS.contains(extension))
+        {
+            // mirrors the configuration of the base class, only using a collection which exposes the raw entry data
+            final RawCopyZipResourceCollection resources = new RawCopyZipResourceCollection();
+            resources.setEncoding(charset);
+            resources.setFile(archiveFile);
+            resources.setStreamTransformer(fileSet.getStreamTransformer());
+
+            final PlexusIoProxyResourceCollection proxy = new RawCopyTrackingResourceCollection(resources);
+            proxy.setExcludes(fileSet.getExcludes());
+            proxy.setIncludes(fileSet.getIncludes());
+            proxy.setIncludingEmptyDirectories(fileSet.isIncludingEmptyDirectories());
+            proxy.setCaseSensitive(fileSet.isCaseSensitive());
+            proxy.setPrefix(fileSet.getPrefix());
+            proxy.setUsingDefaultExcludes(fileSet.isUsingDefaultExcludes());
+            proxy.setFileSelectors(fileSet.getFileSelectors());
+            proxy.setStreamTransformer(fileSet.getStreamTransformer());
+            proxy.setFileMappers(fileSet.getFileMappers());
+
+            if (this.getOverrideDirectoryMode() > -1 || this.getOverrideFileMode() > -1)
+            {
+                proxy.setOverrideAttributes(-1, null, -1, null, this.getOverrideFileMode(), this.getOverrideDirectoryMode());
+            }
+
+            if (this.getDefaultDirectoryMode() > -1 || this.getDefaultFileMode() > -1)
+            {
+                proxy.setDefaultAttributes(-1, null, -1, null, this.getDefaultFileMode(), this.getDefaultDirectoryMode());
+            }
+
+            this.rawCopyArchivedFileSetAdded = true;
+            collection = proxy;
+        }
+        else
+        {
+            collection = super.asResourceCollection(fileSet, charset);
+        }
+        return collection;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void execute() throws ArchiverException, IOException
+    {
+        // archive is only stored in cache after it has been closed, so any pending entry from a previous (failed) run must be discarded
+        this.pendingBuildCacheEntry = null;
+
+        if (this.buildCacheDirectory == null || this.isInUpdateMode() || this.hasVirtualFiles())
+        {
+            super.execute();
+        }
+        else
+        {
+            final String digest = this.computeInputDigest();
+            final Path cachedAmp = this.buildCacheDirectory.toPath().resolve(digest + "." + this.archiveType);
+            if (Files.isRegularFile(cachedAmp))
+            {
+                this.getLogger().info("Reusing cached {} {} for {}", this.archiveType, cachedAmp, this.getDestFile());
+                Files.createDirectories(this.getDestFile().toPath().toAbsolutePath().getParent());
+                copyAtomically(cachedAmp, this.getDestFile().toPath());
+            }
+            else
+            {
+                this.getLogger().debug("No cached {} for digest {}", this.archiveType, digest);
+                super.execute();
+                this.pendingBuildCacheEntry = cachedAmp;
+            }
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void postCreateArchive() throws ArchiverException, IOException
+    {
+        super.postCreateArchive();
+
+        if (this.pendingBuildCacheEntry != null && this.getDestFile().isFile())
+        {
+            try
+            {
+                Files.createDirectories(this.pendingBuildCacheEntry.getParent());
+                copyAtomically(this.getDestFile().toPath(), this.pendingBuildCacheEntry);
+                this.getLogger().debug("Stored {} in build cache as {}", this.getDestFile(), this.pendingBuildCacheEntry);
+            }
+            catch (final IOException ioex)
+            {
+                // cache is only an optimisation
+                this.getLogger().warn("Failed to store {} in build cache {}", this.getDestFile(), this.buildCacheDirectory, ioex);
+            }
+            finally
+            {
+                this.pendingBuildCacheEntry = null;
+            }
+        }
+    }
+
+    /**
+     * Computes the digest over all inputs of the archive, i.e. the names, types, modes and contents of all entries, as well as the
+     * configuration of this archiver affecting the archive contents. Modification times are deliberately excluded so that inputs which
+     * have been regenerated with identical content, e.g. filtered resources, do not invalidate cached archives.
+     *
+     * @return the hex-encoded digest
+     */
+    protected String computeInputDigest() throws ArchiverException, IOException
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException nsaex)
+        {
+            throw new ArchiverException("SHA-256 digest not supported", nsaex);
+        }
+
+        final StringBuilder config = new StringBuilder(256);
+        config.append(BUILD_CACHE_FORMAT).append('\n');
+        config.append(this.archiveType).append('\n');
+        config.append(this.getEncoding()).append('\n');
+        config.append(this.isCompress()).append('\n');
+        config.append(this.isRecompressAddedZips()).append('\n');
+        config.append(this.isFilesonly()).append('\n');
+        config.append(this.getComment()).append('\n');
+        config.append(this.getLastModifiedTime()).append('\n');
+        config.append(this.storedExtensions).append('\n');
+        config.append(this.defaultCompressionLevel).append('\n');
+        config.append(this.rawCopyArchivedEntries).append('\n');
+        if (this.compressionLevels != null)
+        {
+            config.append(new TreeMap<>(this.compressionLevels)).append('\n');
+        }
+        digest.update(config.toString().getBytes(StandardCharsets.UTF_8));
+
+        final byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        final ResourceIterator resources = this.getResources();
+        while (resources.hasNext())
+        {
+            final ArchiveEntry entry = resources.next();
+            final String header = entry.getName() + '\0' + entry.getType() + '\0' + entry.getMode() + '\0';
+            digest.update(header.getBytes(StandardCharsets.UTF_8));
+
+            if (entry.getType() != ArchiveEntry.DIRECTORY)
+            {
+                long size = 0;
+                try (InputStream is = entry.getInputStream())
+                {
+                    int read;
+                    while ((read = is.read(buffer)) != -1)
+                    {
+                        digest.update(buffer, 0, read);
+                        size += read;
+                    }
+                }
+                digest.update(('\0' + String.valueOf(size) + '\0').getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        final StringBuilder hex = new StringBuilder(64);
+        for (final byte b : digest.digest())
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static boolean isMetadataEntry(final String name)
+    {
+        String normalisedName = name.replace(File.separatorChar, '/');
+        if (normalisedName.startsWith("/"))
+        {
+            normalisedName = normalisedName.substring(1);
+        }
+        return METADATA_ENTRY_NAMES.contains(normalisedName);
+    }
+
+    private static void copyAtomically(final Path source, final Path target) throws IOException
+    {
+        final Path tempPath = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try
+        {
+            Files.copy(source, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            AtomicFiles.move(tempPath, target);
+        }
+        finally
+        {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void initZipOutputStream(final ConcurrentJarCreator zOut) throws ArchiverException, IOException
+    {
+        super.initZipOutputStream(zOut);
+
+        this.compressionPolicy = new CompressionPolicy(this.storedExtensions, this.compressionLevels,
+                CompressionPolicy.parseLevel(this.defaultCompressionLevel));
+
+        // base class only supports the default deflate level and cannot write raw entries
+        if ((this.parallelCompression || this.compressionPolicy.hasCustomDeflateLevels() || this.rawCopyArchivedFileSetAdded)
+                && !this.skipWriting)
+        {
+            this.parallelEntryCompressor = new ParallelEntryCompressor(this.zipArchiveOutputStream, this.compressionThreadCount);
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void zipFile(final InputStreamSupplier in, final ConcurrentJarCreator zOut, final String vPath, final long lastModified,
+            final File fromArchive, final int mode, final String symlinkDestination, final boolean addInParallel)
+            throws IOException, ArchiverException
+    {
+        if (symlinkDestination != null || this.skipWriting)
+        {
+            super.zipFile(in, zOut, vPath, lastModified, fromArchive, mode, symlinkDestination, addInParallel);
+        }
+        else
+        {
+            this.getLogger().debug("adding entry {}", vPath);
+            this.entries.put(vPath, vPath);
+
+            final int level = this.isCompress() ? this.compressionPolicy.getCompressionLevel(vPath) : Deflater.NO_COMPRESSION;
+
+            final ZipArchiveEntry ze = new ZipArchiveEntry(vPath);
+            this.setZipEntryTime(ze, lastModified);
+            ze.setMethod(level != Deflater.NO_COMPRESSION ? ZipArchiveEntry.DEFLATED : ZipArchiveEntry.STORED);
+            ze.setUnixMode(UnixStat.FILE_FLAG | mode);
+
+            if (this.parallelEntryCompressor != null)
+            {
+                this.parallelEntryCompressor.submit(ze, in, level);
+            }
+            else
+            {
+                // synchronous entries are written before any parallel entries
+                zOut.addArchiveEntry(ze, in, addInParallel && !isMetadataEntry(vPath));
+            }
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void zipFile(final ArchiveEntry entry, final ConcurrentJarCreator zOut, final String vPath)
+            throws IOException, ArchiverException
+    {
+        boolean copiedRaw = false;
+        if (this.parallelEntryCompressor != null && entry.getType() == ArchiveEntry.FILE
+                && this.rawCopyResources.contains(entry.getResource()))
+        {
+            // only resources of archived file sets provide raw entry data, any other content must not be opened twice
+            final InputStream contents = entry.getInputStream();
+            if (contents instanceof RawEntryInputStream)
+            {
+                copiedRaw = this.zipRawEntry((RawEntryInputStream) contents, entry, vPath);
+            }
+
+            if (!copiedRaw)
+            {
+                contents.close();
+            }
+        }
+
+        if (!copiedRaw)
+        {
+            super.zipFile(entry, zOut, vPath);
+        }
+    }
+
+    /**
+     * Adds an entry of an archived file set by copying its compressed data verbatim, provided its compression method matches the
+     * compression policy for the entry.
+     *
+     * @param rawEntry
+     *            the content of the entry providing access to its raw data
+     * @param entry
+     *            the entry to add
+     * @param vPath
+     *            the name the entry shall have in the archive
+     * @return {@code true} if the entry has been added as a raw copy, {@code false} if it needs to be compressed again
+     * @throws IOException
+     *             if any entry added before could not be written
+     */
+    protected boolean zipRawEntry(final RawEntryInputStream rawEntry, final ArchiveEntry entry, final String vPath) throws IOException
+    {
+        final ZipArchiveEntry sourceEntry = rawEntry.getEntry();
+        final int level = this.isCompress() ? this.compressionPolicy.getCompressionLevel(vPath) : Deflater.NO_COMPRESSION;
+        final int method = level != Deflater.NO_COMPRESSION ? ZipArchiveEntry.DEFLATED : ZipArchiveEntry.STORED;
+
+        // data deflated with any level is only acceptable if no explicit level has been configured
+        final boolean copyRaw = rawEntry.isRawCopySupported() && sourceEntry.getMethod() == method
+                && (method == ZipArchiveEntry.STORED || level == Deflater.DEFAULT_COMPRESSION);
+        if (copyRaw)
+        {
+            this.getLogger().debug("adding entry {} as raw copy", vPath);
+            this.entries.put(vPath, vPath);
+
+            final ZipArchiveEntry ze = new ZipArchiveEntry(vPath);
+            this.setZipEntryTime(ze, entry.getResource().getLastModified());
+            ze.setMethod(method);
+            ze.setUnixMode(UnixStat.FILE_FLAG | entry.getMode());
+            ze.setCrc(sourceEntry.getCrc());
+            ze.setSize(sourceEntry.getSize());
+            ze.setCompressedSize(sourceEntry.getCompressedSize());
+
+            this.parallelEntryCompressor.submitRaw(ze, () -> {
+                try
+                {
+                    return rawEntry.openRawStream();
+                }
+                catch (final IOException ioex)
+                {
+                    throw new UncheckedIOException(ioex);
+                }
+            });
+        }
+        return copyRaw;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void finalizeZipOutputStream(final ConcurrentJarCreator zOut) throws IOException, ArchiverException
+    {
+        if (this.parallelEntryCompressor != null)
+        {
+            this.parallelEntryCompressor.finish();
+        }
+
+        super.finalizeZipOutputStream(zOut);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void cleanUp() throws IOException
+    {
+        try
+        {
+            if (this.parallelEntryCompressor != null)
+            {
+                this.parallelEntryCompressor.close();
+                this.parallelEntryCompressor = null;
+            }
+            this.rawCopyResources.clear();
+            this.compressionPolicy = null;
+        }
+        finally
+        {
+            super.cleanUp();
+        }
+    }
 }
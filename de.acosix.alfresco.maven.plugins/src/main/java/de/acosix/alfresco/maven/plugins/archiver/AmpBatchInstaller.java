@@ -0,0 +1,346 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class install multiple AMPs into a web application in a single pass. The AMPs are ordered by their declared module
+ * dependencies, and the files each AMP would install are resolved up front so that files overridden by a module installed later are never
+ * written by any module installed before. Into an exploded web application, every file is thus written at most once, and a web application
+ * archive is rewritten only once for all AMPs.
+ *
+ * @author Axel Faust
+ */
+public class AmpBatchInstaller
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AmpBatchInstaller.class);
+
+    private final List<File> ampFiles;
+
+    private String encoding = StandardCharsets.UTF_8.name();
+
+    private int extractionThreadCount = 1;
+
+    private int pipelineWriterThreadCount = 0;
+
+    private boolean deltaInstall = false;
+
+    private boolean backupReplacedFiles = false;
+
+    private boolean skipDependencyCheck = false;
+
+    private File metricsFile;
+
+    private File extractionCacheDirectory;
+
+    private boolean linkExtractionCacheFiles = false;
+
+    public AmpBatchInstaller(final List<File> ampFiles)
+    {
+        this.ampFiles = new ArrayList<>(ampFiles);
+    }
+
+    /**
+     * @param encoding
+     *            the encoding to set
+     */
+    public void setEncoding(final String encoding)
+    {
+        this.encoding = encoding;
+    }
+
+    /**
+     * @param extractionThreadCount
+     *            the extractionThreadCount to set
+     * @see AmpUnArchiver#setExtractionThreadCount(int)
+     */
+    public void setExtractionThreadCount(final int extractionThreadCount)
+    {
+        this.extractionThreadCount = extractionThreadCount;
+    }
+
+    /**
+     * @param pipelineWriterThreadCount
+     *            the pipelineWriterThreadCount to set
+     * @see AmpUnArchiver#setPipelineWriterThreadCount(int)
+     */
+    public void setPipelineWriterThreadCount(final int pipelineWriterThreadCount)
+    {
+        this.pipelineWriterThreadCount = pipelineWriterThreadCount;
+    }
+
+    /**
+     * @param deltaInstall
+     *            the deltaInstall to set
+     * @see AmpUnArchiver#setDeltaInstall(boolean)
+     */
+    public void setDeltaInstall(final boolean deltaInstall)
+    {
+        this.deltaInstall = deltaInstall;
+    }
+
+    /**
+     * @param backupReplacedFiles
+     *            the backupReplacedFiles to set
+     * @see AmpUnArchiver#setBackupReplacedFiles(boolean)
+     */
+    public void setBackupReplacedFiles(final boolean backupReplacedFiles)
+    {
+        this.backupReplacedFiles = backupReplacedFiles;
+    }
+
+    /**
+     * @param skipDependencyCheck
+     *            the skipDependencyCheck to set
+     * @see AmpUnArchiver#setSkipDependencyCheck(boolean)
+     */
+    public void setSkipDependencyCheck(final boolean skipDependencyCheck)
+    {
+        this.skipDependencyCheck = skipDependencyCheck;
+    }
+
+    /**
+     * Sets the file to which to write a JSON summary of the {@link AmpUnArchiver#getInstallMetrics() metrics} of all AMP installs once
+     * the batch has been installed.
+     *
+     * @param metricsFile
+     *            the metricsFile to set
+     */
+    public void setMetricsFile(final File metricsFile)
+    {
+        this.metricsFile = metricsFile;
+    }
+
+    /**
+     * @param extractionCacheDirectory
+     *            the extractionCacheDirectory to set
+     * @see AmpUnArchiver#setExtractionCacheDirectory(File)
+     */
+    public void setExtractionCacheDirectory(final File extractionCacheDirectory)
+    {
+        this.extractionCacheDirectory = extractionCacheDirectory;
+    }
+
+    /**
+     * @param linkExtractionCacheFiles
+     *            the linkExtractionCacheFiles to set
+     * @see AmpUnArchiver#setLinkExtractionCacheFiles(boolean)
+     */
+    public void setLinkExtractionCacheFiles(final boolean linkExtractionCacheFiles)
+    {
+        this.linkExtractionCacheFiles = linkExtractionCacheFiles;
+    }
+
+    /**
+     * Installs all AMPs into a web application.
+     *
+     * @param target
+     *            the web application to install into - either an existing web application archive or the root directory of an exploded
+     *            web application
+     */
+    public void install(final File target) throws ArchiverException
+    {
+        final boolean intoWar = target.isFile();
+        if (!intoWar && !target.isDirectory() && !target.mkdirs())
+        {
+            throw new ArchiverException("Failed to create web application directory " + target);
+        }
+
+        final List<AmpUnArchiver> unArchivers = new ArrayList<>(this.ampFiles.size());
+        try
+        {
+            for (final File ampFile : this.ampFiles)
+            {
+                final AmpUnArchiver unArchiver = new AmpUnArchiver(ampFile);
+                unArchiver.setEncoding(this.encoding);
+                unArchiver.setExtractionThreadCount(this.extractionThreadCount);
+                unArchiver.setPipelineWriterThreadCount(this.pipelineWriterThreadCount);
+                unArchiver.setDeltaInstall(this.deltaInstall);
+                unArchiver.setBackupReplacedFiles(this.backupReplacedFiles);
+                unArchiver.setSkipDependencyCheck(this.skipDependencyCheck);
+                unArchiver.setExtractionCacheDirectory(this.extractionCacheDirectory);
+                unArchiver.setLinkExtractionCacheFiles(this.linkExtractionCacheFiles);
+                if (intoWar)
+                {
+                    unArchiver.setDestFile(target);
+                }
+                else
+                {
+                    unArchiver.setDestDirectory(target);
+                }
+                unArchivers.add(unArchiver);
+            }
+
+            final List<AmpUnArchiver> orderedUnArchivers = orderByDependencies(unArchivers);
+            LOGGER.info("Installing modules in order {} into {}",
+                    orderedUnArchivers.stream().map(u -> u.getOrLoadModuleDetails().getId()).collect(Collectors.toList()), target);
+
+            // validate all modules before anything is written, considering modules installed before as already installed
+            final List<ModuleDetails> coInstalledModules = new ArrayList<>();
+            for (final AmpUnArchiver unArchiver : orderedUnArchivers)
+            {
+                unArchiver.setCoInstalledModules(new ArrayList<>(coInstalledModules));
+                unArchiver.validateAlfrescoModuleMetadata(unArchiver.getDestDirectory());
+                coInstalledModules.add(unArchiver.getOrLoadModuleDetails());
+            }
+
+            if (intoWar)
+            {
+                this.installIntoWar(orderedUnArchivers, target);
+            }
+            else
+            {
+                this.installIntoDirectory(orderedUnArchivers);
+            }
+
+            if (this.metricsFile != null)
+            {
+                this.writeMetrics(orderedUnArchivers);
+            }
+        }
+        finally
+        {
+            unArchivers.forEach(AmpUnArchiver::closeSession);
+        }
+    }
+
+    protected void installIntoDirectory(final List<AmpUnArchiver> orderedUnArchivers) throws ArchiverException
+    {
+        // resolve files of later modules first so that each module knows which of its files are overridden
+        final Set<String> overriddenTargetNames = new HashSet<>();
+        for (int idx = orderedUnArchivers.size() - 1; idx >= 0; idx--)
+        {
+            final AmpUnArchiver unArchiver = orderedUnArchivers.get(idx);
+            unArchiver.setOverriddenTargetNames(new HashSet<>(overriddenTargetNames));
+            overriddenTargetNames.addAll(unArchiver.resolveTargetFileNames());
+        }
+
+        for (final AmpUnArchiver unArchiver : orderedUnArchivers)
+        {
+            LOGGER.debug("Installing {} with {} files overridden by modules installed later", unArchiver.getSourceFile(),
+                    unArchiver.getOverriddenTargetNames().size());
+            unArchiver.extract();
+        }
+    }
+
+    protected void installIntoWar(final List<AmpUnArchiver> orderedUnArchivers, final File warFile) throws ArchiverException
+    {
+        final WarArchiveRewriter rewriter = new WarArchiveRewriter(warFile, warFile, this.encoding);
+        try
+        {
+            for (final AmpUnArchiver unArchiver : orderedUnArchivers)
+            {
+                // contributions of later modules replace those of earlier modules for the same entry
+                unArchiver.contributeToWar(rewriter);
+            }
+            rewriter.write();
+        }
+        catch (final IOException ioe)
+        {
+            throw new ArchiverException("Error while installing modules into " + warFile.getAbsolutePath(), ioe);
+        }
+
+        // archive is written for all modules at once, so install of any module only completes now
+        orderedUnArchivers.forEach(AmpUnArchiver::publishInstallMetrics);
+    }
+
+    protected void writeMetrics(final List<AmpUnArchiver> orderedUnArchivers)
+    {
+        try
+        {
+            InstallMetrics.writeJson(this.metricsFile,
+                    orderedUnArchivers.stream().map(AmpUnArchiver::getInstallMetrics).collect(Collectors.toList()));
+        }
+        catch (final IOException ioex)
+        {
+            LOGGER.warn("Failed to write install metrics to {}", this.metricsFile, ioex);
+        }
+    }
+
+    /**
+     * Orders the AMPs so that each module is installed after all modules of the batch it depends on. Modules without dependencies between
+     * each other retain their relative order.
+     *
+     * @param unArchivers
+     *            the unarchivers of the AMPs to order
+     * @return the ordered unarchivers
+     */
+    protected static List<AmpUnArchiver> orderByDependencies(final List<AmpUnArchiver> unArchivers) throws ArchiverException
+    {
+        final Map<String, AmpUnArchiver> unArchiversById = new HashMap<>();
+        for (final AmpUnArchiver unArchiver : unArchivers)
+        {
+            final ModuleDetails md = unArchiver.getOrLoadModuleDetails();
+            final List<String> ids = new ArrayList<>(md.getAliases());
+            ids.add(0, md.getId());
+            for (final String id : ids)
+            {
+                final AmpUnArchiver existing = unArchiversById.put(id, unArchiver);
+                if (existing != null && existing != unArchiver)
+                {
+                    throw new ArchiverException("Module " + id + " is provided by both " + existing.getSourceFile() + " and "
+                            + unArchiver.getSourceFile());
+                }
+            }
+        }
+
+        final List<AmpUnArchiver> remaining = new ArrayList<>(unArchivers);
+        final List<AmpUnArchiver> ordered = new ArrayList<>(unArchivers.size());
+        final Set<AmpUnArchiver> installed = new HashSet<>();
+        while (!remaining.isEmpty())
+        {
+            boolean progress = false;
+            final Iterator<AmpUnArchiver> remainingIt = remaining.iterator();
+            while (remainingIt.hasNext() && !progress)
+            {
+                final AmpUnArchiver unArchiver = remainingIt.next();
+                final boolean dependenciesInstalled = unArchiver.getOrLoadModuleDetails().getDependencies().stream()
+                        .map(d -> unArchiversById.get(d.getDependencyId()))
+                        .allMatch(d -> d == null || d == unArchiver || installed.contains(d));
+                if (dependenciesInstalled)
+                {
+                    remainingIt.remove();
+                    ordered.add(unArchiver);
+                    installed.add(unArchiver);
+                    progress = true;
+                }
+            }
+
+            if (!progress)
+            {
+                throw new ArchiverException("Cyclic dependencies between modules "
+                        + remaining.stream().map(u -> u.getOrLoadModuleDetails().getId()).collect(Collectors.toList()));
+            }
+        }
+        return ordered;
+    }
+}
@@ -15,31 +15,59 @@
  */
 package de.acosix.alfresco.maven.plugins.archiver;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TimeZone;
-import java.util.jar.Attributes;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.jar.Manifest;
+import java.util.zip.CRC32;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.maven.artifact.versioning.ComparableVersion;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.zip.AbstractZipUnArchiver;
 import org.codehaus.plexus.components.io.filemappers.FileMapper;
 import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
 
 /**
  *
@@ -50,6 +78,8 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
 
     public static final String VERSION_PROPERTIES = "WEB-INF/classes/alfresco/version.properties";
 
+    public static final String MODULE_DIRECTORY = "WEB-INF/classes/alfresco/module/";
+
     public static final String MODULE_PROPERTIES = "module.properties";
 
     public static final String FILE_MAPPING_PROPERTIES = "file-mapping.properties";
@@ -70,17 +100,23 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
 
     private static final String NATIVE_ENCODING = "native-encoding";
 
+    private static final int WORK_UNITS_PER_THREAD = 4;
+
+    private static final int CRC_BUFFER_SIZE = 64 * 1024;
+
+    private static final long PIPELINE_BUFFER_BUDGET = 16 * 1024 * 1024;
+
     /**
      *
      * @author Axel Faust
      */
-    private static interface FileReader<T>
+    static interface FileReader<T>
     {
 
         T readFile(InputStream is) throws IOException;
     }
 
-    private static final FileReader<Properties> PROPERTIES_READER = new FileReader<Properties>()
+    static final FileReader<Properties> PROPERTIES_READER = new FileReader<Properties>()
     {
 
         /**
@@ -96,7 +132,7 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
         }
     };
 
-    private static final FileReader<Manifest> MANIFEST_READER = new FileReader<Manifest>()
+    static final FileReader<Manifest> MANIFEST_READER = new FileReader<Manifest>()
     {
 
         /**
@@ -110,12 +146,170 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
         }
     };
 
+    /**
+     * Simple file info for entries of the AMP, since the base class implementation is private.
+     *
+     * @author Axel Faust
+     */
+    private static class AmpEntryFileInfo implements PlexusIoResource
+    {
+
+        private final ZipFile zipFile;
+
+        private final ZipArchiveEntry zipEntry;
+
+        private AmpEntryFileInfo(final ZipFile zipFile, final ZipArchiveEntry zipEntry)
+        {
+            this.zipFile = zipFile;
+            this.zipEntry = zipEntry;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public String getName()
+        {
+            return this.zipEntry.getName();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isDirectory()
+        {
+            return this.zipEntry.isDirectory();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isFile()
+        {
+            return !this.zipEntry.isDirectory() && !this.zipEntry.isUnixSymlink();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isSymbolicLink()
+        {
+            return this.zipEntry.isUnixSymlink();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public InputStream getContents() throws IOException
+        {
+            if (this.zipFile == null)
+            {
+                throw new IOException("Contents of entry " + this.zipEntry.getName() + " cannot be accessed for an AMP read as a stream");
+            }
+            return this.zipFile.getInputStream(this.zipEntry);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public long getLastModified()
+        {
+            final long l = this.zipEntry.getTime();
+            return l == 0 ? PlexusIoResource.UNKNOWN_MODIFICATION_DATE : l;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public long getSize()
+        {
+            final long l = this.zipEntry.getSize();
+            return l == -1 ? PlexusIoResource.UNKNOWN_RESOURCE_SIZE : l;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public URL getURL() throws IOException
+        {
+            return null;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isExisting()
+        {
+            return true;
+        }
+    }
+
     // encoding is not exposed via a getter in base class so need to duplicate it
     private String encoding = StandardCharsets.UTF_8.name();
 
-    private final ThreadLocal<Properties> fileMappingProperties = new ThreadLocal<>();
+    // max output size is not exposed via a getter in base class so need to duplicate it
+    private long maxOutputSize = Long.MAX_VALUE;
+
+    private int extractionThreadCount = 1;
+
+    private boolean deltaInstall = false;
+
+    private Set<String> overriddenTargetNames = Collections.emptySet();
+
+    private boolean fileSelectorAndMappersAdapted = false;
+
+    private boolean skipDependencyCheck = false;
+
+    private Collection<ModuleDetails> coInstalledModules = Collections.emptyList();
 
-    private final ThreadLocal<ModuleDetails> moduleDetails = new ThreadLocal<>();
+    private InstallManifest previousInstallManifest;
+
+    private InstallManifest installManifest;
+
+    private final AtomicInteger entriesWritten = new AtomicInteger();
+
+    private final AtomicInteger entriesUnchanged = new AtomicInteger();
+
+    private volatile AmpArchiveSession session;
+
+    private volatile InstallMetrics installMetrics;
+
+    private volatile String installDate;
+
+    private File metricsFile;
+
+    private boolean transferStoredEntries = true;
+
+    private File extractionCacheDirectory;
+
+    private boolean customFileSelectorsOrMappers = false;
+
+    private boolean directExtractionBuffers = false;
+
+    private boolean backupReplacedFiles = false;
+
+    private boolean linkExtractionCacheFiles = false;
+
+    private int pipelineWriterThreadCount = 0;
+
+    private ExtractionWriter extractionWriter;
 
     public AmpUnArchiver()
     {
@@ -142,230 +336,1975 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
     }
 
     /**
-     * @return the encoding
+     * @return the encoding
+     */
+    public String getEncoding()
+    {
+        return this.encoding;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxOutputSize(final long maxOutputSize)
+    {
+        super.setMaxOutputSize(maxOutputSize);
+        this.maxOutputSize = maxOutputSize;
+    }
+
+    /**
+     * @return the maxOutputSize
+     */
+    public long getMaxOutputSize()
+    {
+        return this.maxOutputSize;
+    }
+
+    /**
+     * Sets the number of threads to use for extracting entries. A value of {@code 1} (the default) extracts entries sequentially, while a
+     * value of less than {@code 1} uses as many threads as there are available processors.
+     *
+     * @param extractionThreadCount
+     *            the extractionThreadCount to set
+     */
+    public void setExtractionThreadCount(final int extractionThreadCount)
+    {
+        this.extractionThreadCount = extractionThreadCount;
+    }
+
+    /**
+     * @return the extractionThreadCount
+     */
+    public int getExtractionThreadCount()
+    {
+        return this.extractionThreadCount;
+    }
+
+    /**
+     * Sets whether installs should be performed as delta installs. In a delta install, files which already exist in the destination
+     * with the same size and CRC32 checksum as the corresponding entry of the AMP are not written again, and files which had been
+     * installed by a previous version of the same module but are no longer contained in the AMP are removed, provided they have not been
+     * modified since.
+     *
+     * @param deltaInstall
+     *            the deltaInstall to set
+     */
+    public void setDeltaInstall(final boolean deltaInstall)
+    {
+        this.deltaInstall = deltaInstall;
+    }
+
+    /**
+     * @return the deltaInstall
+     */
+    public boolean isDeltaInstall()
+    {
+        return this.deltaInstall;
+    }
+
+    /**
+     * Sets the names of files, relative to the root of the web application, which are overridden by other modules installed after this
+     * one and thus must not be written when this module is installed.
+     *
+     * @param overriddenTargetNames
+     *            the overriddenTargetNames to set
+     */
+    public void setOverriddenTargetNames(final Set<String> overriddenTargetNames)
+    {
+        this.overriddenTargetNames = overriddenTargetNames != null ? overriddenTargetNames : Collections.emptySet();
+    }
+
+    /**
+     * @return the overriddenTargetNames
+     */
+    public Set<String> getOverriddenTargetNames()
+    {
+        return this.overriddenTargetNames;
+    }
+
+    /**
+     * Sets whether the check of module dependencies against the modules installed in the destination should be skipped.
+     *
+     * @param skipDependencyCheck
+     *            the skipDependencyCheck to set
+     */
+    public void setSkipDependencyCheck(final boolean skipDependencyCheck)
+    {
+        this.skipDependencyCheck = skipDependencyCheck;
+    }
+
+    /**
+     * @return the skipDependencyCheck
+     */
+    public boolean isSkipDependencyCheck()
+    {
+        return this.skipDependencyCheck;
+    }
+
+    /**
+     * Sets the modules which are installed together with this module but have not yet been written into the destination, so that
+     * dependencies on them are considered satisfied.
+     *
+     * @param coInstalledModules
+     *            the coInstalledModules to set
+     */
+    public void setCoInstalledModules(final Collection<ModuleDetails> coInstalledModules)
+    {
+        this.coInstalledModules = coInstalledModules != null ? coInstalledModules : Collections.emptyList();
+    }
+
+    /**
+     * @return the coInstalledModules
+     */
+    public Collection<ModuleDetails> getCoInstalledModules()
+    {
+        return this.coInstalledModules;
+    }
+
+    /**
+     * Sets the file to which to write a JSON summary of the {@link #getInstallMetrics() metrics} of the install once it has completed.
+     * Metrics are always published as flight recorder events, regardless of whether this file is set.
+     *
+     * @param metricsFile
+     *            the metricsFile to set
+     */
+    public void setMetricsFile(final File metricsFile)
+    {
+        this.metricsFile = metricsFile;
+    }
+
+    /**
+     * @return the metricsFile
+     */
+    public File getMetricsFile()
+    {
+        return this.metricsFile;
+    }
+
+    /**
+     * Sets whether entries stored without compression should be extracted by transferring their data directly from the AMP file into the
+     * extracted file via file channels, so that the data is copied by the operating system without passing through the Java heap.
+     *
+     * @param transferStoredEntries
+     *            the transferStoredEntries to set
+     */
+    public void setTransferStoredEntries(final boolean transferStoredEntries)
+    {
+        this.transferStoredEntries = transferStoredEntries;
+    }
+
+    /**
+     * @return the transferStoredEntries
+     */
+    public boolean isTransferStoredEntries()
+    {
+        return this.transferStoredEntries;
+    }
+
+    /**
+     * Sets whether the pooled buffers used to write extracted files should be direct buffers. Direct buffers avoid an additional copy
+     * when writing to the file, but are allocated outside of the Java heap.
+     *
+     * @param directExtractionBuffers
+     *            the directExtractionBuffers to set
+     */
+    public void setDirectExtractionBuffers(final boolean directExtractionBuffers)
+    {
+        this.directExtractionBuffers = directExtractionBuffers;
+    }
+
+    /**
+     * @return the directExtractionBuffers
+     */
+    public boolean isDirectExtractionBuffers()
+    {
+        return this.directExtractionBuffers;
+    }
+
+    /**
+     * Sets whether existing files replaced by the install should be backed up, so that they can be restored when the module is
+     * {@link ModuleUninstaller uninstalled}. Backups are kept within the module directory of the web application, so they are disabled
+     * by default to avoid adding them to every web application installed into.
+     *
+     * @param backupReplacedFiles
+     *            the backupReplacedFiles to set
+     */
+    public void setBackupReplacedFiles(final boolean backupReplacedFiles)
+    {
+        this.backupReplacedFiles = backupReplacedFiles;
+    }
+
+    /**
+     * @return the backupReplacedFiles
+     */
+    public boolean isBackupReplacedFiles()
+    {
+        return this.backupReplacedFiles;
+    }
+
+    /**
+     * Sets the number of threads writing extracted files in pipelined extraction. If set to a value greater than 0 and entries are not
+     * {@link #setExtractionThreadCount(int) extracted in parallel}, entries are read and inflated by one thread into a bounded set of
+     * buffers, while the configured number of threads write the extracted files, so that inflating and writing overlap.
+     *
+     * @param pipelineWriterThreadCount
+     *            the pipelineWriterThreadCount to set
+     */
+    public void setPipelineWriterThreadCount(final int pipelineWriterThreadCount)
+    {
+        this.pipelineWriterThreadCount = pipelineWriterThreadCount;
+    }
+
+    /**
+     * @return the pipelineWriterThreadCount
+     */
+    public int getPipelineWriterThreadCount()
+    {
+        return this.pipelineWriterThreadCount;
+    }
+
+    /**
+     * Sets the directory of the local cache of extracted AMPs. If set, installs into an exploded web application extract the AMP into
+     * the cache once, keyed by the digest of the AMP and its effective file mappings, and materialise the install by copying the cached
+     * files into the web application - or hard linking them if {@link #setLinkExtractionCacheFiles(boolean) enabled}. Installs with
+     * custom file selectors or mappers never use the cache.
+     *
+     * @param extractionCacheDirectory
+     *            the extractionCacheDirectory to set
+     */
+    public void setExtractionCacheDirectory(final File extractionCacheDirectory)
+    {
+        this.extractionCacheDirectory = extractionCacheDirectory;
+    }
+
+    /**
+     * @return the extractionCacheDirectory
+     */
+    public File getExtractionCacheDirectory()
+    {
+        return this.extractionCacheDirectory;
+    }
+
+    /**
+     * Sets whether files installed from the {@link #setExtractionCacheDirectory(File) cache of extracted AMPs} should be hard linked
+     * instead of copied. Hard linked files share their content with the cache, so this must only be enabled if files in the web
+     * application are never modified in place, e.g. by resource filtering or overlays. Cache entries modified this way are detected and
+     * extracted again, but the modified files of previous installs remain affected.
+     *
+     * @param linkExtractionCacheFiles
+     *            the linkExtractionCacheFiles to set
+     */
+    public void setLinkExtractionCacheFiles(final boolean linkExtractionCacheFiles)
+    {
+        this.linkExtractionCacheFiles = linkExtractionCacheFiles;
+    }
+
+    /**
+     * @return the linkExtractionCacheFiles
+     */
+    public boolean isLinkExtractionCacheFiles()
+    {
+        return this.linkExtractionCacheFiles;
+    }
+
+    /**
+     * Retrieves the metrics of the install performed by this instance. Metrics are recorded from the validation of the module onwards and
+     * accumulate across all operations of this instance.
+     *
+     * @return the metrics of the install
+     */
+    public InstallMetrics getInstallMetrics()
+    {
+        InstallMetrics installMetrics = this.installMetrics;
+        if (installMetrics == null)
+        {
+            synchronized (this)
+            {
+                installMetrics = this.installMetrics;
+                if (installMetrics == null)
+                {
+                    installMetrics = new InstallMetrics(this.getSourceFile());
+                    this.installMetrics = installMetrics;
+                }
+            }
+        }
+        return installMetrics;
+    }
+
+    protected int getEffectiveExtractionThreadCount()
+    {
+        return this.extractionThreadCount < 1 ? Runtime.getRuntime().availableProcessors() : this.extractionThreadCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void validate() throws ArchiverException
+    {
+        super.validate();
+
+        final File destFile = this.getDestFile();
+        if (destFile != null && !destFile.isFile())
+        {
+            // unpack INTO another file - only supported as WAR install
+            throw new ArchiverException("Unpacking into a file is only supported for an existing WAR file");
+        }
+
+        try
+        {
+            this.validateAlfrescoModuleMetadata(getDestDirectory());
+        }
+        catch (final RuntimeException e)
+        {
+            this.closeSession();
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void validate(final String path, final File outputDirectory) throws ArchiverException
+    {
+        // for some reason there is an empty validation impl in base class(es)
+
+        final File sourceFile = this.getSourceFile();
+
+        if (sourceFile == null)
+        {
+            throw new ArchiverException("The source file isn't defined.");
+        }
+
+        if (sourceFile.isDirectory())
+        {
+            throw new ArchiverException("The source must not be a directory.");
+        }
+
+        if (!sourceFile.exists())
+        {
+            throw new ArchiverException("The source file " + sourceFile + " doesn't exist.");
+        }
+
+        if (outputDirectory == null)
+        {
+            throw new ArchiverException("The destination isn't defined.");
+        }
+
+        try
+        {
+            this.validateAlfrescoModuleMetadata(outputDirectory);
+        }
+        catch (final RuntimeException e)
+        {
+            this.closeSession();
+            throw e;
+        }
+    }
+
+    protected void validateAlfrescoModuleMetadata(final File outputDirectory) throws ArchiverException
+    {
+        try (InstallMetrics.PhaseTimer timer = this.getInstallMetrics().time(InstallMetrics.Phase.VALIDATION))
+        {
+            this.validateAlfrescoModuleMetadataImpl(outputDirectory);
+        }
+    }
+
+    private void validateAlfrescoModuleMetadataImpl(final File outputDirectory) throws ArchiverException
+    {
+        final File destFile = this.getDestFile();
+
+        final ModuleDetails md = this.getOrLoadModuleDetails();
+        this.getInstallMetrics().setModuleId(md.getId());
+
+        final File destContext = outputDirectory != null && outputDirectory.isDirectory() ? outputDirectory
+                : (destFile != null && destFile.exists() ? destFile : null);
+        if (destContext != null)
+        {
+            this.getInstallMetrics().setDestination(destContext);
+
+            // unarchiver instances are per-lookup, so metadata is cached across all installs into the same destination
+            final WebappMetadata webappMetadata = WebappMetadata.forDestination(destContext, this.encoding);
+
+            if (webappMetadata.hasVersionProperties())
+            {
+                this.validateAlfrescoModuleAgainstVersionProperties(md, webappMetadata);
+            }
+            else if (webappMetadata.hasManifest())
+            {
+                this.validateAlfrescoModuleAgainstManifest(md, webappMetadata);
+            }
+            else
+            {
+                this.getLogger().debug(
+                        "Module cannot be validated before unpacking as neither version.properties nor manifest can be found in context {}",
+                        destContext);
+            }
+
+            // dependencies can only be checked if the destination is actually a web application
+            final List<ModuleDependency> dependencies = md.getDependencies();
+            if (!dependencies.isEmpty() && !this.skipDependencyCheck
+                    && (webappMetadata.hasVersionProperties() || webappMetadata.hasManifest()))
+            {
+                InstalledModuleIndex index = InstalledModuleIndex.forDestination(destContext);
+                if (!this.coInstalledModules.isEmpty())
+                {
+                    index = index.withModules(this.coInstalledModules);
+                }
+                this.validateModuleDependencies(md, index);
+            }
+        }
+        // else: nothing to validate - unpack into "nothing"
+    }
+
+    /**
+     * Validates the dependencies of a module against the modules installed in the destination, including the detection of cyclic
+     * dependencies between the module and any installed modules.
+     *
+     * @param md
+     *            the module to validate
+     * @param index
+     *            the index of installed modules
+     */
+    protected void validateModuleDependencies(final ModuleDetails md, final InstalledModuleIndex index) throws ArchiverException
+    {
+        this.getLogger().debug("Validating dependencies of {}", md.getId());
+
+        final List<ModuleDependency> dependencies = md.getDependencies();
+        final List<ModuleDetails> installedModules = new ArrayList<>(dependencies.size());
+        for (final ModuleDependency dependency : dependencies)
+        {
+            final ModuleDetails installedModule = index.getModule(dependency.getDependencyId());
+            if (installedModule == null)
+            {
+                throw new ArchiverException(
+                        "Module " + md.getId() + " depends on module " + dependency.getDependencyId() + " which is not installed");
+            }
+            installedModules.add(installedModule);
+        }
+
+        final Map<ModuleDependency, List<ModuleDetails>> matches = VersionRangeSet.matchAll(dependencies, installedModules);
+        for (final ModuleDependency dependency : dependencies)
+        {
+            if (matches.get(dependency).isEmpty())
+            {
+                final ModuleDetails installedModule = index.getModule(dependency.getDependencyId());
+                final String installedModuleName = installedModule.getId().equals(dependency.getDependencyId())
+                        ? installedModule.getId()
+                        : installedModule.getId() + " (alias " + dependency.getDependencyId() + ")";
+                throw new ArchiverException("Module " + md.getId() + " depends on module " + installedModuleName + " in version "
+                        + dependency.getVersionString() + " but version " + installedModule.getVersion() + " is installed");
+            }
+        }
+
+        this.checkForDependencyCycle(md, md, index, new ArrayList<>(), new HashSet<>());
+    }
+
+    private void checkForDependencyCycle(final ModuleDetails installingModule, final ModuleDetails module, final InstalledModuleIndex index,
+            final List<String> path, final Set<String> checkedModuleIds) throws ArchiverException
+    {
+        if (path.contains(module.getId()))
+        {
+            final List<String> cycle = new ArrayList<>(path.subList(path.indexOf(module.getId()), path.size()));
+            cycle.add(module.getId());
+            throw new ArchiverException("Cyclic module dependencies " + String.join(" -> ", cycle));
+        }
+
+        if (checkedModuleIds.add(module.getId()))
+        {
+            path.add(module.getId());
+            for (final ModuleDependency dependency : module.getDependencies())
+            {
+                ModuleDetails dependencyModule = index.getModule(dependency.getDependencyId());
+                // the module being installed replaces any previously installed version of itself
+                if (dependencyModule != null && dependencyModule.getId().equals(installingModule.getId()))
+                {
+                    dependencyModule = installingModule;
+                }
+                if (dependencyModule != null)
+                {
+                    this.checkForDependencyCycle(installingModule, dependencyModule, index, path, checkedModuleIds);
+                }
+            }
+            path.remove(path.size() - 1);
+        }
+    }
+
+    protected void validateAlfrescoModuleAgainstVersionProperties(final ModuleDetails md, final Properties versionProperties)
+    {
+        this.validateAlfrescoModuleAgainstVersionProperties(md, WebappMetadata.of(versionProperties, null));
+    }
+
+    protected void validateAlfrescoModuleAgainstVersionProperties(final ModuleDetails md, final WebappMetadata webappMetadata)
+    {
+        this.getLogger().debug("Validating {} against version {} and edition {} from version properties", md, webappMetadata.getVersion(),
+                webappMetadata.getEdition());
+
+        this.validateAlfrescoVersion(md, webappMetadata.getVersion());
+        this.validateAlfrescoEdition(md, webappMetadata.getEdition(), false);
+    }
+
+    protected void validateAlfrescoModuleAgainstManifest(final ModuleDetails md, final Manifest manifest)
+    {
+        this.validateAlfrescoModuleAgainstManifest(md, WebappMetadata.of(null, manifest));
+    }
+
+    protected void validateAlfrescoModuleAgainstManifest(final ModuleDetails md, final WebappMetadata webappMetadata)
+    {
+        this.getLogger().debug("Validating {} against version {} and edition {} from manifest", md, webappMetadata.getManifestVersionString(),
+                webappMetadata.getManifestEdition());
+
+        final String manifestVersionStr = webappMetadata.getManifestVersionString();
+        final String edition = webappMetadata.getManifestEdition();
+
+        if (manifestVersionStr != null && manifestVersionStr.length() > 0)
+        {
+            if (webappMetadata.getManifestVersion() != null)
+            {
+                this.validateAlfrescoVersion(md, webappMetadata.getManifestVersion());
+            }
+            else if (edition != null && edition.length() > 0 && edition.endsWith(MANIFEST_COMMUNITY))
+            {
+                this.getLogger()
+                        .warn("Community edition web application detected, the version number is non-numeric so we will not validate it.");
+            }
+            else
+            {
+                throw new ArchiverException("Invalid version number specified: " + manifestVersionStr);
+            }
+        }
+
+        if (edition != null && edition.length() > 0)
+        {
+            this.validateAlfrescoEdition(md, edition, true);
+        }
+        else
+        {
+            this.getLogger().warn(
+                    "No edition information detected in war, edition validation is disabled, continuing anyway. Is this war prior to 3.4.11, 4.1.1 and Community 4.2 ?");
+        }
+    }
+
+    protected void validateAlfrescoVersion(final ModuleDetails md, final ComparableVersion alfrescoVersion)
+    {
+        if (alfrescoVersion.compareTo(md.getRepoVersionMin()) < 0)
+        {
+            throw new ArchiverException(
+                    "The module (" + md.getTitle() + ") must be installed on a web application version equal to or greater than "
+                            + md.getRepoVersionMin() + ". This web application is version: " + alfrescoVersion + ".");
+        }
+
+        if (alfrescoVersion.compareTo(md.getRepoVersionMax()) > 0)
+        {
+            throw new ArchiverException("The module (" + md.getTitle() + ") cannot be installed on a web application version greater than "
+                    + md.getRepoVersionMax() + ". This web application is version: " + alfrescoVersion + ".");
+        }
+    }
+
+    protected void validateAlfrescoEdition(final ModuleDetails md, final String edition, final boolean endsWithCheck)
+    {
+        final List<String> supportedEditions = md.getEditions();
+        if (!supportedEditions.isEmpty())
+        {
+            final String editionL = edition.toLowerCase(Locale.ENGLISH);
+            boolean editionIsAllowed = false;
+            for (final String allowedEdition : supportedEditions)
+            {
+                final String allowedEditionL = allowedEdition.toLowerCase(Locale.ENGLISH);
+                editionIsAllowed = editionIsAllowed
+                        || (endsWithCheck ? editionL.endsWith(allowedEditionL) : allowedEditionL.equals(editionL));
+            }
+
+            if (!editionIsAllowed)
+            {
+                throw new ArchiverException(
+                        "The module (" + md.getTitle() + ") can only be installed in one of the following editions" + supportedEditions);
+            }
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void execute() throws ArchiverException
+    {
+        final File destFile = this.getDestFile();
+        if (destFile != null)
+        {
+            this.executeIntoWar(destFile);
+        }
+        else
+        {
+            super.execute();
+        }
+    }
+
+    /**
+     * Installs the AMP into a web application archive by rewriting the archive with all mapped AMP entries merged in. Entries of the web
+     * application archive which are not overridden by the AMP are copied as raw compressed data, as are all AMP entries except for the
+     * module.properties, which is patched with the installation details.
+     *
+     * @param warFile
+     *            the web application archive to install into
+     */
+    protected void executeIntoWar(final File warFile) throws ArchiverException
+    {
+        final File sourceFile = this.getSourceFile();
+
+        this.getLogger().debug("Installing {} into web application archive {}", sourceFile, warFile);
+
+        try
+        {
+            final WarArchiveRewriter rewriter = new WarArchiveRewriter(warFile, warFile, this.encoding);
+            this.contributeToWar(rewriter);
+            try (InstallMetrics.PhaseTimer timer = this.getInstallMetrics().time(InstallMetrics.Phase.WRITE))
+            {
+                rewriter.write();
+            }
+            this.publishInstallMetrics();
+        }
+        catch (final IOException ioe)
+        {
+            throw new ArchiverException("Error while installing " + sourceFile.getAbsolutePath() + " into " + warFile.getAbsolutePath(),
+                    ioe);
+        }
+        finally
+        {
+            this.closeSession();
+        }
+    }
+
+    /**
+     * Adds all selected entries of the AMP as contributions to the rewrite of a web application archive. The session of the AMP is kept
+     * open as the contributed entries are only copied when the web application archive is written, so the caller is responsible for
+     * {@link #closeSession() closing the session} afterwards.
+     *
+     * @param rewriter
+     *            the rewriter of the web application archive
+     */
+    protected void contributeToWar(final WarArchiveRewriter rewriter) throws IOException, ArchiverException
+    {
+        adaptFileSelectorAndMappers();
+
+        final AmpArchiveSession session = this.getOrOpenSession();
+        final ModuleDetails md = this.getOrLoadModuleDetails();
+        this.getOrLoadFileMappings();
+
+        this.addWarContributions(session, md, rewriter);
+    }
+
+    /**
+     * Resolves the names of all files, relative to the root of the web application, which an install of the AMP would write, excluding
+     * the module.properties. This opens the session for the AMP, which is kept open for any subsequent install.
+     *
+     * @return the names of the files the AMP would install
+     */
+    protected Set<String> resolveTargetFileNames() throws ArchiverException
+    {
+        adaptFileSelectorAndMappers();
+
+        final AmpArchiveSession session = this.getOrOpenSession();
+        this.getOrLoadModuleDetails();
+        this.getOrLoadFileMappings();
+
+        final Set<String> targetNames = new HashSet<>();
+        for (final ZipArchiveEntry ze : this.selectEntries(session, ""))
+        {
+            if (!ze.isDirectory() && !ze.isUnixSymlink() && !MODULE_PROPERTIES.equals(ze.getName()))
+            {
+                final String targetName = this.resolveTargetEntryName(ze.getName());
+                if (targetName != null)
+                {
+                    targetNames.add(targetName);
+                }
+            }
+        }
+        return targetNames;
+    }
+
+    /**
+     * Adds all selected entries of the AMP as contributions to the rewrite of a web application archive.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param md
+     *            the module details of the AMP being installed
+     * @param rewriter
+     *            the rewriter of the web application archive
+     */
+    protected void addWarContributions(final AmpArchiveSession session, final ModuleDetails md, final WarArchiveRewriter rewriter)
+            throws IOException, ArchiverException
+    {
+        final ZipFile zipFile = session.getZipFile();
+        final InstallManifest manifest = new InstallManifest();
+        final long now = System.currentTimeMillis();
+        final InstallMetrics metrics = this.getInstallMetrics();
+        metrics.setDestination(rewriter.getTargetFile());
+
+        final List<ZipArchiveEntry> selectedEntries = this.selectEntries(session, "");
+        metrics.recordSelection(session.getEntries().size(), selectedEntries.size());
+        for (final ZipArchiveEntry ze : selectedEntries)
+        {
+            final String targetName = this.resolveTargetEntryName(ze.getName());
+            if (targetName == null)
+            {
+                metrics.recordSkipped();
+                continue;
+            }
+            if (targetName.startsWith("/") || targetName.equals("..") || targetName.startsWith("../") || targetName.contains("/../")
+                    || targetName.endsWith("/.."))
+            {
+                throw new ArchiverException("Entry is outside of the target directory (" + targetName + ")");
+            }
+
+            if (MODULE_PROPERTIES.equals(ze.getName()))
+            {
+                final ByteArrayOutputStream content = new ByteArrayOutputStream();
+                try (InputStream is = zipFile.getInputStream(ze))
+                {
+                    IOUtils.copy(is, content);
+                }
+                content.write(this.buildInstallationDetails());
+                rewriter.addContent(targetName, content.toByteArray(), now);
+                metrics.recordWritten(ze.getCompressedSize(), content.size());
+            }
+            else
+            {
+                rewriter.addEntry(targetName, zipFile, ze);
+                // entries are copied as raw compressed data
+                metrics.recordWritten(ze.getCompressedSize(), ze.getCompressedSize());
+                if (!ze.isDirectory() && !ze.isUnixSymlink())
+                {
+                    manifest.setRecord(targetName, new InstallManifest.Record(ze.getCrc(), ze.getSize(), ze.getTime()));
+                }
+            }
+        }
+
+        final ByteArrayOutputStream manifestContent = new ByteArrayOutputStream();
+        manifest.writeTo(manifestContent, md.getId());
+        rewriter.addContent(InstallManifest.getManifestPath(md.getId()), manifestContent.toByteArray(), now);
+
+        InstalledModuleIndex.registerInstalled(rewriter.getTargetFile(), rewriter, md, this.getOrFormatInstallDate(), manifest.size(), now);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void execute(final String path, final File outputDirectory) throws ArchiverException
+    {
+        adaptFileSelectorAndMappers();
+
+        final File sourceFile = this.getSourceFile();
+
+        this.getLogger().debug("Unpacking {} into directory {}", sourceFile, outputDirectory);
+
+        try
+        {
+            // ensure all module metadata is loaded before extraction
+            final AmpArchiveSession session = this.getOrOpenSession();
+            final ModuleDetails md = this.getOrLoadModuleDetails();
+            this.getOrLoadFileMappings();
+
+            final InstallMetrics metrics = this.getInstallMetrics();
+            metrics.setModuleId(md.getId());
+            metrics.setDestination(outputDirectory);
+
+            try (InstallMetrics.PhaseTimer timer = metrics.time(InstallMetrics.Phase.MANIFEST))
+            {
+                this.prepareInstallManifest(md, outputDirectory);
+            }
+            if (this.extractionCacheDirectory != null && !this.customFileSelectorsOrMappers && path.isEmpty())
+            {
+                this.installFromExtractionCache(session, outputDirectory);
+            }
+            else
+            {
+                this.extractEntries(session, path, outputDirectory);
+            }
+            try (InstallMetrics.PhaseTimer timer = metrics.time(InstallMetrics.Phase.MANIFEST))
+            {
+                this.completeInstallManifest(md, outputDirectory);
+                InstalledModuleIndex.registerInstalled(outputDirectory, md, this.getOrFormatInstallDate(), this.installManifest.size());
+            }
+
+            this.publishInstallMetrics();
+        }
+        finally
+        {
+            this.previousInstallManifest = null;
+            this.installManifest = null;
+            this.closeSession();
+        }
+    }
+
+    /**
+     * Installs the AMP by materialising its files from the {@link #setExtractionCacheDirectory(File) cache of extracted AMPs},
+     * populating the cache first if it does not yet contain the AMP. The module.properties is always extracted from the AMP as it is
+     * patched with the details of the specific install.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param outputDirectory
+     *            the directory into which to install
+     */
+    protected void installFromExtractionCache(final AmpArchiveSession session, final File outputDirectory) throws ArchiverException
+    {
+        final ExtractedAmpCache cache = new ExtractedAmpCache(this.extractionCacheDirectory, this.linkExtractionCacheFiles);
+        final InstallMetrics metrics = this.getInstallMetrics();
+        try (InstallMetrics.PhaseTimer timer = metrics.time(InstallMetrics.Phase.EXTRACTION))
+        {
+            final String key = cache.computeKey(session.getSourceFile(), this.encoding, this.getOrLoadFileMappings());
+            ExtractedAmpCache.Entry entry = cache.get(key);
+            if (entry != null && !cache.verify(entry))
+            {
+                this.getLogger().warn("Extracted {} in cache entry {} has been modified since it was cached - extracting it again",
+                        session.getSourceFile(), key);
+                cache.invalidate(key);
+                entry = null;
+            }
+
+            if (entry == null)
+            {
+                this.getLogger().debug("No extracted {} in cache - extracting into cache entry {}", session.getSourceFile(), key);
+                entry = this.populateExtractionCache(session, cache, key);
+            }
+            else
+            {
+                this.getLogger().debug("Installing {} from extracted cache entry {}", session.getSourceFile(), key);
+            }
+
+            final AtomicLong remainingSpace = new AtomicLong(this.maxOutputSize);
+            this.materialiseFromExtractionCache(cache, entry, outputDirectory, remainingSpace);
+            metrics.recordSelection(session.getEntries().size(), entry.getIndex().size() + 1);
+
+            final ZipArchiveEntry moduleEntry = session.getEntry(MODULE_PROPERTIES);
+            if (moduleEntry != null && this.mapModuleEntryName(MODULE_PROPERTIES, false) != null)
+            {
+                this.extractEntry(session, moduleEntry, outputDirectory, remainingSpace);
+                this.flushExtractionWriter();
+            }
+        }
+        catch (final IOException ioe)
+        {
+            throw new ArchiverException("Error while installing " + session.getSourceFile().getAbsolutePath() + " from cache", ioe);
+        }
+        finally
+        {
+            this.extractionWriter = null;
+        }
+    }
+
+    /**
+     * Extracts the AMP into a new entry of the {@link #setExtractionCacheDirectory(File) cache of extracted AMPs}.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param cache
+     *            the cache
+     * @param key
+     *            the key of the entry for the AMP
+     * @return the populated entry
+     */
+    protected ExtractedAmpCache.Entry populateExtractionCache(final AmpArchiveSession session, final ExtractedAmpCache cache,
+            final String key) throws IOException, ArchiverException
+    {
+        final Path stagingDirectory = cache.createStagingDirectory(key);
+
+        // extract the AMP as-is, unaffected by the state of the actual install
+        final InstallMetrics metrics = this.getInstallMetrics();
+        final InstallManifest installManifest = this.installManifest;
+        final InstallManifest previousInstallManifest = this.previousInstallManifest;
+        final Set<String> overriddenTargetNames = this.overriddenTargetNames;
+        final boolean deltaInstall = this.deltaInstall;
+        final InstallMetrics populationMetrics = new InstallMetrics(session.getSourceFile());
+        this.installMetrics = populationMetrics;
+        this.installManifest = new InstallManifest();
+        this.previousInstallManifest = new InstallManifest();
+        this.overriddenTargetNames = Collections.emptySet();
+        this.deltaInstall = false;
+        final InstallManifest index = this.installManifest;
+        try
+        {
+            this.extractEntries(session, "", stagingDirectory.toFile());
+
+            // patched per install, so never cached
+            final String mappedModuleEntryName = this.mapModuleEntryName(MODULE_PROPERTIES, false);
+            if (mappedModuleEntryName != null)
+            {
+                Files.deleteIfExists(stagingDirectory.resolve(mappedModuleEntryName));
+            }
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            cache.discard(stagingDirectory);
+            throw e;
+        }
+        finally
+        {
+            this.installMetrics = metrics;
+            this.installManifest = installManifest;
+            this.previousInstallManifest = previousInstallManifest;
+            this.overriddenTargetNames = overriddenTargetNames;
+            this.deltaInstall = deltaInstall;
+            this.entriesWritten.set(0);
+        }
+
+        metrics.addTime(InstallMetrics.Phase.MAPPING, populationMetrics.getTime(InstallMetrics.Phase.MAPPING));
+        metrics.addTime(InstallMetrics.Phase.INFLATE, populationMetrics.getTime(InstallMetrics.Phase.INFLATE));
+        metrics.addTime(InstallMetrics.Phase.WRITE, populationMetrics.getTime(InstallMetrics.Phase.WRITE));
+
+        return cache.commit(key, stagingDirectory, index);
+    }
+
+    /**
+     * Materialises all files of an entry of the {@link #setExtractionCacheDirectory(File) cache of extracted AMPs} in the output
+     * directory.
+     *
+     * @param cache
+     *            the cache
+     * @param entry
+     *            the entry for the AMP being installed
+     * @param outputDirectory
+     *            the directory into which to install
+     * @param remainingSpace
+     *            the remaining number of bytes which may be extracted before the maximum output size is exceeded
+     */
+    protected void materialiseFromExtractionCache(final ExtractedAmpCache cache, final ExtractedAmpCache.Entry entry,
+            final File outputDirectory, final AtomicLong remainingSpace) throws IOException, ArchiverException
+    {
+        final InstallMetrics metrics = this.getInstallMetrics();
+        final Path contentDirectory = entry.getContentDirectory();
+        final Path outputPath = outputDirectory.toPath();
+        int filesLinked = 0;
+        int filesCopied = 0;
+
+        final long start = System.nanoTime();
+        final List<Path> cachedPaths;
+        try (Stream<Path> paths = Files.walk(contentDirectory))
+        {
+            cachedPaths = paths.sorted().collect(Collectors.toList());
+        }
+
+        for (final Path cachedPath : cachedPaths)
+        {
+            final String targetName = contentDirectory.relativize(cachedPath).toString().replace(File.separatorChar, '/');
+            final Path targetPath = outputPath.resolve(targetName);
+            if (Files.isDirectory(cachedPath))
+            {
+                Files.createDirectories(targetPath);
+                continue;
+            }
+
+            final InstallManifest.Record record = entry.getIndex().getRecord(targetName);
+            if (record == null)
+            {
+                throw new ArchiverException("Cache entry " + contentDirectory + " contains unindexed file " + targetName);
+            }
+
+            if (this.overriddenTargetNames.contains(targetName))
+            {
+                this.getLogger().debug("Skipping cached file {} overridden by a module installed later", targetName);
+                metrics.recordSkipped();
+                continue;
+            }
+
+            final File targetFile = targetPath.toFile();
+            final InstallManifest.Record previousRecord = this.previousInstallManifest.getRecord(targetName);
+            if (this.deltaInstall && previousRecord != null && previousRecord.getCrc() == record.getCrc()
+                    && (previousRecord.matchesFile(targetFile) || (targetFile.isFile() && Files.isSameFile(targetPath, cachedPath))))
+            {
+                this.getLogger().debug("Skipping unchanged cached file {} in delta install", targetName);
+                this.installManifest.setRecord(targetName, new InstallManifest.Record(record.getCrc(), record.getSize(),
+                        targetFile.lastModified(), previousRecord.getOrigin()));
+                this.entriesUnchanged.incrementAndGet();
+                metrics.recordSkipped();
+                continue;
+            }
+
+            final Date entryDate = new Date(record.getLastModified());
+            if (!this.shouldExtractEntry(outputDirectory, targetFile, targetName, entryDate))
+            {
+                this.getLogger().debug("Retaining existing file {} instead of cached file", targetName);
+                this.installManifest.setRecord(targetName, new InstallManifest.Record(record.getCrc(), record.getSize(),
+                        targetFile.lastModified(), this.getPreviousOrigin(targetName)));
+                metrics.recordSkipped();
+                continue;
+            }
+
+            if (remainingSpace.addAndGet(-record.getSize()) < 0)
+            {
+                throw new ArchiverException("Maximum output size limit reached");
+            }
+
+            final InstallManifest.Origin origin = this.backUpReplacedFile(outputDirectory, targetName, targetFile, entryDate);
+            if (cache.materialise(cachedPath, targetPath))
+            {
+                filesLinked++;
+            }
+            else
+            {
+                filesCopied++;
+            }
+
+            this.entriesWritten.incrementAndGet();
+            metrics.recordWritten(0, record.getSize());
+            this.installManifest.setRecord(targetName,
+                    new InstallManifest.Record(record.getCrc(), record.getSize(), targetFile.lastModified(), origin));
+        }
+        metrics.addTime(InstallMetrics.Phase.WRITE, System.nanoTime() - start);
+
+        this.getLogger().debug("Materialised {} files from cache into {} - {} hard linked, {} copied", filesLinked + filesCopied,
+                outputDirectory, filesLinked, filesCopied);
+    }
+
+    /**
+     * Installs an AMP read as a stream into an exploded web application in a single pass, without requiring random access to - or a
+     * temporary copy of - the AMP. The module.properties and file-mapping.properties need to precede all other file entries of the AMP,
+     * as written by {@link AmpArchiver}, since both are required to validate the module and map its entries before any other entry can be
+     * extracted. Entries are always extracted sequentially, and as file permissions are only recorded in the central directory of the
+     * AMP, they are not restored. The stream is consumed but not closed.
+     *
+     * @param ampStream
+     *            the stream of the AMP to install
+     * @param outputDirectory
+     *            the root directory of the exploded web application to install into
+     */
+    public void extract(final InputStream ampStream, final File outputDirectory) throws ArchiverException
+    {
+        if (outputDirectory == null)
+        {
+            throw new ArchiverException("The destination isn't defined.");
+        }
+
+        adaptFileSelectorAndMappers();
+
+        this.getLogger().debug("Unpacking AMP stream into directory {}", outputDirectory);
+
+        this.closeSession();
+        this.session = new AmpArchiveSession(this.getSourceFile());
+        try (ZipArchiveInputStream zis = new ZipArchiveInputStream(CloseShieldInputStream.wrap(ampStream), this.encoding, true, true))
+        {
+            final Map<ZipArchiveEntry, byte[]> headEntries = new LinkedHashMap<>();
+            final ZipArchiveEntry firstEntry = this.readStreamHead(zis, headEntries);
+
+            this.validateAlfrescoModuleMetadata(outputDirectory);
+            final ModuleDetails md = this.getOrLoadModuleDetails();
+
+            final InstallMetrics metrics = this.getInstallMetrics();
+            metrics.setModuleId(md.getId());
+            metrics.setDestination(outputDirectory);
+
+            try (InstallMetrics.PhaseTimer timer = metrics.time(InstallMetrics.Phase.MANIFEST))
+            {
+                this.prepareInstallManifest(md, outputDirectory);
+            }
+            this.extractStreamEntries(zis, headEntries, firstEntry, outputDirectory);
+            try (InstallMetrics.PhaseTimer timer = metrics.time(InstallMetrics.Phase.MANIFEST))
+            {
+                this.completeInstallManifest(md, outputDirectory);
+                InstalledModuleIndex.registerInstalled(outputDirectory, md, this.getOrFormatInstallDate(), this.installManifest.size());
+            }
+
+            this.publishInstallMetrics();
+        }
+        catch (final IOException ioe)
+        {
+            throw new ArchiverException("Error while expanding AMP stream into " + outputDirectory.getAbsolutePath(), ioe);
+        }
+        finally
+        {
+            this.previousInstallManifest = null;
+            this.installManifest = null;
+            this.closeSession();
+        }
+    }
+
+    /**
+     * Reads the head of an AMP stream, consisting of the module.properties, file-mapping.properties and any directory entries preceding
+     * the first other file entry, and caches the module metadata in the current session.
+     *
+     * @param zis
+     *            the stream of the AMP
+     * @param headEntries
+     *            the map to which to add the entries read from the head of the stream, together with their content
+     * @return the first entry following the head of the stream, or {@code null} if the stream does not contain any further entries
+     */
+    protected ZipArchiveEntry readStreamHead(final ZipArchiveInputStream zis, final Map<ZipArchiveEntry, byte[]> headEntries)
+            throws IOException, ArchiverException
+    {
+        Properties moduleProperties = null;
+        Properties fileMappings = null;
+
+        ZipArchiveEntry ze;
+        while ((ze = zis.getNextZipEntry()) != null
+                && (ze.isDirectory() || MODULE_PROPERTIES.equals(ze.getName()) || FILE_MAPPING_PROPERTIES.equals(ze.getName())))
+        {
+            final byte[] content = ze.isDirectory() ? new byte[0] : IOUtils.toByteArray(zis);
+            if (MODULE_PROPERTIES.equals(ze.getName()))
+            {
+                moduleProperties = PROPERTIES_READER.readFile(new ByteArrayInputStream(content));
+            }
+            else if (FILE_MAPPING_PROPERTIES.equals(ze.getName()))
+            {
+                fileMappings = PROPERTIES_READER.readFile(new ByteArrayInputStream(content));
+            }
+            headEntries.put(ze, content);
+        }
+
+        if (moduleProperties == null)
+        {
+            throw new ArchiverException("AMP stream does not start with a module.properties file");
+        }
+
+        this.session.setModuleDetails(new ModuleDetailsImpl(moduleProperties));
+        this.session.setFileMappings(this.expandDefaultFileMappings(fileMappings));
+
+        return ze;
+    }
+
+    /**
+     * Extracts the entries of an AMP read as a stream, starting with the entries previously read from the head of the stream.
+     *
+     * @param zis
+     *            the stream of the AMP
+     * @param headEntries
+     *            the entries read from the head of the stream, together with their content
+     * @param firstEntry
+     *            the first entry following the head of the stream - may be {@code null}
+     * @param outputDirectory
+     *            the directory into which to extract
+     */
+    protected void extractStreamEntries(final ZipArchiveInputStream zis, final Map<ZipArchiveEntry, byte[]> headEntries,
+            final ZipArchiveEntry firstEntry, final File outputDirectory) throws IOException, ArchiverException
+    {
+        this.getLogger().debug("Expanding: AMP stream into {}", outputDirectory);
+
+        final AtomicLong remainingSpace = new AtomicLong(this.maxOutputSize);
+        final InstallMetrics metrics = this.getInstallMetrics();
+        int entriesSeen = 0;
+        int entriesSelected = 0;
+        try (InstallMetrics.PhaseTimer timer = metrics.time(InstallMetrics.Phase.EXTRACTION))
+        {
+            for (final Map.Entry<ZipArchiveEntry, byte[]> headEntry : headEntries.entrySet())
+            {
+                entriesSeen++;
+                if (this.isSelected(headEntry.getKey()))
+                {
+                    entriesSelected++;
+                    this.extractEntry(this.session, headEntry.getKey(), new ByteArrayInputStream(headEntry.getValue()), outputDirectory,
+                            remainingSpace);
+                }
+            }
+
+            ZipArchiveEntry ze = firstEntry;
+            while (ze != null)
+            {
+                if (MODULE_PROPERTIES.equals(ze.getName()) || FILE_MAPPING_PROPERTIES.equals(ze.getName()))
+                {
+                    throw new ArchiverException(
+                            ze.getName() + " must precede all other file entries in the AMP stream as it affects the mapping of entries");
+                }
+
+                entriesSeen++;
+                if (this.isSelected(ze))
+                {
+                    entriesSelected++;
+                    this.extractEntry(this.session, ze, zis, outputDirectory, remainingSpace);
+                }
+                ze = zis.getNextZipEntry();
+            }
+            this.flushExtractionWriter();
+        }
+        finally
+        {
+            this.extractionWriter = null;
+            metrics.recordSelection(entriesSeen, entriesSelected);
+        }
+        this.getLogger().debug("expand complete");
+    }
+
+    private boolean isSelected(final ZipArchiveEntry ze) throws ArchiverException
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            return this.isSelected(ze.getName(), new AmpEntryFileInfo(null, ze));
+        }
+        finally
+        {
+            this.getInstallMetrics().addTime(InstallMetrics.Phase.MAPPING, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Publishes the {@link #getInstallMetrics() metrics} of the completed install as a flight recorder event, and writes them as a JSON
+     * summary if a {@link #setMetricsFile(File) metrics file} has been set.
+     */
+    protected void publishInstallMetrics()
+    {
+        final InstallMetrics metrics = this.getInstallMetrics();
+        metrics.publish();
+
+        this.getLogger().debug(
+                "Installed {} with {} of {} entries selected, {} written and {} skipped, reading {} and writing {} bytes - phase timings: validation {} ms, mapping {} ms, extraction {} ms (inflate {} ms, write {} ms cumulative), manifest {} ms",
+                metrics.getModuleId(), metrics.getEntriesSelected(), metrics.getEntriesSeen(), metrics.getEntriesWritten(),
+                metrics.getEntriesSkipped(), metrics.getBytesIn(), metrics.getBytesOut(), toMillis(metrics, InstallMetrics.Phase.VALIDATION),
+                toMillis(metrics, InstallMetrics.Phase.MAPPING), toMillis(metrics, InstallMetrics.Phase.EXTRACTION),
+                toMillis(metrics, InstallMetrics.Phase.INFLATE), toMillis(metrics, InstallMetrics.Phase.WRITE),
+                toMillis(metrics, InstallMetrics.Phase.MANIFEST));
+
+        if (this.metricsFile != null)
+        {
+            try
+            {
+                InstallMetrics.writeJson(this.metricsFile, Collections.singletonList(metrics));
+            }
+            catch (final IOException ioex)
+            {
+                this.getLogger().warn("Failed to write install metrics to {}", this.metricsFile, ioex);
+            }
+        }
+    }
+
+    private static long toMillis(final InstallMetrics metrics, final InstallMetrics.Phase phase)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(metrics.getTime(phase));
+    }
+
+    protected void prepareInstallManifest(final ModuleDetails md, final File outputDirectory) throws ArchiverException
+    {
+        this.entriesWritten.set(0);
+        this.entriesUnchanged.set(0);
+        this.installManifest = new InstallManifest();
+        try
+        {
+            this.previousInstallManifest = InstallManifest.load(outputDirectory, md.getId());
+        }
+        catch (final IOException ioex)
+        {
+            this.getLogger().warn("Failed to load install manifest of previous installation of {} - performing full install", md.getId(),
+                    ioex);
+            this.previousInstallManifest = new InstallManifest();
+        }
+    }
+
+    protected void completeInstallManifest(final ModuleDetails md, final File outputDirectory) throws ArchiverException
+    {
+        int staleEntriesRemoved = 0;
+        if (this.deltaInstall)
+        {
+            for (final String path : this.previousInstallManifest.getPaths())
+            {
+                if (this.installManifest.getRecord(path) == null)
+                {
+                    final File staleFile = new File(outputDirectory, path);
+                    final InstallManifest.Record staleRecord = this.previousInstallManifest.getRecord(path);
+                    // only remove if not modified since previous install, e.g. by another module overriding the same path
+                    if (!this.overriddenTargetNames.contains(path) && staleRecord.matchesFile(staleFile)
+                            && this.removeInstalledFile(outputDirectory, md.getId(), path, staleRecord))
+                    {
+                        this.getLogger().debug("Removed stale file {} of previous installation of {}", path, md.getId());
+                        staleEntriesRemoved++;
+                    }
+                }
+            }
+
+            this.getLogger().info("Delta install of {} into {}: {} entries written, {} entries unchanged, {} stale files removed",
+                    md.getId(), outputDirectory, this.entriesWritten.get(), this.entriesUnchanged.get(), staleEntriesRemoved);
+        }
+
+        try
+        {
+            this.installManifest.store(outputDirectory, md.getId());
+        }
+        catch (final IOException ioex)
+        {
+            throw new ArchiverException("Error storing install manifest for " + md.getId() + " in " + outputDirectory, ioex);
+        }
+    }
+
+    /**
+     * Extracts the entries of the AMP via the already opened archive of the current session. This essentially mirrors the base class
+     * implementation which would otherwise open and parse the archive yet another time.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param path
+     *            the path prefix of entries to extract
+     * @param outputDirectory
+     *            the directory into which to extract
+     */
+    protected void extractEntries(final AmpArchiveSession session, final String path, final File outputDirectory)
+            throws ArchiverException
+    {
+        this.getLogger().debug("Expanding: {} into {}", session.getSourceFile(), outputDirectory);
+
+        final List<ZipArchiveEntry> selectedEntries = this.selectEntries(session, path);
+        final AtomicLong remainingSpace = new AtomicLong(this.maxOutputSize);
+        this.getInstallMetrics().recordSelection(session.getEntries().size(), selectedEntries.size());
+
+        final int threadCount = this.getEffectiveExtractionThreadCount();
+        try (InstallMetrics.PhaseTimer timer = this.getInstallMetrics().time(InstallMetrics.Phase.EXTRACTION))
+        {
+            if (threadCount > 1 && selectedEntries.size() > 1)
+            {
+                this.extractEntriesInParallel(session, selectedEntries, outputDirectory, remainingSpace, threadCount);
+            }
+            else if (this.pipelineWriterThreadCount > 0 && selectedEntries.size() > 1)
+            {
+                this.extractEntriesPipelined(session, selectedEntries, outputDirectory, remainingSpace);
+            }
+            else
+            {
+                for (final ZipArchiveEntry ze : selectedEntries)
+                {
+                    this.extractEntry(session, ze, outputDirectory, remainingSpace);
+                }
+            }
+            this.flushExtractionWriter();
+        }
+        catch (final IOException ioe)
+        {
+            throw new ArchiverException("Error while expanding " + session.getSourceFile().getAbsolutePath(), ioe);
+        }
+        finally
+        {
+            this.extractionWriter = null;
+        }
+        this.getLogger().debug("expand complete");
+    }
+
+    /**
+     * Selects the entries of the AMP to extract. Selection is always performed sequentially as the configured file selectors cannot be
+     * assumed to be thread-safe.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param path
+     *            the path prefix of entries to extract
+     * @return the selected entries in physical order
+     */
+    protected List<ZipArchiveEntry> selectEntries(final AmpArchiveSession session, final String path) throws ArchiverException
+    {
+        try (InstallMetrics.PhaseTimer timer = this.getInstallMetrics().time(InstallMetrics.Phase.MAPPING))
+        {
+            final ZipFile zipFile = session.getZipFile();
+            final List<ZipArchiveEntry> selectedEntries = new ArrayList<>(session.getEntries().size());
+            for (final ZipArchiveEntry ze : session.getEntries())
+            {
+                final AmpEntryFileInfo fileInfo = new AmpEntryFileInfo(zipFile, ze);
+                if (this.isSelected(ze.getName(), fileInfo) && ze.getName().startsWith(path))
+                {
+                    selectedEntries.add(ze);
+                }
+            }
+            return selectedEntries;
+        }
+    }
+
+    /**
+     * Extracts a single entry of the AMP.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param ze
+     *            the entry to extract
+     * @param outputDirectory
+     *            the directory into which to extract
+     * @param remainingSpace
+     *            the remaining number of bytes which may be extracted before the maximum output size is exceeded
+     */
+    protected void extractEntry(final AmpArchiveSession session, final ZipArchiveEntry ze, final File outputDirectory,
+            final AtomicLong remainingSpace) throws IOException, ArchiverException
+    {
+        this.extractEntry(session, ze, null, outputDirectory, remainingSpace);
+    }
+
+    /**
+     * Extracts a single entry of the AMP.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param ze
+     *            the entry to extract
+     * @param entryStream
+     *            the stream of the entry content if the AMP is read as a stream, or {@code null} to read the entry from the archive of
+     *            the session
+     * @param outputDirectory
+     *            the directory into which to extract
+     * @param remainingSpace
+     *            the remaining number of bytes which may be extracted before the maximum output size is exceeded
+     */
+    protected void extractEntry(final AmpArchiveSession session, final ZipArchiveEntry ze, final InputStream entryStream,
+            final File outputDirectory, final AtomicLong remainingSpace) throws IOException, ArchiverException
+    {
+        final String targetName = this.resolveTrackedTargetName(ze);
+        if (!this.skipEntry(ze, targetName, outputDirectory))
+        {
+            this.writeEntry(session, ze, entryStream, outputDirectory, remainingSpace, targetName);
+        }
+    }
+
+    /**
+     * Extracts the selected entries of the AMP in a pipeline, reading and inflating entries in the current thread while a pool of
+     * {@link #setPipelineWriterThreadCount(int) writer threads} writes the extracted files.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param selectedEntries
+     *            the entries to extract in physical order
+     * @param outputDirectory
+     *            the directory into which to extract
+     * @param remainingSpace
+     *            the remaining number of bytes which may be extracted before the maximum output size is exceeded
+     */
+    protected void extractEntriesPipelined(final AmpArchiveSession session, final List<ZipArchiveEntry> selectedEntries,
+            final File outputDirectory, final AtomicLong remainingSpace) throws IOException, ArchiverException
+    {
+        this.getLogger().debug("Extracting {} entries in pipeline with {} writer threads", selectedEntries.size(),
+                this.pipelineWriterThreadCount);
+
+        final ZipFile zipFile = session.getZipFile();
+        final InstallMetrics metrics = this.getInstallMetrics();
+        try (ExtractionPipeline pipeline = new ExtractionPipeline(this.pipelineWriterThreadCount, PIPELINE_BUFFER_BUDGET))
+        {
+            for (final ZipArchiveEntry ze : selectedEntries)
+            {
+                // check before reading so that skipped entries are never inflated
+                final String targetName = this.resolveTrackedTargetName(ze);
+                if (this.skipEntry(ze, targetName, outputDirectory))
+                {
+                    continue;
+                }
+
+                if (ze.isDirectory() || ze.isUnixSymlink() || (targetName != null && this.isTransferable(zipFile, ze)))
+                {
+                    pipeline.submit(entryStream -> this.writeEntry(session, ze, null, outputDirectory, remainingSpace, targetName));
+                }
+                else
+                {
+                    try (InputStream in = zipFile.getInputStream(ze))
+                    {
+                        final InstallMetrics.TimedInputStream tis = new InstallMetrics.TimedInputStream(in);
+                        pipeline.submit(tis,
+                                entryStream -> this.writeEntry(session, ze, entryStream, outputDirectory, remainingSpace, targetName));
+                        metrics.addTime(InstallMetrics.Phase.INFLATE, tis.getReadNanos());
+                    }
+                }
+            }
+            pipeline.await();
+        }
+    }
+
+    private String resolveTrackedTargetName(final ZipArchiveEntry ze)
+    {
+        // module.properties is never tracked as it is always patched with installation details
+        return !ze.isDirectory() && !ze.isUnixSymlink() && !MODULE_PROPERTIES.equals(ze.getName())
+                ? this.resolveTargetEntryName(ze.getName())
+                : null;
+    }
+
+    /**
+     * Checks whether an entry does not need to be written, either because it is overridden by a module installed later or because it is
+     * unchanged in a delta install, and records the entry as skipped if so.
+     *
+     * @param ze
+     *            the entry to check
+     * @param targetName
+     *            the resolved name of the extracted entry, or {@code null} if the entry is not tracked in the install manifest
+     * @param outputDirectory
+     *            the directory into which to extract
+     * @return {@code true} if the entry has been skipped, {@code false} if it needs to be written
+     */
+    protected boolean skipEntry(final ZipArchiveEntry ze, final String targetName, final File outputDirectory) throws IOException
+    {
+        final File targetFile = targetName != null ? new File(outputDirectory, targetName) : null;
+
+        final InstallMetrics metrics = this.getInstallMetrics();
+        if (targetName != null && this.overriddenTargetNames.contains(targetName))
+        {
+            this.getLogger().debug("Skipping entry {} overridden by a module installed later", ze.getName());
+            metrics.recordSkipped();
+            return true;
+        }
+
+        if (targetFile != null && this.deltaInstall && this.isUnchanged(ze, targetName, targetFile))
+        {
+            this.getLogger().debug("Skipping unchanged entry {} in delta install", ze.getName());
+            this.installManifest.setRecord(targetName,
+                    new InstallManifest.Record(ze.getCrc(), ze.getSize(), targetFile.lastModified(), this.getPreviousOrigin(targetName)));
+            this.entriesUnchanged.incrementAndGet();
+            metrics.recordSkipped();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes a single entry of the AMP which has not been {@link #skipEntry(ZipArchiveEntry, String, File) skipped}.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param ze
+     *            the entry to write
+     * @param entryStream
+     *            the stream of the entry content if read by the caller, or {@code null} to read the entry from the archive of the session
+     * @param outputDirectory
+     *            the directory into which to extract
+     * @param remainingSpace
+     *            the remaining number of bytes which may be extracted before the maximum output size is exceeded
+     * @param targetName
+     *            the resolved name of the extracted entry, or {@code null} if the entry is not tracked in the install manifest
+     */
+    protected void writeEntry(final AmpArchiveSession session, final ZipArchiveEntry ze, final InputStream entryStream,
+            final File outputDirectory, final AtomicLong remainingSpace, final String targetName) throws IOException, ArchiverException
+    {
+        final File targetFile = targetName != null ? new File(outputDirectory, targetName) : null;
+        final InstallMetrics metrics = this.getInstallMetrics();
+
+        final InstallManifest.Origin origin = targetFile != null
+                ? this.backUpReplacedFile(outputDirectory, targetName, targetFile, new Date(ze.getTime()))
+                : InstallManifest.Origin.ADDED;
+        // modification time is only final once the extraction writer has applied its pending attribute updates
+        final InstallManifest installManifest = this.installManifest;
+        final LongConsumer onCompleted = targetFile != null
+                ? lastModified -> installManifest.setRecord(targetName,
+                        new InstallManifest.Record(ze.getCrc(), ze.getSize(), lastModified, origin))
+                : null;
+
+        final ZipFile zipFile = session.getZipFile();
+        final long start = System.nanoTime();
+        final long bytesWritten;
+        if (targetFile != null && entryStream == null && this.isTransferable(zipFile, ze))
+        {
+            bytesWritten = ze.getSize();
+            if (remainingSpace.addAndGet(-bytesWritten) < 0)
+            {
+                throw new ArchiverException("Maximum output size limit reached");
+            }
+            this.extractStoredFile(session, ze, outputDirectory, targetName, onCompleted);
+            metrics.addTime(InstallMetrics.Phase.WRITE, System.nanoTime() - start);
+        }
+        else
+        {
+            bytesWritten = this.extractEntryData(session, ze, entryStream, outputDirectory, remainingSpace, start, onCompleted);
+        }
+
+        this.entriesWritten.incrementAndGet();
+        metrics.recordWritten(ze.getCompressedSize(), bytesWritten);
+    }
+
+    private long extractEntryData(final AmpArchiveSession session, final ZipArchiveEntry ze, final InputStream entryStream,
+            final File outputDirectory, final AtomicLong remainingSpace, final long start, final LongConsumer onCompleted)
+            throws IOException, ArchiverException
+    {
+        final ZipFile zipFile = session.getZipFile();
+        final InstallMetrics metrics = this.getInstallMetrics();
+        final long bytesWritten;
+        // stream of an AMP read as a stream must stay open for subsequent entries
+        try (InputStream in = entryStream != null ? CloseShieldInputStream.wrap(entryStream) : zipFile.getInputStream(ze))
+        {
+            final BoundedInputStream bis = new BoundedInputStream(in, remainingSpace.get() + 1);
+            final InstallMetrics.TimedInputStream tis = new InstallMetrics.TimedInputStream(bis);
+            final CountingInputStream cis = new CountingInputStream(tis);
+            if (ze.isDirectory() || ze.isUnixSymlink())
+            {
+                this.extractFile(session.getSourceFile(), outputDirectory, cis, ze.getName(), new Date(ze.getTime()), ze.isDirectory(),
+                        ze.getUnixMode() != 0 ? ze.getUnixMode() : null, ze.isUnixSymlink() ? zipFile.getUnixSymlink(ze) : null,
+                        this.getFileMappers());
+            }
+            else
+            {
+                this.writeFile(ze, cis, outputDirectory, onCompleted);
+            }
+
+            // anything not spent reading / inflating the entry is spent creating and writing the file
+            if (!ExtractionPipeline.isEntryStream(entryStream))
+            {
+                // time of pipelined entries is recorded by the thread inflating them, here it is only spent waiting
+                metrics.addTime(InstallMetrics.Phase.INFLATE, tis.getReadNanos());
+            }
+            metrics.addTime(InstallMetrics.Phase.WRITE, System.nanoTime() - start - tis.getReadNanos());
+
+            bytesWritten = cis.getByteCount();
+            if (remainingSpace.addAndGet(-bytesWritten) < 0)
+            {
+                throw new ArchiverException("Maximum output size limit reached");
+            }
+        }
+        return bytesWritten;
+    }
+
+    /**
+     * Checks whether the data of an entry can be transferred directly from the AMP file into the extracted file.
+     *
+     * @param zipFile
+     *            the AMP
+     * @param ze
+     *            the entry to check
+     * @return {@code true} if the entry is a regular file stored without compression or encryption with a known size
+     */
+    protected boolean isTransferable(final ZipFile zipFile, final ZipArchiveEntry ze)
+    {
+        return this.transferStoredEntries && ze.getMethod() == ZipArchiveEntry.STORED && !ze.isDirectory() && !ze.isUnixSymlink()
+                && !ze.getGeneralPurposeBit().usesEncryption() && ze.getSize() != ZipArchiveEntry.SIZE_UNKNOWN
+                && ze.getSize() == ze.getCompressedSize() && zipFile.canReadEntryData(ze);
+    }
+
+    /**
+     * Extracts an entry stored without compression by transferring its data directly from the AMP file into the extracted file. This
+     * mirrors the handling of regular files in {@link #writeFile(ZipArchiveEntry, InputStream, File, LongConsumer) writeFile}, but lets
+     * the operating system copy the data without passing it through the Java heap.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param ze
+     *            the entry to extract
+     * @param dir
+     *            the directory into which to extract
+     * @param targetName
+     *            the resolved name of the extracted entry
+     * @param onCompleted
+     *            the callback to invoke with the effective modification time of the extracted file - may be {@code null}
      */
-    public String getEncoding()
+    protected void extractStoredFile(final AmpArchiveSession session, final ZipArchiveEntry ze, final File dir, final String targetName,
+            final LongConsumer onCompleted) throws IOException, ArchiverException
     {
-        return this.encoding;
+        final ExtractionWriter writer = this.getOrCreateExtractionWriter(dir);
+        final Path targetPath = writer.resolve(targetName);
+        final Date entryDate = new Date(ze.getTime());
+
+        writer.transfer(targetPath, session.getFileChannel(), session.getDataOffset(ze), ze.getSize(), entryDate.getTime(),
+                ze.getUnixMode() != 0 ? ze.getUnixMode() : null,
+                existingFile -> this.shouldExtractEntry(dir, existingFile, targetName, entryDate), onCompleted);
     }
 
     /**
-     * {@inheritDoc}
+     * Writes a regular file extracted from the AMP via the {@link ExtractionWriter extraction writer} for the output directory. This
+     * mirrors the handling of regular files in
+     * {@link #extractFile(File, File, InputStream, String, Date, boolean, Integer, String, FileMapper[]) extractFile}, incl. appending
+     * installation details to the module.properties, but avoids most of the file system calls per file.
+     *
+     * @param ze
+     *            the entry to extract
+     * @param in
+     *            the stream of the entry content
+     * @param dir
+     *            the directory into which to extract
+     * @param onCompleted
+     *            the callback to invoke with the effective modification time of the extracted file - may be {@code null}
      */
-    @Override
-    protected void validate() throws ArchiverException
+    protected void writeFile(final ZipArchiveEntry ze, final InputStream in, final File dir, final LongConsumer onCompleted)
+            throws IOException, ArchiverException
     {
-        super.validate();
+        final String targetName = this.resolveTargetEntryName(ze.getName());
+        final ExtractionWriter writer = this.getOrCreateExtractionWriter(dir);
+        final Path targetPath = writer.resolve(targetName);
+        final Date entryDate = new Date(ze.getTime());
 
-        final File destFile = this.getDestFile();
-        if (destFile != null)
+        byte[] suffix = null;
+        if (ze.getName().equals(MODULE_PROPERTIES))
         {
-            // unpack INTO another (existing?) file - might be WAR install
-            throw new ArchiverException("Unpacking into a file is not supported");
+            this.getLogger().debug("Appending installation details to unpacked module.properties");
+            suffix = this.buildInstallationDetails();
         }
 
-        this.validateAlfrescoModuleMetadata(getDestDirectory());
+        writer.write(targetPath, in, suffix, entryDate.getTime(), ze.getUnixMode() != 0 ? ze.getUnixMode() : null,
+                existingFile -> this.shouldExtractEntry(dir, existingFile, targetName, entryDate), onCompleted);
     }
 
     /**
-     * {@inheritDoc}
+     * Retrieves the writer for extracted files for an output directory, creating it if necessary. Any writer for a different output
+     * directory is flushed first.
+     *
+     * @param outputDirectory
+     *            the directory into which to extract
+     * @return the writer for the output directory
      */
-    @Override
-    protected void validate(final String path, final File outputDirectory) throws ArchiverException
+    protected synchronized ExtractionWriter getOrCreateExtractionWriter(final File outputDirectory) throws IOException, ArchiverException
     {
-        // for some reason there is an empty validation impl in base class(es)
-
-        final File sourceFile = this.getSourceFile();
-
-        if (sourceFile == null)
+        ExtractionWriter writer = this.extractionWriter;
+        if (writer == null || !writer.getRootDirectory().equals(outputDirectory.getAbsoluteFile().toPath().normalize().toFile()))
         {
-            throw new ArchiverException("The source file isn't defined.");
-        }
-
-        if (sourceFile.isDirectory())
-        {
-            throw new ArchiverException("The source must not be a directory.");
+            this.flushExtractionWriter();
+            writer = new ExtractionWriter(outputDirectory, this.directExtractionBuffers, this.getEffectiveExtractionThreadCount(),
+                    this.isIgnorePermissions());
+            this.extractionWriter = writer;
         }
+        return writer;
+    }
 
-        if (!sourceFile.exists())
+    /**
+     * Applies all pending attribute updates of the current writer for extracted files and discards the writer.
+     */
+    protected synchronized void flushExtractionWriter() throws ArchiverException
+    {
+        final ExtractionWriter writer = this.extractionWriter;
+        if (writer != null)
         {
-            throw new ArchiverException("The source file " + sourceFile + " doesn't exist.");
+            this.extractionWriter = null;
+            final long start = System.nanoTime();
+            writer.flush();
+            this.getInstallMetrics().addTime(InstallMetrics.Phase.WRITE, System.nanoTime() - start);
         }
+    }
 
-        if (outputDirectory == null)
+    /**
+     * Resolves the name an entry will be extracted to by applying all file mappers in the same way as
+     * {@link #extractFile(File, File, InputStream, String, Date, boolean, Integer, String, FileMapper[]) extractFile} does.
+     *
+     * @param entryName
+     *            the name of the entry
+     * @return the resolved name of the extracted entry
+     */
+    protected String resolveTargetEntryName(final String entryName)
+    {
+        String targetName = entryName;
+        final FileMapper[] fileMappers = this.getFileMappers();
+        if (fileMappers != null)
         {
-            throw new ArchiverException("The destination isn't defined.");
+            for (final FileMapper fileMapper : fileMappers)
+            {
+                targetName = fileMapper.getMappedFileName(targetName);
+            }
         }
-
-        this.validateAlfrescoModuleMetadata(outputDirectory);
+        return targetName;
     }
 
-    protected void validateAlfrescoModuleMetadata(final File outputDirectory) throws ArchiverException
+    /**
+     * Backs up a file about to be replaced by the install if {@link #setBackupReplacedFiles(boolean) enabled}, unless it has been written
+     * by a previous installation of the same module, so that the file can be restored when the module is uninstalled. A file is only
+     * backed up if it will actually be replaced according to {@link #shouldExtractEntry(File, File, String, Date) shouldExtractEntry},
+     * and is then moved into the backup location. If backups are disabled, the file is recorded as replaced without a backup instead, so
+     * that uninstalling the module retains the file rather than removing a file the web application requires.
+     *
+     * @param outputDirectory
+     *            the directory into which to install
+     * @param targetName
+     *            the resolved name of the extracted entry
+     * @param targetFile
+     *            the file the entry will be extracted to
+     * @param entryDate
+     *            the modification date of the entry
+     * @return the state of the file before the first install of the module
+     */
+    protected InstallManifest.Origin backUpReplacedFile(final File outputDirectory, final String targetName, final File targetFile,
+            final Date entryDate) throws IOException
     {
-        final File sourceFile = this.getSourceFile();
-        final File destFile = this.getDestFile();
-
-        final Properties moduleProperties = this.loadMetaFile(sourceFile, MODULE_PROPERTIES, PROPERTIES_READER);
-        if (moduleProperties == null)
+        final String moduleId = this.session.getModuleDetails().getId();
+        final InstallManifest.Record previousRecord = this.previousInstallManifest.getRecord(targetName);
+        final Path targetPath = targetFile.toPath();
+        // module.properties of a previous install is never restored, only marked as uninstalled
+        final boolean moduleProperties = targetName.equals(MODULE_DIRECTORY + moduleId + "/" + MODULE_PROPERTIES);
+
+        InstallManifest.Origin origin = InstallManifest.Origin.ADDED;
+        if (previousRecord != null)
         {
-            throw new ArchiverException(sourceFile.getAbsolutePath() + " does not contain a module.properties file");
+            // file of previous install - any original file has already been handled by then
+            origin = previousRecord.getOrigin();
         }
-        final ModuleDetails md = new ModuleDetailsImpl(moduleProperties);
-
-        final File destContext = outputDirectory != null && outputDirectory.isDirectory() ? outputDirectory
-                : (destFile != null && destFile.exists() ? destFile : null);
-        if (destContext != null)
+        // decide before moving the file so that retained files are never touched
+        else if (!moduleProperties && Files.isRegularFile(targetPath, LinkOption.NOFOLLOW_LINKS)
+                && this.shouldExtractEntry(outputDirectory, targetFile, targetName, entryDate))
         {
-            final Properties versionProperties = this.loadMetaFile(destContext, VERSION_PROPERTIES, PROPERTIES_READER);
-            final Manifest manifest = this.loadMetaFile(destContext, MANIFEST_FILE, MANIFEST_READER);
-
-            if (versionProperties != null)
+            if (!this.backupReplacedFiles)
             {
-                this.validateAlfrescoModuleAgainstVersionProperties(md, versionProperties);
-            }
-            else if (manifest != null)
-            {
-                this.validateAlfrescoModuleAgainstManifest(md, manifest);
+                this.getLogger().debug("Replacing {} without backup", targetName);
+                origin = InstallManifest.Origin.REPLACED;
             }
             else
             {
-                this.getLogger().debug(
-                        "Module cannot be validated before unpacking as neither version.properties nor manifest can be found in context {}",
-                        destContext);
-            }
-
-            final List<ModuleDependency> dependencies = md.getDependencies();
-            if (!dependencies.isEmpty())
-            {
-                // TODO module dependencies check
+                final Path backupPath = outputDirectory.toPath()
+                        .resolve(InstallManifest.getBackupPath(moduleId, targetName));
+                if (Files.exists(backupPath))
+                {
+                    // keep the oldest backup, i.e. the original file before any install of the module
+                    this.getLogger().debug("Retaining existing backup of {} replaced by install", targetName);
+                }
+                else
+                {
+                    this.getLogger().debug("Backing up {} replaced by install", targetName);
+                    Files.createDirectories(backupPath.getParent());
+                    Files.move(targetPath, backupPath);
+                }
+                origin = InstallManifest.Origin.BACKED_UP;
             }
         }
-        // else: nothing to validate - unpack into "nothing"
+        return origin;
     }
 
-    protected void validateAlfrescoModuleAgainstVersionProperties(final ModuleDetails md, final Properties versionProperties)
+    private InstallManifest.Origin getPreviousOrigin(final String targetName)
     {
-        this.getLogger().debug("Validating {} against version properties {}", md, versionProperties);
-
-        final StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(versionProperties.getProperty("version.major"));
-        stringBuilder.append(".");
-        stringBuilder.append(versionProperties.getProperty("version.minor"));
-        stringBuilder.append(".");
-        stringBuilder.append(versionProperties.getProperty("version.revision"));
-        final String repoVersionStr = stringBuilder.toString();
-
-        final ComparableVersion repoVersion = new ComparableVersion(repoVersionStr);
-        this.validateAlfrescoVersion(md, repoVersion);
-
-        final String edition = versionProperties.getProperty("version.edition");
-        this.validateAlfrescoEdition(md, edition, false);
+        final InstallManifest.Record previousRecord = this.previousInstallManifest.getRecord(targetName);
+        return previousRecord != null ? previousRecord.getOrigin() : InstallManifest.Origin.ADDED;
     }
 
-    protected void validateAlfrescoModuleAgainstManifest(final ModuleDetails md, final Manifest manifest)
+    private boolean removeInstalledFile(final File outputDirectory, final String moduleId, final String path,
+            final InstallManifest.Record record)
     {
-        this.getLogger().debug("Validating {} against manifest {}", md, manifest);
-
-        final Attributes mainAttributes = manifest.getMainAttributes();
-        final String manifestVersionStr = mainAttributes.getValue(MANIFEST_SPECIFICATION_VERSION);
-        final String edition = mainAttributes.getValue(MANIFEST_IMPLEMENTATION_TITLE);
-
-        if (manifestVersionStr != null && manifestVersionStr.length() > 0)
+        try
         {
-            if (manifestVersionStr.matches(REGEX_NUMBER_OR_DOT))
-            {
-                final ComparableVersion manifestVersion = new ComparableVersion(manifestVersionStr);
-                this.validateAlfrescoVersion(md, manifestVersion);
-            }
-            else if (edition != null && edition.length() > 0 && edition.endsWith(MANIFEST_COMMUNITY))
-            {
-                this.getLogger()
-                        .warn("Community edition web application detected, the version number is non-numeric so we will not validate it.");
-            }
-            else
+            final boolean removed = ModuleUninstaller.removeInstalledFile(outputDirectory.toPath(), moduleId, path, record);
+            if (!removed)
             {
-                throw new ArchiverException("Invalid version number specified: " + manifestVersionStr);
+                this.getLogger().warn("Retaining stale file {} of previous installation of {} as it replaced a file without backup",
+                        path, moduleId);
             }
+            return removed;
         }
-
-        if (edition != null && edition.length() > 0)
-        {
-            this.validateAlfrescoEdition(md, edition, true);
-        }
-        else
+        catch (final IOException ioex)
         {
-            this.getLogger().warn(
-                    "No edition information detected in war, edition validation is disabled, continuing anyway. Is this war prior to 3.4.11, 4.1.1 and Community 4.2 ?");
+            this.getLogger().warn("Failed to remove stale file {} of previous installation of {}", path, moduleId, ioex);
+            return false;
         }
     }
 
-    protected void validateAlfrescoVersion(final ModuleDetails md, final ComparableVersion alfrescoVersion)
+    /**
+     * Checks whether an entry is unchanged compared to the file previously extracted into the destination.
+     *
+     * @param ze
+     *            the entry to check
+     * @param targetName
+     *            the resolved name of the extracted entry
+     * @param targetFile
+     *            the file the entry would be extracted to
+     * @return {@code true} if the file exists and matches the entry in both size and CRC32 checksum
+     */
+    protected boolean isUnchanged(final ZipArchiveEntry ze, final String targetName, final File targetFile) throws IOException
     {
-        if (alfrescoVersion.compareTo(md.getRepoVersionMin()) < 0)
+        final long crc = ze.getCrc();
+        final long size = ze.getSize();
+        if (crc == -1 || size == -1 || !targetFile.isFile() || targetFile.length() != size)
         {
-            throw new ArchiverException(
-                    "The module (" + md.getTitle() + ") must be installed on a web application version equal to or greater than "
-                            + md.getRepoVersionMin() + ". This web application is version: " + alfrescoVersion + ".");
+            return false;
         }
 
-        if (alfrescoVersion.compareTo(md.getRepoVersionMax()) > 0)
+        final InstallManifest.Record record = this.previousInstallManifest.getRecord(targetName);
+        final boolean unchanged;
+        // trust recorded checksum only if file has not been touched since it was recorded, else check actual file content
+        if (record != null && record.matchesFile(targetFile))
         {
-            throw new ArchiverException("The module (" + md.getTitle() + ") cannot be installed on a web application version greater than "
-                    + md.getRepoVersionMax() + ". This web application is version: " + alfrescoVersion + ".");
+            unchanged = record.getCrc() == crc;
         }
+        else
+        {
+            final CRC32 fileCrc = new CRC32();
+            final byte[] buffer = new byte[CRC_BUFFER_SIZE];
+            try (InputStream is = new FileInputStream(targetFile))
+            {
+                int read;
+                while ((read = is.read(buffer)) != -1)
+                {
+                    fileCrc.update(buffer, 0, read);
+                }
+            }
+            unchanged = fileCrc.getValue() == crc;
+        }
+        return unchanged;
     }
 
-    protected void validateAlfrescoEdition(final ModuleDetails md, final String edition, final boolean endsWithCheck)
+    /**
+     * Extracts the selected entries of the AMP using a pool of worker threads. The entries are split into work units of contiguous entries
+     * in physical order, roughly balanced by their compressed size, so that each worker reads a coherent region of the archive via random
+     * access reads on the shared archive.
+     *
+     * @param session
+     *            the session of the AMP being installed
+     * @param selectedEntries
+     *            the entries to extract in physical order
+     * @param outputDirectory
+     *            the directory into which to extract
+     * @param remainingSpace
+     *            the remaining number of bytes which may be extracted before the maximum output size is exceeded
+     * @param threadCount
+     *            the number of worker threads to use
+     */
+    protected void extractEntriesInParallel(final AmpArchiveSession session, final List<ZipArchiveEntry> selectedEntries,
+            final File outputDirectory, final AtomicLong remainingSpace, final int threadCount) throws ArchiverException
     {
-        final List<String> supportedEditions = md.getEditions();
-        if (!supportedEditions.isEmpty())
+        final List<List<ZipArchiveEntry>> workUnits = splitIntoWorkUnits(selectedEntries, threadCount * WORK_UNITS_PER_THREAD);
+        this.getLogger().debug("Extracting {} entries in {} work units using {} threads", selectedEntries.size(), workUnits.size(),
+                threadCount);
+
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, workUnits.size()), r -> {
+            final Thread thread = new Thread(r, "amp-extract-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
         {
-            final String editionL = edition.toLowerCase(Locale.ENGLISH);
-            boolean editionIsAllowed = false;
-            for (final String allowedEdition : supportedEditions)
+            final List<Future<Void>> futures = new ArrayList<>(workUnits.size());
+            for (final List<ZipArchiveEntry> workUnit : workUnits)
             {
-                final String allowedEditionL = allowedEdition.toLowerCase(Locale.ENGLISH);
-                editionIsAllowed = editionIsAllowed
-                        || (endsWithCheck ? editionL.endsWith(allowedEditionL) : allowedEditionL.equals(editionL));
+                futures.add(executor.submit(() -> {
+                    for (final ZipArchiveEntry ze : workUnit)
+                    {
+                        this.extractEntry(session, ze, outputDirectory, remainingSpace);
+                    }
+                    return null;
+                }));
             }
 
-            if (!editionIsAllowed)
+            for (final Future<Void> future : futures)
             {
-                throw new ArchiverException(
-                        "The module (" + md.getTitle() + ") can only be installed in one of the following editions" + supportedEditions);
+                future.get();
+            }
+        }
+        catch (final ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ArchiverException)
+            {
+                throw (ArchiverException) cause;
             }
+            throw new ArchiverException("Error while expanding " + session.getSourceFile().getAbsolutePath(), cause);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ArchiverException("Interrupted while expanding " + session.getSourceFile().getAbsolutePath(), e);
+        }
+        finally
+        {
+            executor.shutdownNow();
         }
     }
 
-    /**
-     *
-     * {@inheritDoc}
-     */
-    @Override
-    protected void execute(final String path, final File outputDirectory) throws ArchiverException
+    private static List<List<ZipArchiveEntry>> splitIntoWorkUnits(final List<ZipArchiveEntry> entries, final int targetUnitCount)
     {
-        adaptFileSelectorAndMappers();
-
-        final File sourceFile = this.getSourceFile();
-
-        this.getLogger().debug("Unpacking {} into directory {}", sourceFile, outputDirectory);
-
-        final Properties moduleProperties = this.loadMetaFile(sourceFile, MODULE_PROPERTIES, PROPERTIES_READER);
-        final ModuleDetails md = new ModuleDetailsImpl(moduleProperties);
-        final Properties fileMappingProperties = this.getOrCreateDefaultFileMappings(sourceFile);
+        long totalSize = 0;
+        for (final ZipArchiveEntry ze : entries)
+        {
+            totalSize += Math.max(1, ze.getCompressedSize());
+        }
+        final long unitBudget = Math.max(1, totalSize / targetUnitCount);
 
-        this.fileMappingProperties.set(fileMappingProperties);
-        this.moduleDetails.set(md);
-        try
+        final List<List<ZipArchiveEntry>> workUnits = new ArrayList<>(targetUnitCount + 1);
+        List<ZipArchiveEntry> workUnit = new ArrayList<>();
+        long workUnitSize = 0;
+        for (final ZipArchiveEntry ze : entries)
         {
-            // regular unpack
-            super.execute(path, outputDirectory);
+            workUnit.add(ze);
+            workUnitSize += Math.max(1, ze.getCompressedSize());
+            if (workUnitSize >= unitBudget)
+            {
+                workUnits.add(workUnit);
+                workUnit = new ArrayList<>();
+                workUnitSize = 0;
+            }
         }
-        finally
+        if (!workUnit.isEmpty())
         {
-            this.moduleDetails.remove();
-            this.fileMappingProperties.remove();
+            workUnits.add(workUnit);
         }
+        return workUnits;
     }
 
     /**
@@ -385,49 +2324,74 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
             {
                 this.getLogger().debug("Appending installation details to unpacked module.properties");
 
-                final DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss.SSSXXX", Locale.ENGLISH);
-                df.setTimeZone(TimeZone.getTimeZone("UTC"));
-                final String nowIso = df.format(new Date());
-
-                final StringBuilder suffix = new StringBuilder(2 * 48);
-                suffix.append(System.lineSeparator());
-                suffix.append(ModuleDetails.PROP_INSTALL_STATE).append("=").append(ModuleInstallState.INSTALLED.name());
-                suffix.append(System.lineSeparator());
-                suffix.append(ModuleDetails.PROP_INSTALL_DATE).append("=").append(nowIso);
-                suffix.append(System.lineSeparator());
-
-                final byte[] bytes = suffix.toString().getBytes(StandardCharsets.UTF_8);
+                final byte[] bytes = this.buildInstallationDetails();
                 Files.write(dir.toPath().resolve(mappedModuleEntryName), bytes, StandardOpenOption.APPEND);
             }
         }
     }
 
+    /**
+     * Builds the installation details to append to the module.properties of the installed module.
+     *
+     * @return the bytes to append
+     */
+    protected byte[] buildInstallationDetails()
+    {
+        final String nowIso = this.getOrFormatInstallDate();
+
+        final StringBuilder suffix = new StringBuilder(2 * 48);
+        suffix.append(System.lineSeparator());
+        suffix.append(ModuleDetails.PROP_INSTALL_STATE).append("=").append(ModuleInstallState.INSTALLED.name());
+        suffix.append(System.lineSeparator());
+        suffix.append(ModuleDetails.PROP_INSTALL_DATE).append("=").append(nowIso);
+        suffix.append(System.lineSeparator());
+
+        return suffix.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves the install date of the current install, formatting it once per session so that the module.properties and registry of
+     * installed modules record the same date.
+     *
+     * @return the formatted install date
+     */
+    protected String getOrFormatInstallDate()
+    {
+        String installDate = this.installDate;
+        if (installDate == null)
+        {
+            final DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss.SSSXXX", Locale.ENGLISH);
+            df.setTimeZone(TimeZone.getTimeZone("UTC"));
+            installDate = df.format(new Date());
+            this.installDate = installDate;
+        }
+        return installDate;
+    }
+
     protected String mapModuleEntryName(final String entryName, final boolean log)
+    {
+        // mapping is memoized per session as both selector and mapper (and possibly extractFile) call this for the same entry
+        return this.session.getMappedEntryName(entryName, name -> this.resolveModuleEntryName(name, log));
+    }
+
+    protected String resolveModuleEntryName(final String entryName, final boolean log)
     {
         String effectiveEntryName = null;
-        String prefix = entryName;
 
-        while (prefix.length() != 0)
+        final FileMappingResolver.Mapping mapping = this.session.getFileMappingResolver().findMapping(entryName);
+        if (mapping != null)
         {
-            final int indexOfLastPathSeparator = prefix.lastIndexOf("/");
-            prefix = indexOfLastPathSeparator > 0 ? prefix.substring(0, indexOfLastPathSeparator) : "";
-
-            final String mapping = this.fileMappingProperties.get().getProperty("/" + prefix);
-            if (mapping != null)
+            effectiveEntryName = mapping.map(entryName);
+            if (log)
             {
-                effectiveEntryName = mapping.substring(1, mapping.length()) + entryName.substring(prefix.length(), entryName.length());
-                if (log)
-                {
-                    this.getLogger().debug("Mapped entry {} to {} via configured mapping /{}={}", entryName, effectiveEntryName, prefix,
-                            mapping);
-                }
-                break;
+                this.getLogger().debug("Mapped entry {} to {} via configured mapping {}={}", entryName, effectiveEntryName,
+                        mapping.getSource(), mapping.getTarget());
             }
         }
 
         if (effectiveEntryName == null && entryName.equals(MODULE_PROPERTIES))
         {
-            effectiveEntryName = "WEB-INF/classes/alfresco/module/" + this.moduleDetails.get().getId() + "/" + MODULE_PROPERTIES;
+            effectiveEntryName = MODULE_DIRECTORY + this.session.getModuleDetails().getId() + "/" + MODULE_PROPERTIES;
         }
         if (effectiveEntryName != null && effectiveEntryName.startsWith("/"))
         {
@@ -448,7 +2412,19 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
 
     protected Properties getOrCreateDefaultFileMappings(final File sourceFile)
     {
-        Properties fileMappingProperties = this.loadMetaFile(sourceFile, FILE_MAPPING_PROPERTIES, PROPERTIES_READER);
+        return this.expandDefaultFileMappings(this.loadMetaFile(sourceFile, FILE_MAPPING_PROPERTIES, PROPERTIES_READER));
+    }
+
+    /**
+     * Expands the default file mappings if enabled in - or no file mappings are provided by - the file-mapping.properties of the AMP.
+     *
+     * @param fileMappings
+     *            the file mappings as loaded from the file-mapping.properties - may be {@code null}
+     * @return the effective file mappings
+     */
+    protected Properties expandDefaultFileMappings(final Properties fileMappings)
+    {
+        Properties fileMappingProperties = fileMappings;
         if (fileMappingProperties == null)
         {
             fileMappingProperties = new Properties();
@@ -471,6 +2447,96 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
         return fileMappingProperties;
     }
 
+    /**
+     * Retrieves the session for the current source file, opening the AMP archive if no session has yet been opened.
+     *
+     * @return the session
+     */
+    protected AmpArchiveSession getOrOpenSession() throws ArchiverException
+    {
+        final File sourceFile = this.getSourceFile();
+        // session of an AMP read as a stream is only ever opened / closed by the streaming install
+        if (this.session != null && !this.session.isStreamed() && !this.session.isSessionFor(sourceFile))
+        {
+            this.closeSession();
+        }
+
+        if (this.session == null)
+        {
+            this.getLogger().debug("Opening archive session for {}", sourceFile);
+            try
+            {
+                final boolean sequential = this.getEffectiveExtractionThreadCount() <= 1 && this.pipelineWriterThreadCount <= 0;
+                this.session = new AmpArchiveSession(sourceFile, this.encoding, sequential);
+            }
+            catch (final IOException ioex)
+            {
+                throw new ArchiverException("Error opening " + sourceFile.getAbsolutePath(), ioex);
+            }
+        }
+        return this.session;
+    }
+
+    /**
+     * Closes the session for the current source file, if one has been opened.
+     */
+    protected void closeSession()
+    {
+        if (this.session != null)
+        {
+            try
+            {
+                this.session.close();
+            }
+            catch (final IOException ioex)
+            {
+                this.getLogger().warn("Error closing archive session for {}", this.session.getSourceFile(), ioex);
+            }
+            this.session = null;
+        }
+        this.installDate = null;
+    }
+
+    /**
+     * Retrieves the module details of the current source file, loading them once per session.
+     *
+     * @return the module details
+     */
+    protected ModuleDetails getOrLoadModuleDetails() throws ArchiverException
+    {
+        final AmpArchiveSession session = this.getOrOpenSession();
+        ModuleDetails md = session.getModuleDetails();
+        if (md == null)
+        {
+            final File sourceFile = session.getSourceFile();
+            final Properties moduleProperties = this.loadMetaFile(sourceFile, MODULE_PROPERTIES, PROPERTIES_READER);
+            if (moduleProperties == null)
+            {
+                throw new ArchiverException(sourceFile.getAbsolutePath() + " does not contain a module.properties file");
+            }
+            md = new ModuleDetailsImpl(moduleProperties);
+            session.setModuleDetails(md);
+        }
+        return md;
+    }
+
+    /**
+     * Retrieves the file mappings of the current source file, loading them once per session.
+     *
+     * @return the file mappings
+     */
+    protected Properties getOrLoadFileMappings() throws ArchiverException
+    {
+        final AmpArchiveSession session = this.getOrOpenSession();
+        Properties fileMappings = session.getFileMappings();
+        if (fileMappings == null)
+        {
+            fileMappings = this.getOrCreateDefaultFileMappings(session.getSourceFile());
+            session.setFileMappings(fileMappings);
+        }
+        return fileMappings;
+    }
+
     protected <T> T loadMetaFile(final File context, final String relativePath, final FileReader<T> reader) throws ArchiverException
     {
         this.getLogger().debug("Attempting to resolve meta file {} in context {}", relativePath, context);
@@ -479,12 +2545,17 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
         {
             if (context.isFile())
             {
-                try (ZipFile archiveCandidate = new ZipFile(context, this.encoding, true))
+                if (this.session != null && this.session.isSessionFor(context))
+                {
+                    meta = this.readMetaFile(this.session.getZipFile(), context, relativePath, reader);
+                }
+                else
                 {
-                    final ZipArchiveEntry zae = archiveCandidate.getEntry(relativePath);
-                    if (zae != null && !zae.isDirectory())
+                    // context may be a large web application archive, so avoid reading its full table of entries
+                    try (CentralDirectoryReader archiveCandidate = new CentralDirectoryReader(context, this.encoding);
+                            InputStream is = archiveCandidate.getInputStream(relativePath))
                     {
-                        try (InputStream is = archiveCandidate.getInputStream(zae))
+                        if (is != null)
                         {
                             meta = reader.readFile(is);
                             this.getLogger().debug("Succesfully read meta file {} from context {}", relativePath, context);
@@ -512,9 +2583,37 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
         return meta;
     }
 
+    private <T> T readMetaFile(final ZipFile archive, final File context, final String relativePath, final FileReader<T> reader)
+            throws IOException
+    {
+        T meta = null;
+        final ZipArchiveEntry zae = archive.getEntry(relativePath);
+        if (zae != null && !zae.isDirectory())
+        {
+            try (InputStream is = archive.getInputStream(zae))
+            {
+                meta = reader.readFile(is);
+                this.getLogger().debug("Succesfully read meta file {} from context {}", relativePath, context);
+            }
+        }
+        return meta;
+    }
+
     private void adaptFileSelectorAndMappers()
     {
+        // may be called multiple times during batch installs, but mapping must only be applied once
+        if (this.fileSelectorAndMappersAdapted)
+        {
+            return;
+        }
+        this.fileSelectorAndMappersAdapted = true;
+
         FileSelector[] fileSelectors = getFileSelectors();
+        FileMapper[] fileMappers = getFileMappers();
+        // effect of custom selectors / mappers cannot be captured in the key of the extraction cache
+        this.customFileSelectorsOrMappers = (fileSelectors != null && fileSelectors.length > 0)
+                || (fileMappers != null && fileMappers.length > 0);
+
         FileSelector[] effectiveFileSelectors = new FileSelector[fileSelectors != null ? (fileSelectors.length + 1) : 1];
         if (fileSelectors != null)
         {
@@ -523,7 +2622,6 @@ public class AmpUnArchiver extends AbstractZipUnArchiver
         effectiveFileSelectors[effectiveFileSelectors.length - 1] = fileInfo -> this.mapModuleEntryName(fileInfo.getName(), true) != null;
         setFileSelectors(effectiveFileSelectors);
 
-        FileMapper[] fileMappers = getFileMappers();
         FileMapper[] effectiveFileMappers = new FileMapper[fileMappers != null ? (fileMappers.length + 1) : 1];
         if (fileMappers != null)
         {
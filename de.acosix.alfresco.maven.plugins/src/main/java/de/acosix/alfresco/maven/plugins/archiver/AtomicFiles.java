@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces files by writing their new content into a temporary file next to them and moving that file into place, so that readers never
+ * see a partially written file. The move is atomic if supported by the file system, and falls back to a plain move otherwise.
+ *
+ * @author Axel Faust
+ */
+final class AtomicFiles
+{
+
+    /**
+     * Writes the content of a file to a stream.
+     *
+     * @author Axel Faust
+     */
+    @FunctionalInterface
+    interface ContentWriter
+    {
+
+        /**
+         * Writes the content of a file.
+         *
+         * @param os
+         *            the stream to write to - will be closed by the caller
+         */
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    private AtomicFiles()
+    {
+        // no instances
+    }
+
+    /**
+     * Writes a file, replacing any existing file.
+     *
+     * @param target
+     *            the file to write
+     * @param writer
+     *            the writer of the file content
+     */
+    static void write(final Path target, final ContentWriter writer) throws IOException
+    {
+        // not a file created via Files.createTempFile, as its restricted permissions would be retained when moved into place
+        final Path tempPath = target.resolveSibling(target.getFileName() + ".tmp");
+        try
+        {
+            try (OutputStream os = Files.newOutputStream(tempPath))
+            {
+                writer.writeTo(os);
+            }
+            move(tempPath, target);
+        }
+        finally
+        {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Moves a file into place, replacing any existing file.
+     *
+     * @param source
+     *            the file to move
+     * @param target
+     *            the file to replace
+     */
+    static void move(final Path source, final Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (final AtomicMoveNotSupportedException amnsex)
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
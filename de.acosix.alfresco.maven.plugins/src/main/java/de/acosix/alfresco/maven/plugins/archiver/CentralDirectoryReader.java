@@ -0,0 +1,360 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Instances of this class read individual entries from a ZIP-based archive without building the full table of entries, as a
+ * {@link org.apache.commons.compress.archivers.zip.ZipFile ZipFile} would. Only the end of central directory record and the central
+ * directory itself are mapped into memory, and looking up an entry simply scans the central directory for the name of the entry. This is
+ * intended for looking up a few small entries, e.g. the version.properties or manifest, in large archives such as a web application
+ * archive.
+ *
+ * @author Axel Faust
+ */
+public class CentralDirectoryReader implements Closeable
+{
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+
+    private static final int EOCD_MIN_LENGTH = 22;
+
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_EOCD_LOCATOR_LENGTH = 20;
+
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_EOCD_LENGTH = 56;
+
+    private static final int CFH_SIGNATURE = 0x02014b50;
+
+    private static final int CFH_LENGTH = 46;
+
+    private static final int LFH_SIGNATURE = 0x04034b50;
+
+    private static final int LFH_LENGTH = 30;
+
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private static final int ENCRYPTED_FLAG = 1;
+
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    private static final int ZIP64_MAGIC_SHORT = 0xffff;
+
+    private final File file;
+
+    private final Charset charset;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer centralDirectory;
+
+    /**
+     * Creates a new instance of this class and maps the central directory of an archive.
+     *
+     * @param file
+     *            the archive to read
+     * @param encoding
+     *            the encoding of entry names not flagged as UTF-8 - {@code null} denotes the platform encoding
+     */
+    public CentralDirectoryReader(final File file, final String encoding) throws IOException
+    {
+        this.file = file;
+        this.charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try
+        {
+            this.centralDirectory = this.mapCentralDirectory();
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the content of an entry.
+     *
+     * @param name
+     *            the name of the entry
+     * @return the content of the entry, or {@code null} if the archive contains no such entry
+     */
+    public InputStream getInputStream(final String name) throws IOException
+    {
+        final byte[] encodedName = name.getBytes(this.charset);
+        final byte[] utf8Name = name.getBytes(StandardCharsets.UTF_8);
+
+        final ByteBuffer cd = this.centralDirectory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        InputStream contents = null;
+        while (contents == null && cd.remaining() >= CFH_LENGTH)
+        {
+            final int headerStart = cd.position();
+            if (cd.getInt(headerStart) != CFH_SIGNATURE)
+            {
+                throw new ZipException("Invalid central directory in " + this.file);
+            }
+
+            final int flags = Short.toUnsignedInt(cd.getShort(headerStart + 8));
+            final int nameLength = Short.toUnsignedInt(cd.getShort(headerStart + 28));
+            final int extraLength = Short.toUnsignedInt(cd.getShort(headerStart + 30));
+            final int commentLength = Short.toUnsignedInt(cd.getShort(headerStart + 32));
+
+            final byte[] expectedName = (flags & UTF8_FLAG) != 0 ? utf8Name : encodedName;
+            if (nameLength == expectedName.length && this.nameMatches(cd, headerStart + CFH_LENGTH, expectedName))
+            {
+                contents = this.openEntry(cd, headerStart, flags, nameLength, extraLength);
+            }
+
+            cd.position(headerStart + CFH_LENGTH + nameLength + extraLength + commentLength);
+        }
+        return contents;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.channel.close();
+    }
+
+    private boolean nameMatches(final ByteBuffer cd, final int nameStart, final byte[] expectedName)
+    {
+        boolean matches = true;
+        for (int idx = 0; idx < expectedName.length && matches; idx++)
+        {
+            matches = cd.get(nameStart + idx) == expectedName[idx];
+        }
+        return matches;
+    }
+
+    private InputStream openEntry(final ByteBuffer cd, final int headerStart, final int flags, final int nameLength, final int extraLength)
+            throws IOException
+    {
+        if ((flags & ENCRYPTED_FLAG) != 0)
+        {
+            throw new ZipException("Encrypted entries are not supported in " + this.file);
+        }
+
+        final int method = Short.toUnsignedInt(cd.getShort(headerStart + 10));
+        long compressedSize = Integer.toUnsignedLong(cd.getInt(headerStart + 20));
+        long size = Integer.toUnsignedLong(cd.getInt(headerStart + 24));
+        long localHeaderOffset = Integer.toUnsignedLong(cd.getInt(headerStart + 42));
+
+        // only values exceeding the standard fields are contained in the ZIP64 extra field, in fixed order
+        if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC)
+        {
+            final ByteBuffer zip64Extra = this.findExtraField(cd, headerStart + CFH_LENGTH + nameLength, extraLength, ZIP64_EXTRA_FIELD);
+            if (zip64Extra == null)
+            {
+                throw new ZipException("Missing ZIP64 extra field in " + this.file);
+            }
+            if (size == ZIP64_MAGIC)
+            {
+                size = zip64Extra.getLong();
+            }
+            if (compressedSize == ZIP64_MAGIC)
+            {
+                compressedSize = zip64Extra.getLong();
+            }
+            if (localHeaderOffset == ZIP64_MAGIC)
+            {
+                localHeaderOffset = zip64Extra.getLong();
+            }
+        }
+
+        if (compressedSize > Integer.MAX_VALUE - 8 || size > Integer.MAX_VALUE - 8)
+        {
+            throw new ZipException("Entry too large for direct lookup in " + this.file);
+        }
+
+        final ByteBuffer localHeader = ByteBuffer.allocate(LFH_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        this.readFully(localHeader, localHeaderOffset);
+        if (localHeader.getInt(0) != LFH_SIGNATURE)
+        {
+            throw new ZipException("Invalid local file header in " + this.file);
+        }
+        final long dataOffset = localHeaderOffset + LFH_LENGTH + Short.toUnsignedInt(localHeader.getShort(26))
+                + Short.toUnsignedInt(localHeader.getShort(28));
+
+        final ByteBuffer data = ByteBuffer.allocate((int) compressedSize);
+        this.readFully(data, dataOffset);
+
+        final byte[] contents;
+        if (method == 0)
+        {
+            contents = data.array();
+        }
+        else if (method == 8)
+        {
+            contents = new byte[(int) size];
+            final Inflater inflater = new Inflater(true);
+            try
+            {
+                inflater.setInput(data.array());
+                int inflated = 0;
+                while (inflated < contents.length && !inflater.finished())
+                {
+                    final int read = inflater.inflate(contents, inflated, contents.length - inflated);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    {
+                        throw new ZipException("Truncated entry data in " + this.file);
+                    }
+                    inflated += read;
+                }
+            }
+            catch (final DataFormatException dfex)
+            {
+                throw new ZipException("Invalid entry data in " + this.file + ": " + dfex.getMessage());
+            }
+            finally
+            {
+                inflater.end();
+            }
+        }
+        else
+        {
+            throw new ZipException("Unsupported compression method " + method + " in " + this.file);
+        }
+
+        return new ByteArrayInputStream(contents);
+    }
+
+    private ByteBuffer findExtraField(final ByteBuffer cd, final int extraStart, final int extraLength, final int headerId)
+    {
+        ByteBuffer field = null;
+        int offset = extraStart;
+        while (field == null && offset + 4 <= extraStart + extraLength)
+        {
+            final int id = Short.toUnsignedInt(cd.getShort(offset));
+            final int length = Short.toUnsignedInt(cd.getShort(offset + 2));
+            if (id == headerId)
+            {
+                final ByteBuffer slice = cd.duplicate();
+                slice.position(offset + 4);
+                slice.limit(Math.min(offset + 4 + length, extraStart + extraLength));
+                field = slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            offset += 4 + length;
+        }
+        return field;
+    }
+
+    private ByteBuffer mapCentralDirectory() throws IOException
+    {
+        final long fileSize = this.channel.size();
+        if (fileSize < EOCD_MIN_LENGTH)
+        {
+            throw new ZipException(this.file + " is not a ZIP archive");
+        }
+
+        // end of central directory record is followed only by a variable-length comment
+        final int tailLength = (int) Math.min(fileSize, EOCD_MIN_LENGTH + MAX_COMMENT_LENGTH + ZIP64_EOCD_LOCATOR_LENGTH);
+        final long tailStart = fileSize - tailLength;
+        final ByteBuffer tail = this.channel.map(FileChannel.MapMode.READ_ONLY, tailStart, tailLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocdOffset = -1;
+        for (int offset = tailLength - EOCD_MIN_LENGTH; offset >= 0 && eocdOffset == -1; offset--)
+        {
+            if (tail.getInt(offset) == EOCD_SIGNATURE
+                    && offset + EOCD_MIN_LENGTH + Short.toUnsignedInt(tail.getShort(offset + 20)) == tailLength)
+            {
+                eocdOffset = offset;
+            }
+        }
+        if (eocdOffset == -1)
+        {
+            throw new ZipException("End of central directory not found in " + this.file);
+        }
+
+        long cdSize = Integer.toUnsignedLong(tail.getInt(eocdOffset + 12));
+        long cdOffset = Integer.toUnsignedLong(tail.getInt(eocdOffset + 16));
+        final int entryCount = Short.toUnsignedInt(tail.getShort(eocdOffset + 10));
+
+        final int locatorOffset = eocdOffset - ZIP64_EOCD_LOCATOR_LENGTH;
+        if ((cdSize == ZIP64_MAGIC || cdOffset == ZIP64_MAGIC || entryCount == ZIP64_MAGIC_SHORT) && locatorOffset >= 0
+                && tail.getInt(locatorOffset) == ZIP64_EOCD_LOCATOR_SIGNATURE)
+        {
+            final long zip64EocdOffset = tail.getLong(locatorOffset + 8);
+            final ByteBuffer zip64Eocd = ByteBuffer.allocate(ZIP64_EOCD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            this.readFully(zip64Eocd, zip64EocdOffset);
+            if (zip64Eocd.getInt(0) != ZIP64_EOCD_SIGNATURE)
+            {
+                throw new ZipException("Invalid ZIP64 end of central directory in " + this.file);
+            }
+            cdSize = zip64Eocd.getLong(40);
+            cdOffset = zip64Eocd.getLong(48);
+        }
+
+        if (cdOffset + cdSize > fileSize || cdSize > Integer.MAX_VALUE)
+        {
+            throw new ZipException("Invalid central directory location in " + this.file);
+        }
+
+        final ByteBuffer centralDirectory;
+        if (cdOffset >= tailStart)
+        {
+            // small archives - central directory already mapped as part of the tail
+            final ByteBuffer slice = tail.duplicate();
+            slice.position((int) (cdOffset - tailStart));
+            slice.limit((int) (cdOffset - tailStart + cdSize));
+            centralDirectory = slice.slice();
+        }
+        else
+        {
+            centralDirectory = this.channel.map(FileChannel.MapMode.READ_ONLY, cdOffset, cdSize);
+        }
+        return centralDirectory;
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException
+    {
+        long effectivePosition = position;
+        while (buffer.hasRemaining())
+        {
+            final int read = this.channel.read(buffer, effectivePosition);
+            if (read < 0)
+            {
+                throw new ZipException("Unexpected end of " + this.file);
+            }
+            effectivePosition += read;
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Instances of this class determine how individual entries of an archive are compressed based on their path. Entries may either be
+ * matched by path globs with an explicit deflate level, or be stored without compression if their file extension denotes content which is
+ * already compressed, e.g. JARs or most image formats, as deflating such content again costs CPU time for hardly any gain in size.
+ *
+ * @author Axel Faust
+ */
+public class CompressionPolicy
+{
+
+    public static final String DEFAULT_STORED_EXTENSIONS = "jar,zip,amp,png,gif,jpg,jpeg,woff,woff2";
+
+    public static final String LEVEL_STORED = "stored";
+
+    public static final String LEVEL_DEFAULT = "default";
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    private static final class GlobLevel
+    {
+
+        private final String glob;
+
+        private final int level;
+
+        private GlobLevel(final String glob, final int level)
+        {
+            this.glob = glob;
+            this.level = level;
+        }
+    }
+
+    private final Set<String> storedExtensions = new HashSet<>();
+
+    private final List<GlobLevel> globLevels = new ArrayList<>();
+
+    private final int defaultLevel;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param storedExtensions
+     *            the comma-separated list of file extensions of entries to store without compression
+     * @param compressionLevels
+     *            the compression levels keyed by path glob - levels may be specified as numbers from {@code 0} to {@code 9}, or as
+     *            {@link #LEVEL_STORED stored} or {@link #LEVEL_DEFAULT default}
+     * @param defaultLevel
+     *            the deflate level to use for any entry not matched by a glob or stored extension
+     */
+    public CompressionPolicy(final String storedExtensions, final Properties compressionLevels, final int defaultLevel)
+    {
+        if (storedExtensions != null)
+        {
+            for (final String extension : storedExtensions.split(","))
+            {
+                final String trimmedExtension = extension.trim();
+                if (!trimmedExtension.isEmpty())
+                {
+                    this.storedExtensions.add(trimmedExtension.toLowerCase(Locale.ENGLISH));
+                }
+            }
+        }
+
+        if (compressionLevels != null)
+        {
+            for (final Entry<Object, Object> levelEntry : compressionLevels.entrySet())
+            {
+                final String glob = String.valueOf(levelEntry.getKey()).trim();
+                this.globLevels.add(new GlobLevel(glob.startsWith("/") ? glob.substring(1) : glob,
+                        parseLevel(String.valueOf(levelEntry.getValue()).trim())));
+            }
+            // most specific, i.e. longest, glob takes precedence
+            this.globLevels.sort(Comparator.comparingInt((final GlobLevel globLevel) -> globLevel.glob.length()).reversed()
+                    .thenComparing(globLevel -> globLevel.glob));
+        }
+
+        this.defaultLevel = defaultLevel;
+    }
+
+    /**
+     * Determines the compression level for an entry.
+     *
+     * @param path
+     *            the path of the entry within the archive
+     * @return the deflate level to use for the entry - {@link Deflater#NO_COMPRESSION} denotes that the entry should be stored without
+     *         compression
+     */
+    public int getCompressionLevel(final String path)
+    {
+        for (final GlobLevel globLevel : this.globLevels)
+        {
+            if (SelectorUtils.matchPath(globLevel.glob, path, "/", true))
+            {
+                return globLevel.level;
+            }
+        }
+
+        final int lastDot = path.lastIndexOf('.');
+        if (lastDot != -1 && lastDot > path.lastIndexOf('/')
+                && this.storedExtensions.contains(path.substring(lastDot + 1).toLowerCase(Locale.ENGLISH)))
+        {
+            return Deflater.NO_COMPRESSION;
+        }
+
+        return this.defaultLevel;
+    }
+
+    /**
+     * @return {@code true} if this policy may require any deflate level other than the {@link Deflater#DEFAULT_COMPRESSION default}
+     */
+    public boolean hasCustomDeflateLevels()
+    {
+        return (this.defaultLevel != Deflater.DEFAULT_COMPRESSION && this.defaultLevel != Deflater.NO_COMPRESSION)
+                || this.globLevels.stream().anyMatch(
+                        globLevel -> globLevel.level != Deflater.DEFAULT_COMPRESSION && globLevel.level != Deflater.NO_COMPRESSION);
+    }
+
+    /**
+     * Parses a compression level as specified in configuration.
+     *
+     * @param level
+     *            the level to parse
+     * @return the deflate level
+     */
+    public static int parseLevel(final String level)
+    {
+        final int parsedLevel;
+        if (LEVEL_STORED.equalsIgnoreCase(level))
+        {
+            parsedLevel = Deflater.NO_COMPRESSION;
+        }
+        else if (LEVEL_DEFAULT.equalsIgnoreCase(level))
+        {
+            parsedLevel = Deflater.DEFAULT_COMPRESSION;
+        }
+        else
+        {
+            try
+            {
+                parsedLevel = Integer.parseInt(level);
+            }
+            catch (final NumberFormatException nfe)
+            {
+                throw new ArchiverException("Invalid compression level " + level, nfe);
+            }
+
+            if (parsedLevel < Deflater.DEFAULT_COMPRESSION || parsedLevel > Deflater.BEST_COMPRESSION)
+            {
+                throw new ArchiverException("Invalid compression level " + level);
+            }
+        }
+        return parsedLevel;
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class provide access to a local cache of AMPs which have already been extracted into the layout of a web application,
+ * i.e. with the file mappings of the AMP applied. Cache entries are keyed by the digest of the AMP and its effective file mappings, and
+ * installs are materialised from a cache entry by copying the cached files into the web application or - if enabled - by hard linking
+ * them, falling back to copying them if the file system does not support hard links between cache and web application. As hard linked
+ * files share their content with the cache, any in-place modification of such a file in the web application, e.g. by resource filtering
+ * or overlays, also modifies the cache entry, so entries should be {@link #verify(Entry) verified} before they are used.
+ *
+ * @author Axel Faust
+ */
+public class ExtractedAmpCache
+{
+
+    /**
+     * A single complete entry of the cache.
+     *
+     * @author Axel Faust
+     */
+    public static final class Entry
+    {
+
+        private final Path contentDirectory;
+
+        private final InstallManifest index;
+
+        private Entry(final Path contentDirectory, final InstallManifest index)
+        {
+            this.contentDirectory = contentDirectory;
+            this.index = index;
+        }
+
+        /**
+         * @return the directory containing the extracted files in the layout of the web application
+         */
+        public Path getContentDirectory()
+        {
+            return this.contentDirectory;
+        }
+
+        /**
+         * @return the index of all extracted files, recording their checksum and size as contained in the AMP
+         */
+        public InstallManifest getIndex()
+        {
+            return this.index;
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtractedAmpCache.class);
+
+    // bump whenever the layout of cache entries or the way they are extracted changes
+    private static final String CACHE_FORMAT = "extracted-amp-cache-1";
+
+    private static final String CONTENT_DIRECTORY = "content";
+
+    private static final String INDEX_FILE = "index.properties";
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private static final ConcurrentMap<File, String[]> AMP_DIGESTS = new ConcurrentHashMap<>();
+
+    private final Path cacheDirectory;
+
+    private volatile boolean linkSupported;
+
+    /**
+     * Creates a new accessor for a cache of extracted AMPs.
+     *
+     * @param cacheDirectory
+     *            the root directory of the cache
+     * @param linkFiles
+     *            {@code true} if cached files should be materialised by hard linking them, {@code false} if they should be copied
+     */
+    public ExtractedAmpCache(final File cacheDirectory, final boolean linkFiles)
+    {
+        this.cacheDirectory = cacheDirectory.toPath().toAbsolutePath();
+        this.linkSupported = linkFiles;
+    }
+
+    /**
+     * Computes the key of the cache entry for an AMP.
+     *
+     * @param ampFile
+     *            the AMP
+     * @param encoding
+     *            the encoding of entry names in the AMP
+     * @param fileMappings
+     *            the effective file mappings of the AMP
+     * @return the key of the cache entry
+     */
+    public String computeKey(final File ampFile, final String encoding, final Properties fileMappings) throws IOException
+    {
+        final MessageDigest digest = newDigest();
+
+        final StringBuilder config = new StringBuilder(256);
+        config.append(CACHE_FORMAT).append('\n');
+        config.append(encoding).append('\n');
+        config.append(digestAmp(ampFile)).append('\n');
+        config.append(new TreeMap<>(fileMappings)).append('\n');
+        digest.update(config.toString().getBytes(StandardCharsets.UTF_8));
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Retrieves a complete entry of the cache.
+     *
+     * @param key
+     *            the key of the entry
+     * @return the entry or {@code null} if the cache does not contain a complete entry for the key
+     */
+    public Entry get(final String key) throws IOException
+    {
+        Entry entry = null;
+        final Path entryDirectory = this.cacheDirectory.resolve(key);
+        final Path indexFile = entryDirectory.resolve(INDEX_FILE);
+        if (Files.isRegularFile(indexFile))
+        {
+            try (InputStream is = Files.newInputStream(indexFile))
+            {
+                entry = new Entry(entryDirectory.resolve(CONTENT_DIRECTORY), InstallManifest.readFrom(is));
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Verifies that all files of an entry still match the size and modification time recorded in its index, i.e. that the entry has not
+     * been modified since it was populated, e.g. via an in-place write to a hard linked file in a web application.
+     *
+     * @param entry
+     *            the entry to verify
+     * @return {@code true} if all files of the entry are unmodified, {@code false} otherwise
+     */
+    public boolean verify(final Entry entry) throws IOException
+    {
+        final Path contentDirectory = entry.getContentDirectory();
+        final InstallManifest index = entry.getIndex();
+        for (final String path : index.getPaths())
+        {
+            final InstallManifest.Record record = index.getRecord(path);
+            final Path cachedFile = contentDirectory.resolve(path);
+            final BasicFileAttributes attributes;
+            try
+            {
+                attributes = Files.readAttributes(cachedFile, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            }
+            catch (final NoSuchFileException nsfe)
+            {
+                LOGGER.debug("Cached file {} no longer exists", cachedFile);
+                return false;
+            }
+
+            if (!attributes.isRegularFile() || attributes.size() != record.getSize()
+                    || attributes.lastModifiedTime().toMillis() != record.getLastModified())
+            {
+                LOGGER.debug("Cached file {} has been modified since the cache entry was populated", cachedFile);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes an entry from the cache, e.g. after it failed {@link #verify(Entry) verification}.
+     *
+     * @param key
+     *            the key of the entry
+     */
+    public void invalidate(final String key) throws IOException
+    {
+        final Path entryDirectory = this.cacheDirectory.resolve(key);
+        if (Files.exists(entryDirectory))
+        {
+            // move out of the way first so that concurrent installs never see a partially deleted entry as complete
+            final Path invalidatedDirectory = Files.createTempDirectory(this.cacheDirectory, key + ".invalid.");
+            try
+            {
+                try
+                {
+                    Files.move(entryDirectory, invalidatedDirectory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (final AtomicMoveNotSupportedException amnsex)
+                {
+                    // remove the index first so that the entry is no longer considered complete while it is being moved
+                    Files.deleteIfExists(entryDirectory.resolve(INDEX_FILE));
+                    Files.move(entryDirectory, invalidatedDirectory.resolve(key));
+                }
+            }
+            catch (final NoSuchFileException nsfe)
+            {
+                LOGGER.debug("Cache entry {} has already been removed concurrently", entryDirectory);
+            }
+            deleteRecursively(invalidatedDirectory);
+        }
+    }
+
+    /**
+     * Creates a temporary directory into which to extract an AMP to populate an entry of the cache.
+     *
+     * @param key
+     *            the key of the entry to populate
+     * @return the directory into which to extract the AMP
+     */
+    public Path createStagingDirectory(final String key) throws IOException
+    {
+        Files.createDirectories(this.cacheDirectory);
+        final Path stagingDirectory = Files.createTempDirectory(this.cacheDirectory, key + ".");
+        return Files.createDirectory(stagingDirectory.resolve(CONTENT_DIRECTORY));
+    }
+
+    /**
+     * Completes the population of an entry of the cache, making it available to all subsequent installs. If the entry has concurrently
+     * been populated by another install, that entry is retained and the staged entry discarded. The staged entry is moved into place
+     * atomically if the file system supports it, and otherwise with its index moved last, as an entry is only considered complete once its
+     * index exists.
+     *
+     * @param key
+     *            the key of the entry
+     * @param stagingDirectory
+     *            the directory into which the AMP has been extracted as obtained from {@link #createStagingDirectory(String)}
+     * @param index
+     *            the index of all extracted files
+     * @return the complete entry
+     */
+    public Entry commit(final String key, final Path stagingDirectory, final InstallManifest index) throws IOException
+    {
+        final Path stagingEntryDirectory = stagingDirectory.getParent();
+        try (OutputStream os = Files.newOutputStream(stagingEntryDirectory.resolve(INDEX_FILE)))
+        {
+            index.writeTo(os, key);
+        }
+
+        final Path entryDirectory = this.cacheDirectory.resolve(key);
+        try
+        {
+            Files.move(stagingEntryDirectory, entryDirectory, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("Stored extracted AMP with {} files in cache as {}", index.size(), entryDirectory);
+        }
+        catch (final AtomicMoveNotSupportedException amnsex)
+        {
+            this.commitNonAtomically(key, stagingEntryDirectory, entryDirectory, index);
+        }
+        catch (final FileAlreadyExistsException faeex)
+        {
+            LOGGER.debug("Cache entry {} already exists - discarding staged entry", entryDirectory);
+            deleteRecursively(stagingEntryDirectory);
+        }
+        catch (final IOException ioex)
+        {
+            // a non-empty target directory may also be reported as a generic error
+            if (!Files.isRegularFile(entryDirectory.resolve(INDEX_FILE)))
+            {
+                throw ioex;
+            }
+            deleteRecursively(stagingEntryDirectory);
+        }
+
+        final Entry entry = this.get(key);
+        if (entry == null)
+        {
+            throw new IOException("Failed to store extracted AMP in cache as " + entryDirectory
+                    + " - an incomplete entry exists which is either being stored concurrently or has been left by an aborted install");
+        }
+        return entry;
+    }
+
+    private void commitNonAtomically(final String key, final Path stagingEntryDirectory, final Path entryDirectory,
+            final InstallManifest index) throws IOException
+    {
+        LOGGER.debug("File system of {} does not support atomic moves - storing cache entry {} non-atomically", this.cacheDirectory,
+                entryDirectory);
+        try
+        {
+            Files.createDirectory(entryDirectory);
+        }
+        catch (final FileAlreadyExistsException faeex)
+        {
+            LOGGER.debug("Cache entry {} already exists - discarding staged entry", entryDirectory);
+            deleteRecursively(stagingEntryDirectory);
+            return;
+        }
+
+        Files.move(stagingEntryDirectory.resolve(CONTENT_DIRECTORY), entryDirectory.resolve(CONTENT_DIRECTORY));
+        AtomicFiles.write(entryDirectory.resolve(INDEX_FILE), os -> index.writeTo(os, key));
+        deleteRecursively(stagingEntryDirectory);
+        LOGGER.debug("Stored extracted AMP with {} files in cache as {}", index.size(), entryDirectory);
+    }
+
+    /**
+     * Discards a staged entry after a failed population.
+     *
+     * @param stagingDirectory
+     *            the directory into which the AMP has been extracted as obtained from {@link #createStagingDirectory(String)}
+     */
+    public void discard(final Path stagingDirectory)
+    {
+        try
+        {
+            deleteRecursively(stagingDirectory.getParent());
+        }
+        catch (final IOException ioex)
+        {
+            LOGGER.warn("Failed to delete staged cache entry {}", stagingDirectory.getParent(), ioex);
+        }
+    }
+
+    /**
+     * Materialises a cached file in a web application, replacing any existing file.
+     *
+     * @param cachedFile
+     *            the cached file
+     * @param targetFile
+     *            the file to materialise
+     * @return {@code true} if the file has been hard linked, {@code false} if it has been copied
+     */
+    public boolean materialise(final Path cachedFile, final Path targetFile) throws IOException
+    {
+        Files.deleteIfExists(targetFile);
+
+        boolean linked = false;
+        if (this.linkSupported)
+        {
+            try
+            {
+                Files.createLink(targetFile, cachedFile);
+                linked = true;
+            }
+            catch (final UnsupportedOperationException | IOException e)
+            {
+                // typically caused by cache and web application residing on different file systems, so don't try again
+                LOGGER.debug("Failed to hard link {} - copying cached files instead", cachedFile, e);
+                this.linkSupported = false;
+            }
+        }
+
+        if (!linked)
+        {
+            Files.copy(cachedFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        return linked;
+    }
+
+    private static String digestAmp(final File ampFile) throws IOException
+    {
+        final File key = ampFile.getAbsoluteFile();
+        final String modifiedStamp = String.valueOf(key.lastModified());
+        final String sizeStamp = String.valueOf(key.length());
+
+        // AMPs are typically installed into multiple web applications in the same build, so only digest them once
+        final String[] cached = AMP_DIGESTS.get(key);
+        if (cached != null && cached[0].equals(modifiedStamp) && cached[1].equals(sizeStamp))
+        {
+            return cached[2];
+        }
+
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        try (InputStream is = Files.newInputStream(key.toPath()))
+        {
+            int read;
+            while ((read = is.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        final String ampDigest = toHex(digest.digest());
+        AMP_DIGESTS.put(key, new String[] { modifiedStamp, sizeStamp, ampDigest });
+        return ampDigest;
+    }
+
+    private static MessageDigest newDigest() throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException nsaex)
+        {
+            throw new IOException("SHA-256 digest not supported", nsaex);
+        }
+    }
+
+    private static String toHex(final byte[] bytes)
+    {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes)
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void deleteRecursively(final Path directory) throws IOException
+    {
+        if (Files.exists(directory))
+        {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+            {
+
+                /**
+                 *
+                 * {@inheritDoc}
+                 */
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+                {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                /**
+                 *
+                 * {@inheritDoc}
+                 */
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException
+                {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+}
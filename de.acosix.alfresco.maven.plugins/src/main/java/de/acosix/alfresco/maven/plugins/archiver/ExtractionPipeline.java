@@ -0,0 +1,442 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+
+/**
+ * Instances of this class decouple reading / inflating entries of an AMP from writing the extracted files. The thread submitting entries
+ * reads their content into chunks of a bounded pool of buffers, while a small pool of writer threads consumes the chunks and writes the
+ * files, so that CPU-bound inflating overlaps with blocking disk writes. If all buffers are in use, the submitting thread blocks until
+ * writers have released buffers, limiting the memory held by the pipeline.
+ *
+ * @author Axel Faust
+ */
+public class ExtractionPipeline implements AutoCloseable
+{
+
+    /**
+     * Writes a single entry submitted to the pipeline.
+     *
+     * @author Axel Faust
+     */
+    @FunctionalInterface
+    public interface EntryWriter
+    {
+
+        /**
+         * Writes an entry.
+         *
+         * @param entryStream
+         *            the stream of the entry content as read by the submitting thread, or {@code null} if the entry has been submitted
+         *            without content
+         */
+        void write(InputStream entryStream) throws IOException, ArchiverException;
+    }
+
+    /**
+     * Stream of the content of a single entry, fed with chunks by the submitting thread. Closing the stream before the end of the
+     * content has been reached abandons the entry, which stops the submitting thread from reading any further content.
+     *
+     * @author Axel Faust
+     */
+    private final class EntryStream extends InputStream
+    {
+
+        private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+
+        private volatile boolean abandoned;
+
+        private Chunk current;
+
+        private int position;
+
+        private boolean ended;
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] single = new byte[1];
+            final int read = this.read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!this.ensureChunk())
+            {
+                return -1;
+            }
+
+            final int count = Math.min(len, this.current.length - this.position);
+            System.arraycopy(this.current.buffer, this.position, b, off, count);
+            this.position += count;
+            if (this.position == this.current.length)
+            {
+                ExtractionPipeline.this.release(this.current);
+                this.current = null;
+            }
+            return count;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void close()
+        {
+            this.abandoned = true;
+            if (this.current != null)
+            {
+                ExtractionPipeline.this.release(this.current);
+                this.current = null;
+            }
+            Chunk chunk;
+            while ((chunk = this.chunks.poll()) != null)
+            {
+                if (chunk != END_OF_ENTRY && chunk != FAILED_ENTRY)
+                {
+                    ExtractionPipeline.this.release(chunk);
+                }
+            }
+        }
+
+        private boolean ensureChunk() throws IOException
+        {
+            while (this.current == null && !this.ended)
+            {
+                final Chunk chunk;
+                try
+                {
+                    chunk = this.chunks.take();
+                }
+                catch (final InterruptedException iex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for entry content");
+                }
+
+                if (chunk == END_OF_ENTRY)
+                {
+                    this.ended = true;
+                }
+                else if (chunk == FAILED_ENTRY)
+                {
+                    this.ended = true;
+                    throw new IOException("Failed to read entry content");
+                }
+                else
+                {
+                    this.current = chunk;
+                    this.position = 0;
+                }
+            }
+            return this.current != null;
+        }
+
+        private void put(final Chunk chunk)
+        {
+            if (this.abandoned)
+            {
+                ExtractionPipeline.this.release(chunk);
+            }
+            else
+            {
+                this.chunks.add(chunk);
+                // close may have raced with adding the chunk
+                if (this.abandoned && this.chunks.remove(chunk))
+                {
+                    ExtractionPipeline.this.release(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * A chunk of entry content in a pooled buffer.
+     *
+     * @author Axel Faust
+     */
+    private static final class Chunk
+    {
+
+        private final byte[] buffer;
+
+        private int length;
+
+        private Chunk(final byte[] buffer)
+        {
+            this.buffer = buffer;
+        }
+    }
+
+    private static final Chunk END_OF_ENTRY = new Chunk(new byte[0]);
+
+    private static final Chunk FAILED_ENTRY = new Chunk(new byte[0]);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final long PERMIT_WAIT_MILLIS = 100;
+
+    private final ExecutorService executor;
+
+    private final Semaphore bufferPermits;
+
+    private final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+
+    private final List<Future<?>> futures = new ArrayList<>();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param writerThreadCount
+     *            the number of threads writing extracted files
+     * @param bufferBudget
+     *            the maximum number of bytes of read but not yet written entry content held by the pipeline
+     */
+    public ExtractionPipeline(final int writerThreadCount, final long bufferBudget)
+    {
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, writerThreadCount), r -> {
+            final Thread thread = new Thread(r, "amp-extract-writer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bufferPermits = new Semaphore((int) Math.max(2, Math.min(Integer.MAX_VALUE, bufferBudget / CHUNK_SIZE)));
+    }
+
+    /**
+     * Checks whether a stream is the stream of an entry submitted to a pipeline, i.e. whether reading from it only waits for content read
+     * by another thread.
+     *
+     * @param stream
+     *            the stream to check - may be {@code null}
+     * @return {@code true} if the stream is fed by a pipeline, {@code false} otherwise
+     */
+    public static boolean isEntryStream(final InputStream stream)
+    {
+        return stream instanceof EntryStream;
+    }
+
+    /**
+     * Submits an entry without content, e.g. a directory, or an entry which the writer reads by itself.
+     *
+     * @param writer
+     *            the writer of the entry
+     */
+    public void submit(final EntryWriter writer) throws ArchiverException
+    {
+        this.checkFailure();
+        this.futures.add(this.executor.submit(() -> {
+            try
+            {
+                writer.write(null);
+            }
+            catch (final IOException | RuntimeException e)
+            {
+                this.failure.compareAndSet(null, e);
+                throw e;
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Submits an entry with content, reading the content in the calling thread while the entry is written by a writer thread. This
+     * method blocks while all buffers of the pipeline are in use.
+     *
+     * @param source
+     *            the stream of the entry content - will not be closed
+     * @param writer
+     *            the writer of the entry
+     */
+    public void submit(final InputStream source, final EntryWriter writer) throws IOException, ArchiverException
+    {
+        this.checkFailure();
+
+        final EntryStream entryStream = new EntryStream();
+        this.futures.add(this.executor.submit(() -> {
+            try
+            {
+                writer.write(entryStream);
+            }
+            catch (final IOException | RuntimeException e)
+            {
+                this.failure.compareAndSet(null, e);
+                throw e;
+            }
+            finally
+            {
+                entryStream.close();
+            }
+            return null;
+        }));
+
+        boolean complete = false;
+        try
+        {
+            while (!entryStream.abandoned)
+            {
+                final Chunk chunk = this.acquire(entryStream);
+                if (chunk == null)
+                {
+                    break;
+                }
+
+                int length = 0;
+                int read = 0;
+                while (length < chunk.buffer.length && (read = source.read(chunk.buffer, length, chunk.buffer.length - length)) != -1)
+                {
+                    length += read;
+                }
+                chunk.length = length;
+
+                if (length > 0)
+                {
+                    entryStream.put(chunk);
+                }
+                else
+                {
+                    this.release(chunk);
+                }
+                if (read == -1)
+                {
+                    break;
+                }
+            }
+            complete = true;
+        }
+        finally
+        {
+            entryStream.chunks.add(complete ? END_OF_ENTRY : FAILED_ENTRY);
+        }
+    }
+
+    /**
+     * Waits for all submitted entries to be written.
+     */
+    public void await() throws IOException, ArchiverException
+    {
+        try
+        {
+            for (final Future<?> future : this.futures)
+            {
+                future.get();
+            }
+        }
+        catch (final ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ArchiverException)
+            {
+                throw (ArchiverException) cause;
+            }
+            throw new ArchiverException("Error while writing extracted entries", cause);
+        }
+        catch (final InterruptedException iex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for extracted entries to be written");
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+    {
+        this.executor.shutdownNow();
+    }
+
+    private Chunk acquire(final EntryStream entryStream) throws IOException, ArchiverException
+    {
+        try
+        {
+            // back-pressure - but stop waiting if a writer failed or the entry has been abandoned
+            while (!this.bufferPermits.tryAcquire(PERMIT_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                this.checkFailure();
+                if (entryStream.abandoned)
+                {
+                    return null;
+                }
+            }
+        }
+        catch (final InterruptedException iex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer of the extraction pipeline");
+        }
+
+        final byte[] buffer = this.bufferPool.poll();
+        return new Chunk(buffer != null ? buffer : new byte[CHUNK_SIZE]);
+    }
+
+    private void release(final Chunk chunk)
+    {
+        this.bufferPool.offer(chunk.buffer);
+        this.bufferPermits.release();
+    }
+
+    private void checkFailure() throws ArchiverException
+    {
+        final Throwable failure = this.failure.get();
+        if (failure != null)
+        {
+            throw new ArchiverException("Error while writing extracted entries", failure);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.util.ArchiveEntryUtils;
+import org.codehaus.plexus.components.io.attributes.AttributeUtils;
+
+/**
+ * Instances of this class write the regular files extracted from an AMP into a single output directory with as few file system calls per
+ * file as possible. In contrast to the generic extraction of the base class, which resolves the canonical path of each file, checks for
+ * and creates its parent directories and replaces any existing file, instances of this class
+ * <ul>
+ * <li>remember which parent directories already exist and have been verified to reside within the output directory,</li>
+ * <li>optimistically create new files, only checking for and replacing an existing file if that fails,</li>
+ * <li>copy file content via a pool of reusable - optionally direct - buffers, and</li>
+ * <li>defer updates of the modification time and permissions of written files to {@link #flush() batches}, skipping permission updates
+ * which would not change the permissions files are created with.</li>
+ * </ul>
+ * Instances of this class are thread-safe, and must be {@link #flush() flushed} once all files have been written.
+ *
+ * @author Axel Faust
+ */
+public class ExtractionWriter
+{
+
+    /**
+     * Callback to decide whether to replace a file which already exists.
+     *
+     * @author Axel Faust
+     */
+    @FunctionalInterface
+    public interface ReplaceCheck
+    {
+
+        /**
+         * Checks whether to replace an existing file.
+         *
+         * @param existingFile
+         *            the existing file
+         * @return {@code true} if the file should be replaced, {@code false} if it should be retained
+         */
+        boolean shouldReplace(File existingFile) throws IOException;
+    }
+
+    /**
+     * A pending update of the modification time and permissions of a written file.
+     *
+     * @author Axel Faust
+     */
+    private static final class AttributeUpdate
+    {
+
+        private final Path file;
+
+        private final long lastModified;
+
+        private final Integer mode;
+
+        private final LongConsumer onCompleted;
+
+        private AttributeUpdate(final Path file, final long lastModified, final Integer mode, final LongConsumer onCompleted)
+        {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.mode = mode;
+            this.onCompleted = onCompleted;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_PENDING_UPDATES = 4096;
+
+    private static final int PERMISSION_BITS = 0777;
+
+    private final Path rootDirectory;
+
+    private final Path canonicalRootDirectory;
+
+    private final boolean directBuffers;
+
+    private final int maxPooledBuffers;
+
+    private final boolean ignorePermissions;
+
+    private final ConcurrentMap<Path, Path> canonicalDirectories = new ConcurrentHashMap<>();
+
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    private final Queue<AttributeUpdate> pendingUpdates = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pendingUpdateCount = new AtomicInteger();
+
+    private volatile Set<PosixFilePermission> defaultPermissions;
+
+    private volatile boolean defaultPermissionsChecked;
+
+    // racy initialisation is benign as all threads would determine the same value
+    private final Boolean[] lastModifiedPrecise = new Boolean[2];
+
+    /**
+     * Creates a new writer for an output directory.
+     *
+     * @param rootDirectory
+     *            the output directory
+     * @param directBuffers
+     *            {@code true} if file content should be copied via direct buffers, {@code false} to use heap buffers
+     * @param maxPooledBuffers
+     *            the maximum number of buffers to keep for reuse, typically the number of concurrently extracting threads
+     * @param ignorePermissions
+     *            {@code true} if permissions of extracted entries should not be applied to written files
+     */
+    public ExtractionWriter(final File rootDirectory, final boolean directBuffers, final int maxPooledBuffers,
+            final boolean ignorePermissions) throws IOException
+    {
+        this.rootDirectory = rootDirectory.getAbsoluteFile().toPath().normalize();
+        Files.createDirectories(this.rootDirectory);
+        this.canonicalRootDirectory = this.rootDirectory.toRealPath();
+        this.canonicalDirectories.put(this.rootDirectory, this.canonicalRootDirectory);
+        this.directBuffers = directBuffers;
+        this.maxPooledBuffers = Math.max(1, maxPooledBuffers);
+        this.ignorePermissions = ignorePermissions;
+    }
+
+    /**
+     * @return the output directory
+     */
+    public File getRootDirectory()
+    {
+        return this.rootDirectory.toFile();
+    }
+
+    /**
+     * Resolves the path of a file to write, ensuring its parent directory exists and resides within the output directory.
+     *
+     * @param targetName
+     *            the name of the file relative to the output directory
+     * @return the path of the file
+     */
+    public Path resolve(final String targetName) throws IOException, ArchiverException
+    {
+        final String relativeName = targetName.replace('\\', '/');
+        final Path targetPath = this.rootDirectory.resolve(relativeName.startsWith("/") ? relativeName.substring(1) : relativeName)
+                .normalize();
+        if (!targetPath.startsWith(this.rootDirectory) || targetPath.equals(this.rootDirectory))
+        {
+            throw new ArchiverException("Entry is outside of the target directory (" + targetName + ")");
+        }
+
+        final Path parent = targetPath.getParent();
+        if (!this.canonicalDirectories.containsKey(parent))
+        {
+            Files.createDirectories(parent);
+            // parents may be symbolic links pointing outside of the output directory
+            final Path canonicalParent = parent.toRealPath();
+            if (!canonicalParent.startsWith(this.canonicalRootDirectory))
+            {
+                throw new ArchiverException("Entry is outside of the target directory (" + targetName + ")");
+            }
+            this.canonicalDirectories.put(parent, canonicalParent);
+        }
+        return targetPath;
+    }
+
+    /**
+     * Writes a file from a stream.
+     *
+     * @param targetPath
+     *            the path of the file as {@link #resolve(String) resolved}
+     * @param in
+     *            the stream providing the content of the file
+     * @param suffix
+     *            additional content to append to the file - may be {@code null}
+     * @param lastModified
+     *            the modification time to set
+     * @param mode
+     *            the Unix mode to set - may be {@code null}
+     * @param replaceCheck
+     *            the check whether to replace an existing file
+     * @param onCompleted
+     *            the callback to invoke with the effective modification time once the file is complete - may be {@code null}
+     * @return {@code true} if the file has been written, {@code false} if an existing file has been retained
+     */
+    public boolean write(final Path targetPath, final InputStream in, final byte[] suffix, final long lastModified, final Integer mode,
+            final ReplaceCheck replaceCheck, final LongConsumer onCompleted) throws IOException, ArchiverException
+    {
+        final FileChannel channel = this.open(targetPath, replaceCheck, onCompleted);
+        if (channel == null)
+        {
+            return false;
+        }
+
+        try (FileChannel target = channel)
+        {
+            final ByteBuffer buffer = this.acquireBuffer();
+            try
+            {
+                if (buffer.hasArray())
+                {
+                    final byte[] array = buffer.array();
+                    int read;
+                    while ((read = in.read(array, 0, array.length)) != -1)
+                    {
+                        buffer.clear();
+                        buffer.limit(read);
+                        writeFully(target, buffer);
+                    }
+                }
+                else
+                {
+                    // not closed as this would close the underlying stream
+                    final ReadableByteChannel source = Channels.newChannel(in);
+                    buffer.clear();
+                    while (source.read(buffer) != -1)
+                    {
+                        buffer.flip();
+                        writeFully(target, buffer);
+                        buffer.clear();
+                    }
+                }
+            }
+            finally
+            {
+                this.releaseBuffer(buffer);
+            }
+
+            if (suffix != null)
+            {
+                writeFully(target, ByteBuffer.wrap(suffix));
+            }
+        }
+
+        this.scheduleAttributeUpdate(targetPath, lastModified, mode, onCompleted);
+        return true;
+    }
+
+    /**
+     * Writes a file by transferring a region of another file.
+     *
+     * @param targetPath
+     *            the path of the file as {@link #resolve(String) resolved}
+     * @param source
+     *            the channel of the file to transfer from
+     * @param offset
+     *            the offset of the region to transfer
+     * @param size
+     *            the size of the region to transfer
+     * @param lastModified
+     *            the modification time to set
+     * @param mode
+     *            the Unix mode to set - may be {@code null}
+     * @param replaceCheck
+     *            the check whether to replace an existing file
+     * @param onCompleted
+     *            the callback to invoke with the effective modification time once the file is complete - may be {@code null}
+     * @return {@code true} if the file has been written, {@code false} if an existing file has been retained
+     */
+    public boolean transfer(final Path targetPath, final FileChannel source, final long offset, final long size, final long lastModified,
+            final Integer mode, final ReplaceCheck replaceCheck, final LongConsumer onCompleted) throws IOException, ArchiverException
+    {
+        final FileChannel channel = this.open(targetPath, replaceCheck, onCompleted);
+        if (channel == null)
+        {
+            return false;
+        }
+
+        try (FileChannel target = channel)
+        {
+            long transferred = 0;
+            while (transferred < size)
+            {
+                final long count = source.transferTo(offset + transferred, size - transferred, target);
+                if (count <= 0)
+                {
+                    throw new IOException("Unexpected end of data for " + targetPath);
+                }
+                transferred += count;
+            }
+        }
+
+        this.scheduleAttributeUpdate(targetPath, lastModified, mode, onCompleted);
+        return true;
+    }
+
+    /**
+     * Applies all pending updates of modification times and permissions of written files.
+     */
+    public void flush() throws ArchiverException
+    {
+        AttributeUpdate update;
+        while ((update = this.pendingUpdates.poll()) != null)
+        {
+            this.pendingUpdateCount.decrementAndGet();
+            this.applyAttributeUpdate(update);
+        }
+    }
+
+    private FileChannel open(final Path targetPath, final ReplaceCheck replaceCheck, final LongConsumer onCompleted)
+            throws IOException, ArchiverException
+    {
+        FileChannel channel;
+        try
+        {
+            // vast majority of files will be new, so avoid checking for / deleting an existing file
+            channel = FileChannel.open(targetPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        catch (final FileAlreadyExistsException faee)
+        {
+            if (Files.isSymbolicLink(targetPath))
+            {
+                throw new ArchiverException("Entry is outside of the target directory (" + this.rootDirectory.relativize(targetPath) + ")");
+            }
+
+            if (replaceCheck.shouldReplace(targetPath.toFile()))
+            {
+                // same semantics as copy with REPLACE_EXISTING in base class, so hard linked files are never modified in place
+                Files.delete(targetPath);
+                channel = FileChannel.open(targetPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            }
+            else
+            {
+                channel = null;
+                if (onCompleted != null)
+                {
+                    onCompleted.accept(targetPath.toFile().lastModified());
+                }
+            }
+        }
+        return channel;
+    }
+
+    private void scheduleAttributeUpdate(final Path targetPath, final long lastModified, final Integer mode,
+            final LongConsumer onCompleted) throws ArchiverException
+    {
+        final Integer effectiveMode = this.ignorePermissions || mode == null || this.hasDefaultPermissions(targetPath, mode) ? null : mode;
+        this.pendingUpdates.add(new AttributeUpdate(targetPath, lastModified, effectiveMode, onCompleted));
+
+        // bound memory of very large extractions - any thread may help to apply pending updates
+        if (this.pendingUpdateCount.incrementAndGet() > MAX_PENDING_UPDATES)
+        {
+            final AttributeUpdate update = this.pendingUpdates.poll();
+            if (update != null)
+            {
+                this.pendingUpdateCount.decrementAndGet();
+                this.applyAttributeUpdate(update);
+            }
+        }
+    }
+
+    private void applyAttributeUpdate(final AttributeUpdate update) throws ArchiverException
+    {
+        final File file = update.file.toFile();
+        file.setLastModified(update.lastModified);
+        if (update.mode != null)
+        {
+            ArchiveEntryUtils.chmod(file, update.mode);
+        }
+
+        if (update.onCompleted != null)
+        {
+            update.onCompleted.accept(this.isLastModifiedPrecise(file, update.lastModified) ? update.lastModified : file.lastModified());
+        }
+    }
+
+    private boolean hasDefaultPermissions(final Path targetPath, final int mode)
+    {
+        if (!this.defaultPermissionsChecked)
+        {
+            synchronized (this)
+            {
+                if (!this.defaultPermissionsChecked)
+                {
+                    try
+                    {
+                        // all files are created by this writer, so share the permissions of the first one
+                        this.defaultPermissions = Files.getPosixFilePermissions(targetPath);
+                    }
+                    catch (final UnsupportedOperationException | IOException e)
+                    {
+                        this.defaultPermissions = null;
+                    }
+                    this.defaultPermissionsChecked = true;
+                }
+            }
+        }
+
+        final Set<PosixFilePermission> defaultPermissions = this.defaultPermissions;
+        return defaultPermissions != null && defaultPermissions.equals(AttributeUtils.getPermissions(mode & PERMISSION_BITS));
+    }
+
+    private boolean isLastModifiedPrecise(final File file, final long lastModified)
+    {
+        // even seconds are stored precisely by all common file systems, incl. FAT with its granularity of 2 seconds
+        if (lastModified % 2000 == 0)
+        {
+            return true;
+        }
+
+        // some file systems only store whole seconds, so check precision of whole and fractional seconds separately
+        final int precisionIdx = lastModified % 1000 == 0 ? 0 : 1;
+        Boolean precise = this.lastModifiedPrecise[precisionIdx];
+        if (precise == null)
+        {
+            try
+            {
+                precise = Files.getLastModifiedTime(file.toPath()).equals(FileTime.fromMillis(lastModified));
+            }
+            catch (final IOException ioex)
+            {
+                precise = Boolean.FALSE;
+            }
+            this.lastModifiedPrecise[precisionIdx] = precise;
+        }
+        return precise.booleanValue();
+    }
+
+    private ByteBuffer acquireBuffer()
+    {
+        final ByteBuffer buffer = this.bufferPool.poll();
+        if (buffer != null)
+        {
+            return buffer;
+        }
+        return this.directBuffers ? ByteBuffer.allocateDirect(BUFFER_SIZE) : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(final ByteBuffer buffer)
+    {
+        // pool size is only approximate under concurrency, which is good enough to bound memory
+        if (this.bufferPool.size() < this.maxPooledBuffers)
+        {
+            buffer.clear();
+            this.bufferPool.offer(buffer);
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+}
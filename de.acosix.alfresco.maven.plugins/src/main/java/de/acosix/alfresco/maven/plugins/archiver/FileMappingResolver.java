@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+/**
+ * Instances of this class provide an immutable, compiled form of the AMP file mappings, indexing all configured path prefixes in a trie
+ * of path segments so that the longest matching mapping for an entry can be resolved in a single forward walk over the entry name.
+ *
+ * @author Axel Faust
+ */
+public final class FileMappingResolver
+{
+
+    /**
+     * A single file mapping as configured in the AMP file mappings.
+     *
+     * @author Axel Faust
+     */
+    public static final class Mapping
+    {
+
+        private final String source;
+
+        private final String target;
+
+        private final int prefixLength;
+
+        private Mapping(final String source, final String target)
+        {
+            this.source = source;
+            this.target = target;
+            this.prefixLength = source.length() - 1;
+        }
+
+        /**
+         * @return the source path prefix as configured, including the leading slash
+         */
+        public String getSource()
+        {
+            return this.source;
+        }
+
+        /**
+         * @return the target path prefix as configured, including the leading slash
+         */
+        public String getTarget()
+        {
+            return this.target;
+        }
+
+        /**
+         * Maps an entry name matched by this mapping.
+         *
+         * @param entryName
+         *            the name of the entry
+         * @return the mapped name of the entry
+         */
+        public String map(final String entryName)
+        {
+            final String targetPrefix = this.target.isEmpty() ? "" : this.target.substring(1);
+            return targetPrefix + entryName.substring(this.prefixLength);
+        }
+    }
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    private static final class Node
+    {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private Mapping mapping;
+    }
+
+    private final Node root;
+
+    private FileMappingResolver(final Node root)
+    {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the file mappings of an AMP into a resolver instance.
+     *
+     * @param fileMappings
+     *            the file mappings to compile
+     * @return the resolver for the file mappings
+     */
+    public static FileMappingResolver compile(final Properties fileMappings)
+    {
+        final Node root = new Node();
+        for (final Entry<Object, Object> mappingEntry : fileMappings.entrySet())
+        {
+            if (!(mappingEntry.getKey() instanceof String) || !(mappingEntry.getValue() instanceof String))
+            {
+                continue;
+            }
+
+            final String source = (String) mappingEntry.getKey();
+            // only keys with a leading slash can ever match as the lookup of entry names is always relative to the AMP root
+            if (source.startsWith("/"))
+            {
+                Node node = root;
+                if (source.length() > 1)
+                {
+                    for (final String segment : source.substring(1).split("/", -1))
+                    {
+                        node = node.children.computeIfAbsent(segment, k -> new Node());
+                    }
+                }
+                node.mapping = new Mapping(source, (String) mappingEntry.getValue());
+            }
+        }
+        return new FileMappingResolver(root);
+    }
+
+    /**
+     * Finds the mapping with the longest source path prefix matching the parent path of an entry.
+     *
+     * @param entryName
+     *            the name of the entry
+     * @return the mapping for the entry or {@code null} if no mapping applies
+     */
+    public Mapping findMapping(final String entryName)
+    {
+        if (entryName.isEmpty())
+        {
+            return null;
+        }
+
+        Node node = this.root;
+        Mapping bestMatch = node.mapping;
+
+        int segmentStart = 0;
+        int separatorIndex = entryName.indexOf('/', segmentStart);
+        while (separatorIndex != -1)
+        {
+            node = node.children.get(entryName.substring(segmentStart, separatorIndex));
+            if (node == null)
+            {
+                break;
+            }
+
+            // a separator at the very start does not constitute a path prefix of its own
+            if (node.mapping != null && separatorIndex > 0)
+            {
+                bestMatch = node.mapping;
+            }
+
+            segmentStart = separatorIndex + 1;
+            separatorIndex = entryName.indexOf('/', segmentStart);
+        }
+
+        return bestMatch;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class define custom Java Flight Recorder events for AMP installs. As this plugin still targets Java 8, the events
+ * cannot be declared as subclasses of {@code jdk.jfr.Event} but are defined at runtime via the {@code jdk.jfr.EventFactory} API (Java 12
+ * or newer), accessed reflectively. On runtimes without that API, all events are silently discarded.
+ *
+ * @author Axel Faust
+ */
+final class InstallEvents
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstallEvents.class);
+
+    private static final String EVENT_NAME_PREFIX = "de.acosix.alfresco.maven.";
+
+    private static final String[] CATEGORY = { "Acosix", "Alfresco Maven", "AMP Install" };
+
+    private static final String TIMESPAN_NANOSECONDS = "NANOSECONDS";
+
+    private static final String DATA_AMOUNT_BYTES = "BYTES";
+
+    /**
+     * Event for a single timed phase of an AMP install.
+     */
+    static final InstallEvents PHASE = new InstallEvents("AmpInstallPhase", "AMP Install Phase",
+            "A single phase of the installation of an AMP", //
+            field(String.class, "module", "Module", null, null), //
+            field(String.class, "phase", "Phase", null, null));
+
+    /**
+     * Event summarising all phases and counters of an AMP install.
+     */
+    static final InstallEvents SUMMARY = new InstallEvents("AmpInstall", "AMP Install",
+            "Summary of the installation of an AMP with cumulative phase timings and entry / byte counters", //
+            field(String.class, "module", "Module", null, null), //
+            field(String.class, "source", "Source", null, null), //
+            field(String.class, "destination", "Destination", null, null), //
+            field(long.class, "entriesSeen", "Entries Seen", null, null), //
+            field(long.class, "entriesSelected", "Entries Selected", null, null), //
+            field(long.class, "entriesSkipped", "Entries Skipped", null, null), //
+            field(long.class, "entriesWritten", "Entries Written", null, null), //
+            field(long.class, "bytesIn", "Bytes In", "jdk.jfr.DataAmount", DATA_AMOUNT_BYTES), //
+            field(long.class, "bytesOut", "Bytes Out", "jdk.jfr.DataAmount", DATA_AMOUNT_BYTES), //
+            field(long.class, "validationTime", "Validation Time", "jdk.jfr.Timespan", TIMESPAN_NANOSECONDS), //
+            field(long.class, "mappingTime", "Mapping Time", "jdk.jfr.Timespan", TIMESPAN_NANOSECONDS), //
+            field(long.class, "extractionTime", "Extraction Time", "jdk.jfr.Timespan", TIMESPAN_NANOSECONDS), //
+            field(long.class, "inflateTime", "Inflate Time", "jdk.jfr.Timespan", TIMESPAN_NANOSECONDS), //
+            field(long.class, "writeTime", "Write Time", "jdk.jfr.Timespan", TIMESPAN_NANOSECONDS), //
+            field(long.class, "manifestTime", "Manifest Time", "jdk.jfr.Timespan", TIMESPAN_NANOSECONDS));
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    private static final class FieldDefinition
+    {
+
+        private final Class<?> type;
+
+        private final String name;
+
+        private final String label;
+
+        private final String annotationType;
+
+        private final Object annotationValue;
+
+        private FieldDefinition(final Class<?> type, final String name, final String label, final String annotationType,
+                final Object annotationValue)
+        {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+            this.annotationType = annotationType;
+            this.annotationValue = annotationValue;
+        }
+    }
+
+    private final Object factory;
+
+    private final Method newEvent;
+
+    private final Method isEnabled;
+
+    private final Method begin;
+
+    private final Method end;
+
+    private final Method set;
+
+    private final Method commit;
+
+    private InstallEvents(final String name, final String label, final String description, final FieldDefinition... fields)
+    {
+        Object factory = null;
+        Method newEvent = null;
+        Method isEnabled = null;
+        Method begin = null;
+        Method end = null;
+        Method set = null;
+        Method commit = null;
+        try
+        {
+            final Class<?> annotationElementClass = loadClass("jdk.jfr.AnnotationElement");
+            final Class<?> valueDescriptorClass = loadClass("jdk.jfr.ValueDescriptor");
+            final Class<?> eventFactoryClass = loadClass("jdk.jfr.EventFactory");
+            final Class<?> eventClass = loadClass("jdk.jfr.Event");
+
+            final Constructor<?> annotationElementCtor = annotationElementClass.getConstructor(Class.class, Object.class);
+            final Constructor<?> valueDescriptorCtor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+
+            final List<Object> eventAnnotations = Arrays.asList(
+                    annotationElementCtor.newInstance(loadClass("jdk.jfr.Name"), EVENT_NAME_PREFIX + name),
+                    annotationElementCtor.newInstance(loadClass("jdk.jfr.Label"), label),
+                    annotationElementCtor.newInstance(loadClass("jdk.jfr.Description"), description),
+                    annotationElementCtor.newInstance(loadClass("jdk.jfr.Category"), CATEGORY));
+
+            final List<Object> fieldDescriptors = new ArrayList<>(fields.length);
+            for (final FieldDefinition field : fields)
+            {
+                final List<Object> fieldAnnotations = new ArrayList<>(2);
+                fieldAnnotations.add(annotationElementCtor.newInstance(loadClass("jdk.jfr.Label"), field.label));
+                if (field.annotationType != null)
+                {
+                    fieldAnnotations.add(annotationElementCtor.newInstance(loadClass(field.annotationType), field.annotationValue));
+                }
+                fieldDescriptors.add(valueDescriptorCtor.newInstance(field.type, field.name, fieldAnnotations));
+            }
+
+            factory = eventFactoryClass.getMethod("create", List.class, List.class).invoke(null, eventAnnotations, fieldDescriptors);
+            newEvent = eventFactoryClass.getMethod("newEvent");
+            isEnabled = eventClass.getMethod("isEnabled");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+        }
+        catch (final ReflectiveOperationException | LinkageError | RuntimeException e)
+        {
+            LOGGER.debug("Flight recorder events for AMP installs are not supported by the current runtime", e);
+            factory = null;
+        }
+
+        this.factory = factory;
+        this.newEvent = newEvent;
+        this.isEnabled = isEnabled;
+        this.begin = begin;
+        this.end = end;
+        this.set = set;
+        this.commit = commit;
+    }
+
+    /**
+     * Begins a new event if the event type is enabled in any active recording.
+     *
+     * @return the handle of the begun event, or {@code null} if the event type is not enabled or not supported
+     */
+    Object begin()
+    {
+        Object event = null;
+        if (this.factory != null)
+        {
+            try
+            {
+                event = this.newEvent.invoke(this.factory);
+                if (Boolean.TRUE.equals(this.isEnabled.invoke(event)))
+                {
+                    this.begin.invoke(event);
+                }
+                else
+                {
+                    event = null;
+                }
+            }
+            catch (final ReflectiveOperationException | RuntimeException e)
+            {
+                LOGGER.debug("Failed to begin flight recorder event", e);
+                event = null;
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Ends and commits an event previously begun.
+     *
+     * @param event
+     *            the handle of the event as returned by {@link #begin()} - may be {@code null}
+     * @param values
+     *            the values of all fields of the event in order of their definition
+     */
+    void commit(final Object event, final Object... values)
+    {
+        if (event != null)
+        {
+            try
+            {
+                this.end.invoke(event);
+                for (int idx = 0; idx < values.length; idx++)
+                {
+                    this.set.invoke(event, idx, values[idx]);
+                }
+                this.commit.invoke(event);
+            }
+            catch (final ReflectiveOperationException | RuntimeException e)
+            {
+                LOGGER.debug("Failed to commit flight recorder event", e);
+            }
+        }
+    }
+
+    private static FieldDefinition field(final Class<?> type, final String name, final String label, final String annotationType,
+            final Object annotationValue)
+    {
+        return new FieldDefinition(type, name, label, annotationType, annotationValue);
+    }
+
+    private static Class<?> loadClass(final String className) throws ClassNotFoundException
+    {
+        // JFR API is provided by the JDK, so must not rely on plugin class realm to delegate to it
+        return Class.forName(className, false, ClassLoader.getSystemClassLoader());
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Instances of this class represent the manifest of all files written by the installation of a single module into an exploded web
+ * application. The manifest is stored alongside the module.properties of the installed module and records the CRC32 checksum and size of
+ * each file as contained in the AMP, as well as the last modification time of the file after it has been written, so that later installs
+ * can determine whether a file still matches the state it was installed in without having to read it. Any file which existed before the
+ * installation and has been replaced by it is recorded as either backed up, so that the module can be uninstalled by restoring its backup,
+ * or as replaced without a backup, so that uninstalling the module does not remove a file which the web application requires.
+ *
+ * @author Axel Faust
+ */
+public class InstallManifest
+{
+
+    public static final String INSTALL_MANIFEST = "install-manifest.properties";
+
+    // same location as used by the Alfresco MMT
+    public static final String BACKUP_DIRECTORY = AmpUnArchiver.MODULE_DIRECTORY + "backup/";
+
+    private static final String BACKED_UP_FLAG = "backup";
+
+    private static final String REPLACED_FLAG = "replaced";
+
+    private static final int CRC_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The state of a path in the web application before a module has been installed.
+     *
+     * @author Axel Faust
+     */
+    public enum Origin
+    {
+        /** No file existed before the installation */
+        ADDED,
+        /** An existing file has been backed up before being replaced */
+        BACKED_UP,
+        /** An existing file has been replaced without a backup */
+        REPLACED;
+    }
+
+    /**
+     * A record of a single file written by the installation of a module.
+     *
+     * @author Axel Faust
+     */
+    public static final class Record
+    {
+
+        private final long crc;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final Origin origin;
+
+        public Record(final long crc, final long size, final long lastModified)
+        {
+            this(crc, size, lastModified, Origin.ADDED);
+        }
+
+        public Record(final long crc, final long size, final long lastModified, final Origin origin)
+        {
+            this.crc = crc;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.origin = origin;
+        }
+
+        /**
+         * @return the crc
+         */
+        public long getCrc()
+        {
+            return this.crc;
+        }
+
+        /**
+         * @return the size
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        /**
+         * @return the lastModified
+         */
+        public long getLastModified()
+        {
+            return this.lastModified;
+        }
+
+        /**
+         * @return the origin
+         */
+        public Origin getOrigin()
+        {
+            return this.origin;
+        }
+
+        /**
+         * @return {@code true} if the file replaced by the installation has been backed up, {@code false} if the file did not exist
+         *         before the installation or has been replaced without a backup
+         */
+        public boolean isBackedUp()
+        {
+            return this.origin == Origin.BACKED_UP;
+        }
+
+        /**
+         * @return {@code true} if the installation replaced an existing file without backing it up, so that the file cannot be restored
+         */
+        public boolean isReplacedWithoutBackup()
+        {
+            return this.origin == Origin.REPLACED;
+        }
+
+        /**
+         * Checks whether a file on disk still matches the state recorded after it had been written.
+         *
+         * @param file
+         *            the file to check
+         * @return {@code true} if the file has neither been modified nor changed in size since this record was created
+         */
+        public boolean matchesFile(final File file)
+        {
+            return file.isFile() && file.length() == this.size && file.lastModified() == this.lastModified;
+        }
+
+        /**
+         * Checks whether a file on disk still matches the state recorded after it had been written, confirming its content via its
+         * checksum. Other modules may have replaced the file with one of the same size and last modification time, as extracted files
+         * retain the time of their entry in the AMP, so this check is required before the file is removed or replaced on behalf of this
+         * record.
+         *
+         * @param file
+         *            the file to check
+         * @return {@code true} if the file has neither been modified nor changed in size or content since this record was created
+         */
+        public boolean matchesContent(final File file) throws IOException
+        {
+            boolean matches = this.matchesFile(file);
+            if (matches)
+            {
+                final CRC32 fileCrc = new CRC32();
+                final byte[] buffer = new byte[CRC_BUFFER_SIZE];
+                try (InputStream is = new FileInputStream(file))
+                {
+                    int read;
+                    while ((read = is.read(buffer)) != -1)
+                    {
+                        fileCrc.update(buffer, 0, read);
+                    }
+                }
+                matches = fileCrc.getValue() == this.crc;
+            }
+            return matches;
+        }
+
+        private static Record fromString(final String value)
+        {
+            final String[] fragments = value.split(",");
+            if (fragments.length < 3)
+            {
+                return null;
+            }
+
+            Origin origin = Origin.ADDED;
+            if (fragments.length > 3)
+            {
+                if (BACKED_UP_FLAG.equals(fragments[3]))
+                {
+                    origin = Origin.BACKED_UP;
+                }
+                else if (REPLACED_FLAG.equals(fragments[3]))
+                {
+                    origin = Origin.REPLACED;
+                }
+            }
+
+            try
+            {
+                return new Record(Long.parseLong(fragments[0], 16), Long.parseLong(fragments[1]), Long.parseLong(fragments[2]), origin);
+            }
+            catch (final NumberFormatException nfe)
+            {
+                return null;
+            }
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            final StringBuilder sb = new StringBuilder(48);
+            sb.append(Long.toHexString(this.crc)).append(',').append(this.size).append(',').append(this.lastModified);
+            switch (this.origin)
+            {
+                case BACKED_UP:
+                    sb.append(',').append(BACKED_UP_FLAG);
+                    break;
+                case REPLACED:
+                    sb.append(',').append(REPLACED_FLAG);
+                    break;
+                default:
+                    // added files need no flag
+            }
+            return sb.toString();
+        }
+    }
+
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+
+    /**
+     * Determines the path of the install manifest of a specific module relative to the root of the web application.
+     *
+     * @param moduleId
+     *            the ID of the module
+     * @return the relative path to the install manifest
+     */
+    public static String getManifestPath(final String moduleId)
+    {
+        return AmpUnArchiver.MODULE_DIRECTORY + moduleId + "/" + INSTALL_MANIFEST;
+    }
+
+    /**
+     * Determines the path of the backup of a file replaced by the installation of a specific module relative to the root of the web
+     * application.
+     *
+     * @param moduleId
+     *            the ID of the module
+     * @param path
+     *            the path of the replaced file relative to the root of the web application
+     * @return the relative path to the backup
+     */
+    public static String getBackupPath(final String moduleId, final String path)
+    {
+        return BACKUP_DIRECTORY + moduleId + "/" + path;
+    }
+
+    /**
+     * Loads the install manifest of a specific module from an exploded web application.
+     *
+     * @param webappDirectory
+     *            the root directory of the web application
+     * @param moduleId
+     *            the ID of the module
+     * @return the install manifest - will be empty if the web application does not contain a manifest for the module
+     * @throws IOException
+     *             if an error occurs reading an existing manifest
+     */
+    public static InstallManifest load(final File webappDirectory, final String moduleId) throws IOException
+    {
+        final InstallManifest manifest;
+
+        final Path manifestPath = webappDirectory.toPath().resolve(getManifestPath(moduleId));
+        if (Files.isRegularFile(manifestPath))
+        {
+            try (InputStream is = Files.newInputStream(manifestPath))
+            {
+                manifest = readFrom(is);
+            }
+        }
+        else
+        {
+            manifest = new InstallManifest();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Reads an install manifest from a stream.
+     *
+     * @param is
+     *            the stream to read from
+     * @return the install manifest
+     * @throws IOException
+     *             if an error occurs reading the manifest
+     */
+    public static InstallManifest readFrom(final InputStream is) throws IOException
+    {
+        final InstallManifest manifest = new InstallManifest();
+
+        final Properties properties = new Properties();
+        properties.load(is);
+
+        for (final Entry<Object, Object> entry : properties.entrySet())
+        {
+            final Record record = Record.fromString(String.valueOf(entry.getValue()));
+            if (record != null)
+            {
+                manifest.records.put(String.valueOf(entry.getKey()), record);
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Stores this install manifest for a specific module in an exploded web application, replacing any existing manifest.
+     *
+     * @param webappDirectory
+     *            the root directory of the web application
+     * @param moduleId
+     *            the ID of the module
+     * @throws IOException
+     *             if an error occurs writing the manifest
+     */
+    public void store(final File webappDirectory, final String moduleId) throws IOException
+    {
+        final Path manifestPath = webappDirectory.toPath().resolve(getManifestPath(moduleId));
+        Files.createDirectories(manifestPath.getParent());
+
+        AtomicFiles.write(manifestPath, os -> this.writeTo(os, moduleId));
+    }
+
+    /**
+     * Writes this install manifest for a specific module to a stream.
+     *
+     * @param os
+     *            the stream to write to
+     * @param moduleId
+     *            the ID of the module
+     * @throws IOException
+     *             if an error occurs writing the manifest
+     */
+    public void writeTo(final OutputStream os, final String moduleId) throws IOException
+    {
+        final SortedMap<String, String> properties = new TreeMap<>();
+        for (final Entry<String, Record> entry : this.records.entrySet())
+        {
+            properties.put(entry.getKey(), entry.getValue().toString());
+        }
+        PropertiesWriter.write(os, "Files installed by module " + moduleId + " - path=crc32,size,lastModified[,backup|replaced]",
+                properties);
+    }
+
+    /**
+     * @param path
+     *            the path of the file relative to the root of the web application
+     * @return the record for the file or {@code null} if the manifest does not contain a record for it
+     */
+    public Record getRecord(final String path)
+    {
+        return this.records.get(path);
+    }
+
+    /**
+     * @param path
+     *            the path of the file relative to the root of the web application
+     * @param record
+     *            the record for the file
+     */
+    public void setRecord(final String path, final Record record)
+    {
+        this.records.put(path, record);
+    }
+
+    /**
+     * @param path
+     *            the path of the file relative to the root of the web application
+     * @return the removed record for the file or {@code null} if the manifest did not contain a record for it
+     */
+    public Record removeRecord(final String path)
+    {
+        return this.records.remove(path);
+    }
+
+    /**
+     * @return the paths of all files contained in this manifest in lexicographical order
+     */
+    public Set<String> getPaths()
+    {
+        return new TreeSet<>(this.records.keySet());
+    }
+
+    /**
+     * @return the number of records in this manifest
+     */
+    public int size()
+    {
+        return this.records.size();
+    }
+
+    /**
+     * @return {@code true} if this manifest does not contain any records
+     */
+    public boolean isEmpty()
+    {
+        return this.records.isEmpty();
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instances of this class record the timings of the individual phases and the entry / byte counters of the installation of a single AMP.
+ * Metrics are published as custom Java Flight Recorder events and may be written as a JSON summary, so that slow installs can be analysed
+ * after the fact. All recording methods are thread-safe to support parallel extraction.
+ *
+ * @author Axel Faust
+ */
+public class InstallMetrics
+{
+
+    /**
+     * The phases of an install. {@link #VALIDATION}, {@link #MAPPING}, {@link #EXTRACTION} and {@link #MANIFEST} are measured in wall
+     * clock time, while {@link #INFLATE} and {@link #WRITE} are the cumulative time of all extraction threads spent reading / inflating
+     * entry data and writing extracted files, respectively.
+     *
+     * @author Axel Faust
+     */
+    public enum Phase
+    {
+        /** Validation of module metadata and dependencies against the destination */
+        VALIDATION,
+        /** Selection of entries and mapping of their names to the destination */
+        MAPPING,
+        /** Extraction of all selected entries */
+        EXTRACTION,
+        /** Reading and inflating entry data */
+        INFLATE,
+        /** Writing extracted files */
+        WRITE,
+        /** Loading and storing the install manifest and registry of installed modules */
+        MANIFEST;
+
+        private final String key = this.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Instances of this class time a single execution of a phase and publish it as a flight recorder event when closed.
+     *
+     * @author Axel Faust
+     */
+    public final class PhaseTimer implements AutoCloseable
+    {
+
+        private final Phase phase;
+
+        private final long start = System.nanoTime();
+
+        private final Object event = InstallEvents.PHASE.begin();
+
+        private PhaseTimer(final Phase phase)
+        {
+            this.phase = phase;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void close()
+        {
+            InstallMetrics.this.addTime(this.phase, System.nanoTime() - this.start);
+            InstallEvents.PHASE.commit(this.event, InstallMetrics.this.getModuleId(), this.phase.key);
+        }
+    }
+
+    /**
+     * Instances of this class keep track of the time spent reading from a stream, i.e. reading and inflating the data of an entry.
+     *
+     * @author Axel Faust
+     */
+    public static class TimedInputStream extends FilterInputStream
+    {
+
+        private long readNanos;
+
+        public TimedInputStream(final InputStream in)
+        {
+            super(in);
+        }
+
+        /**
+         * @return the cumulative time spent reading from this stream in nanoseconds
+         */
+        public long getReadNanos()
+        {
+            return this.readNanos;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                return super.read();
+            }
+            finally
+            {
+                this.readNanos += System.nanoTime() - start;
+            }
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                return super.read(b, off, len);
+            }
+            finally
+            {
+                this.readNanos += System.nanoTime() - start;
+            }
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public long skip(final long n) throws IOException
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                return super.skip(n);
+            }
+            finally
+            {
+                this.readNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    private final File sourceFile;
+
+    private final Object summaryEvent;
+
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+
+    private final LongAdder entriesSeen = new LongAdder();
+
+    private final LongAdder entriesSelected = new LongAdder();
+
+    private final LongAdder entriesSkipped = new LongAdder();
+
+    private final LongAdder entriesWritten = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    private volatile String moduleId;
+
+    private volatile File destination;
+
+    private volatile boolean published;
+
+    public InstallMetrics(final File sourceFile)
+    {
+        this.sourceFile = sourceFile;
+        for (final Phase phase : Phase.values())
+        {
+            this.phaseNanos.put(phase, new LongAdder());
+        }
+        this.summaryEvent = InstallEvents.SUMMARY.begin();
+    }
+
+    /**
+     * Starts timing an execution of a phase.
+     *
+     * @param phase
+     *            the phase to time
+     * @return the timer to close when the phase has completed
+     */
+    public PhaseTimer time(final Phase phase)
+    {
+        return new PhaseTimer(phase);
+    }
+
+    /**
+     * Adds to the time spent in a phase.
+     *
+     * @param phase
+     *            the phase
+     * @param nanos
+     *            the time spent in nanoseconds
+     */
+    public void addTime(final Phase phase, final long nanos)
+    {
+        this.phaseNanos.get(phase).add(nanos);
+    }
+
+    /**
+     * @param phase
+     *            the phase
+     * @return the total time spent in the phase in nanoseconds
+     */
+    public long getTime(final Phase phase)
+    {
+        return this.phaseNanos.get(phase).sum();
+    }
+
+    /**
+     * Records the entries of the AMP considered for an install.
+     *
+     * @param seen
+     *            the number of entries in the AMP
+     * @param selected
+     *            the number of entries selected for installation
+     */
+    public void recordSelection(final int seen, final int selected)
+    {
+        this.entriesSeen.add(seen);
+        this.entriesSelected.add(selected);
+    }
+
+    /**
+     * Records a selected entry which has not been written, e.g. as it is unchanged or overridden by another module.
+     */
+    public void recordSkipped()
+    {
+        this.entriesSkipped.increment();
+    }
+
+    /**
+     * Records a written entry.
+     *
+     * @param compressedBytes
+     *            the number of bytes read from the AMP for the entry
+     * @param uncompressedBytes
+     *            the number of bytes written for the entry
+     */
+    public void recordWritten(final long compressedBytes, final long uncompressedBytes)
+    {
+        this.entriesWritten.increment();
+        this.bytesIn.add(Math.max(0, compressedBytes));
+        this.bytesOut.add(Math.max(0, uncompressedBytes));
+    }
+
+    /**
+     * @param moduleId
+     *            the moduleId to set
+     */
+    public void setModuleId(final String moduleId)
+    {
+        this.moduleId = moduleId;
+    }
+
+    /**
+     * @return the ID of the installed module, or the name of the AMP file if the module has not been identified yet
+     */
+    public String getModuleId()
+    {
+        return this.moduleId != null ? this.moduleId : (this.sourceFile != null ? this.sourceFile.getName() : null);
+    }
+
+    /**
+     * @param destination
+     *            the destination to set
+     */
+    public void setDestination(final File destination)
+    {
+        this.destination = destination;
+    }
+
+    /**
+     * @return the number of entries in the AMP
+     */
+    public long getEntriesSeen()
+    {
+        return this.entriesSeen.sum();
+    }
+
+    /**
+     * @return the number of entries selected for installation
+     */
+    public long getEntriesSelected()
+    {
+        return this.entriesSelected.sum();
+    }
+
+    /**
+     * @return the number of selected entries which have not been written
+     */
+    public long getEntriesSkipped()
+    {
+        return this.entriesSkipped.sum();
+    }
+
+    /**
+     * @return the number of written entries
+     */
+    public long getEntriesWritten()
+    {
+        return this.entriesWritten.sum();
+    }
+
+    /**
+     * @return the number of bytes read from the AMP for written entries
+     */
+    public long getBytesIn()
+    {
+        return this.bytesIn.sum();
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long getBytesOut()
+    {
+        return this.bytesOut.sum();
+    }
+
+    /**
+     * Publishes the summary of the install as a flight recorder event. The summary is only published once, any subsequent calls are
+     * ignored.
+     */
+    public void publish()
+    {
+        if (!this.published)
+        {
+            this.published = true;
+            InstallEvents.SUMMARY.commit(this.summaryEvent, this.getModuleId(),
+                    this.sourceFile != null ? this.sourceFile.getAbsolutePath() : null,
+                    this.destination != null ? this.destination.getAbsolutePath() : null, this.getEntriesSeen(), this.getEntriesSelected(),
+                    this.getEntriesSkipped(), this.getEntriesWritten(), this.getBytesIn(), this.getBytesOut(),
+                    this.getTime(Phase.VALIDATION), this.getTime(Phase.MAPPING), this.getTime(Phase.EXTRACTION),
+                    this.getTime(Phase.INFLATE), this.getTime(Phase.WRITE), this.getTime(Phase.MANIFEST));
+        }
+    }
+
+    /**
+     * Writes the metrics of one or more installs as a JSON summary.
+     *
+     * @param file
+     *            the file to write
+     * @param metrics
+     *            the metrics of the installs
+     */
+    public static void writeJson(final File file, final Collection<InstallMetrics> metrics) throws IOException
+    {
+        final StringBuilder json = new StringBuilder(512 * (metrics.size() + 1));
+        json.append("{\n  \"installs\": [");
+        boolean first = true;
+        for (final InstallMetrics installMetrics : metrics)
+        {
+            json.append(first ? "\n" : ",\n");
+            installMetrics.appendJson(json);
+            first = false;
+        }
+        json.append("\n  ]\n}\n");
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null)
+        {
+            Files.createDirectories(parent.toPath());
+        }
+        Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void appendJson(final StringBuilder json)
+    {
+        json.append("    {\n");
+        appendJsonProperty(json, "module", this.getModuleId()).append(",\n");
+        appendJsonProperty(json, "source", this.sourceFile != null ? this.sourceFile.getAbsolutePath() : null).append(",\n");
+        appendJsonProperty(json, "destination", this.destination != null ? this.destination.getAbsolutePath() : null).append(",\n");
+        json.append("      \"entries\": { \"seen\": ").append(this.getEntriesSeen());
+        json.append(", \"selected\": ").append(this.getEntriesSelected());
+        json.append(", \"skipped\": ").append(this.getEntriesSkipped());
+        json.append(", \"written\": ").append(this.getEntriesWritten()).append(" },\n");
+        json.append("      \"bytes\": { \"in\": ").append(this.getBytesIn());
+        json.append(", \"out\": ").append(this.getBytesOut()).append(" },\n");
+        json.append("      \"phaseNanos\": {");
+        for (final Phase phase : Phase.values())
+        {
+            json.append(phase.ordinal() == 0 ? " " : ", ").append('"').append(phase.key).append("\": ").append(this.getTime(phase));
+        }
+        json.append(" }\n    }");
+    }
+
+    private static StringBuilder appendJsonProperty(final StringBuilder json, final String name, final String value)
+    {
+        json.append("      \"").append(name).append("\": ");
+        if (value == null)
+        {
+            json.append("null");
+        }
+        else
+        {
+            json.append('"');
+            for (int idx = 0; idx < value.length(); idx++)
+            {
+                final char c = value.charAt(idx);
+                switch (c)
+                {
+                    case '"':
+                    case '\\':
+                        json.append('\\').append(c);
+                        break;
+                    case '\n':
+                        json.append("\\n");
+                        break;
+                    case '\r':
+                        json.append("\\r");
+                        break;
+                    case '\t':
+                        json.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20)
+                        {
+                            json.append(String.format(Locale.ENGLISH, "\\u%04x", (int) c));
+                        }
+                        else
+                        {
+                            json.append(c);
+                        }
+                }
+            }
+            json.append('"');
+        }
+        return json;
+    }
+}
@@ -0,0 +1,661 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class index the modules installed in a web application, keyed by both their IDs and aliases. The index is backed by a
+ * compact registry file in the module directory of the web application, which holds the ID, aliases, version, install state, install date,
+ * dependencies and number of installed files of each installed module and is updated atomically on each install performed via this plugin.
+ * Only if the registry is missing or stale, the module.properties of all installed modules are scanned instead. The registry is considered
+ * stale if the set of module directories or the size or modification time of any module.properties differs from the state recorded in
+ * it. The index is cached for as long as the web application has not been modified by anything but installs performed via this plugin.
+ *
+ * @author Axel Faust
+ */
+public class InstalledModuleIndex
+{
+
+    public static final String REGISTRY_FILE = "installed-modules.properties";
+
+    public static final String REGISTRY_PATH = AmpUnArchiver.MODULE_DIRECTORY + REGISTRY_FILE;
+
+    private static final String REGISTRY_DIRECTORIES = "directories";
+
+    private static final String REGISTRY_MODULES = "modules";
+
+    private static final String REGISTRY_FILE_COUNT = "fileCount";
+
+    private static final String REGISTRY_STAMP_PREFIX = "stamp.";
+
+    // only the properties relevant for dependency checks and reporting are kept in the registry
+    private static final Set<String> REGISTRY_MODULE_PROPERTIES = new LinkedHashSet<>(Arrays.asList(ModuleDetails.PROP_ID,
+            ModuleDetails.PROP_ALIASES, ModuleDetails.PROP_VERSION, ModuleDetails.PROP_TITLE, ModuleDetails.PROP_DESCRIPTION,
+            ModuleDetails.PROP_INSTALL_STATE, ModuleDetails.PROP_INSTALL_DATE));
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstalledModuleIndex.class);
+
+    private static final ConcurrentMap<File, InstalledModuleIndex> INDEX_BY_DESTINATION = new ConcurrentHashMap<>();
+
+    /**
+     * A registration of a single module in the index.
+     *
+     * @author Axel Faust
+     */
+    private static final class Registration
+    {
+
+        private final Properties properties;
+
+        private final ModuleDetails details;
+
+        private final int fileCount;
+
+        private Registration(final Properties properties, final int fileCount)
+        {
+            this.properties = properties;
+            this.details = new ModuleDetailsImpl(properties);
+            this.fileCount = fileCount;
+        }
+    }
+
+    private final long stamp;
+
+    private final Set<String> moduleDirectories;
+
+    private final Map<String, Registration> registrationsById;
+
+    private final Map<String, ModuleDetails> modulesByIdOrAlias;
+
+    private InstalledModuleIndex(final long stamp, final Set<String> moduleDirectories, final Map<String, Registration> registrationsById)
+    {
+        this.stamp = stamp;
+        this.moduleDirectories = moduleDirectories;
+        this.registrationsById = registrationsById;
+        this.modulesByIdOrAlias = new HashMap<>();
+
+        for (final Registration registration : registrationsById.values())
+        {
+            if (registration.details.getInstallState() != ModuleInstallState.UNINSTALLED)
+            {
+                index(this.modulesByIdOrAlias, registration.details);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the index of modules installed in a web application, loading the registry of installed modules or scanning the web
+     * application only if no index has been cached or the web application has been modified since the cached index was created.
+     *
+     * @param destination
+     *            the web application - either a web application archive or the root directory of an exploded web application
+     * @return the index of installed modules
+     */
+    public static InstalledModuleIndex forDestination(final File destination) throws ArchiverException
+    {
+        final File key = destination.getAbsoluteFile();
+        final long stamp = determineStamp(key);
+        return INDEX_BY_DESTINATION.compute(key, (k, index) -> {
+            if (index != null && index.stamp == stamp)
+            {
+                return index;
+            }
+            return load(k, stamp, null);
+        });
+    }
+
+    /**
+     * Registers a module which has just been installed into an exploded web application, atomically updating the registry of installed
+     * modules in the web application as well as the cached index for that web application.
+     *
+     * @param destination
+     *            the root directory of the exploded web application
+     * @param md
+     *            the details of the installed module
+     * @param installDate
+     *            the install date of the module as recorded in its module.properties
+     * @param fileCount
+     *            the number of files installed by the module
+     */
+    public static void registerInstalled(final File destination, final ModuleDetails md, final String installDate, final int fileCount)
+            throws ArchiverException
+    {
+        register(destination, md, ModuleInstallState.INSTALLED, installDate, fileCount);
+    }
+
+    /**
+     * Registers a module which has just been uninstalled from an exploded web application, atomically updating the registry of installed
+     * modules in the web application as well as the cached index for that web application.
+     *
+     * @param destination
+     *            the root directory of the exploded web application
+     * @param md
+     *            the details of the uninstalled module
+     */
+    public static void registerUninstalled(final File destination, final ModuleDetails md) throws ArchiverException
+    {
+        register(destination, md, ModuleInstallState.UNINSTALLED, null, 0);
+    }
+
+    private static void register(final File destination, final ModuleDetails md, final ModuleInstallState installState,
+            final String installDate, final int fileCount) throws ArchiverException
+    {
+        final File key = destination.getAbsoluteFile();
+        INDEX_BY_DESTINATION.compute(key, (k, index) -> {
+            // cached index is still valid, only stale due to the (un)install itself
+            final InstalledModuleIndex baseIndex = index != null ? index : load(k, determineStamp(k), md.getId());
+            final InstalledModuleIndex updatedIndex = baseIndex.withRegistration(md, installState, installDate, fileCount,
+                    listModuleDirectories(k), baseIndex.stamp);
+
+            try
+            {
+                updatedIndex.storeRegistry(k);
+            }
+            catch (final IOException ioex)
+            {
+                throw new ArchiverException("Error storing registry of installed modules in " + k, ioex);
+            }
+
+            return new InstalledModuleIndex(determineStamp(k), updatedIndex.moduleDirectories, updatedIndex.registrationsById);
+        });
+    }
+
+    /**
+     * Registers a module which is being installed into a web application archive, adding the updated registry of installed modules as a
+     * contribution to the rewrite of the archive. If multiple modules are installed into the same archive, the registry contributed by
+     * the previous module is used as the base.
+     *
+     * @param warFile
+     *            the web application archive
+     * @param rewriter
+     *            the rewriter of the web application archive
+     * @param md
+     *            the details of the installed module
+     * @param installDate
+     *            the install date of the module as recorded in its module.properties
+     * @param fileCount
+     *            the number of files installed by the module
+     * @param time
+     *            the modification time for the registry entry
+     */
+    public static void registerInstalled(final File warFile, final WarArchiveRewriter rewriter, final ModuleDetails md,
+            final String installDate, final int fileCount, final long time) throws IOException
+    {
+        final byte[] contributedRegistry = rewriter.getContent(REGISTRY_PATH);
+        final InstalledModuleIndex baseIndex = contributedRegistry != null
+                ? fromRegistry(loadRegistry(new ByteArrayInputStream(contributedRegistry)), 0)
+                : forDestination(warFile);
+
+        final Set<String> moduleDirectories = new TreeSet<>(baseIndex.moduleDirectories);
+        moduleDirectories.add(md.getId());
+        final InstalledModuleIndex updatedIndex = baseIndex.withRegistration(md, ModuleInstallState.INSTALLED, installDate, fileCount,
+                moduleDirectories, 0);
+
+        final ByteArrayOutputStream registryContent = new ByteArrayOutputStream();
+        // contents of an archive cannot be modified in place by other tools without changing the archive
+        updatedIndex.writeRegistry(registryContent, Collections.emptyMap());
+        rewriter.addContent(REGISTRY_PATH, registryContent.toByteArray(), time);
+    }
+
+    /**
+     * Creates a derived index including additional modules, e.g. modules which are about to be installed together with another module.
+     *
+     * @param modules
+     *            the modules to include
+     * @return the derived index
+     */
+    public InstalledModuleIndex withModules(final Collection<ModuleDetails> modules)
+    {
+        final Map<String, Registration> registrationsById = new TreeMap<>(this.registrationsById);
+        for (final ModuleDetails md : modules)
+        {
+            putRegistration(registrationsById, md, new Registration(md.getProperties(), -1));
+        }
+        return new InstalledModuleIndex(this.stamp, this.moduleDirectories, registrationsById);
+    }
+
+    /**
+     * Retrieves the details of an installed module.
+     *
+     * @param idOrAlias
+     *            the ID or an alias of the module
+     * @return the details of the module or {@code null} if no such module is installed
+     */
+    public ModuleDetails getModule(final String idOrAlias)
+    {
+        return this.modulesByIdOrAlias.get(idOrAlias);
+    }
+
+    /**
+     * @return the details of all installed modules, ordered by their ID
+     */
+    public List<ModuleDetails> getModules()
+    {
+        return this.registrationsById.values().stream().map(r -> r.details)
+                .filter(md -> md.getInstallState() != ModuleInstallState.UNINSTALLED).collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves the number of files installed by a module.
+     *
+     * @param idOrAlias
+     *            the ID or an alias of the module
+     * @return the number of files or {@code -1} if the number is not known, e.g. because the module has not been installed via this
+     *         plugin
+     */
+    public int getFileCount(final String idOrAlias)
+    {
+        final ModuleDetails md = this.modulesByIdOrAlias.get(idOrAlias);
+        final Registration registration = md != null ? this.registrationsById.get(md.getId()) : null;
+        return registration != null ? registration.fileCount : -1;
+    }
+
+    private InstalledModuleIndex withRegistration(final ModuleDetails md, final ModuleInstallState installState, final String installDate,
+            final int fileCount, final Set<String> moduleDirectories, final long stamp)
+    {
+        final Properties properties = md.getProperties();
+        properties.setProperty(ModuleDetails.PROP_INSTALL_STATE, installState.name());
+        if (installDate != null)
+        {
+            properties.setProperty(ModuleDetails.PROP_INSTALL_DATE, installDate);
+        }
+
+        final Map<String, Registration> registrationsById = new TreeMap<>(this.registrationsById);
+        putRegistration(registrationsById, md, new Registration(properties, fileCount));
+        return new InstalledModuleIndex(stamp, moduleDirectories, registrationsById);
+    }
+
+    private static void putRegistration(final Map<String, Registration> registrationsById, final ModuleDetails md,
+            final Registration registration)
+    {
+        // a module may have been installed in a previous version under one of its aliases
+        md.getAliases().forEach(registrationsById::remove);
+        registrationsById.put(md.getId(), registration);
+    }
+
+    private static long determineStamp(final File destination)
+    {
+        final long stamp;
+        if (destination.isFile())
+        {
+            stamp = destination.lastModified() ^ (destination.length() << 32);
+        }
+        else
+        {
+            // (un)installing a module adds / removes its directory, while other tools may also update a module in place
+            final Map<String, String> modulePropertiesStamps = listModulePropertiesStamps(destination, listModuleDirectories(destination));
+            stamp = 31 * new File(destination, AmpUnArchiver.MODULE_DIRECTORY).lastModified() + modulePropertiesStamps.hashCode();
+        }
+        return stamp;
+    }
+
+    private static InstalledModuleIndex load(final File destination, final long stamp, final String installedModuleId)
+    {
+        try
+        {
+            final Properties registry = destination.isFile() ? loadRegistry(destination)
+                    : loadRegistry(destination, installedModuleId);
+            if (registry != null)
+            {
+                LOGGER.debug("Loaded registry of installed modules in {}", destination);
+                return fromRegistry(registry, stamp);
+            }
+        }
+        catch (final IOException | ArchiverException ex)
+        {
+            LOGGER.warn("Ignoring invalid registry of installed modules in {}", destination, ex);
+        }
+        return scan(destination, stamp);
+    }
+
+    private static Properties loadRegistry(final File warFile) throws IOException
+    {
+        try (CentralDirectoryReader reader = new CentralDirectoryReader(warFile, StandardCharsets.UTF_8.name()))
+        {
+            final InputStream is = reader.getInputStream(REGISTRY_PATH);
+            return is != null ? loadRegistry(is) : null;
+        }
+    }
+
+    private static Properties loadRegistry(final File webappDirectory, final String installedModuleId) throws IOException
+    {
+        final File registryFile = new File(webappDirectory, REGISTRY_PATH);
+        Properties registry = null;
+        if (registryFile.isFile())
+        {
+            registry = loadRegistry(Files.newInputStream(registryFile.toPath()));
+
+            // registry is stale if any module has been (un)installed by other means, e.g. the Alfresco MMT
+            final Set<String> registeredDirectories = splitDirectories(registry.getProperty(REGISTRY_DIRECTORIES));
+            final Set<String> moduleDirectories = listModuleDirectories(webappDirectory);
+            if (installedModuleId != null)
+            {
+                // directory of a module which has just been installed is expected to be missing from registry
+                registeredDirectories.add(installedModuleId);
+            }
+            if (!registeredDirectories.equals(moduleDirectories))
+            {
+                LOGGER.debug("Registry of installed modules in {} is stale - registered {} but found {}", webappDirectory,
+                        registeredDirectories, moduleDirectories);
+                registry = null;
+            }
+            else
+            {
+                // registry is also stale if any module has been updated in place by other means
+                final Map<String, String> registeredStamps = new TreeMap<>();
+                for (final String name : registry.stringPropertyNames())
+                {
+                    if (name.startsWith(REGISTRY_STAMP_PREFIX))
+                    {
+                        registeredStamps.put(name.substring(REGISTRY_STAMP_PREFIX.length()), registry.getProperty(name));
+                    }
+                }
+                final Map<String, String> modulePropertiesStamps = listModulePropertiesStamps(webappDirectory, moduleDirectories);
+                if (installedModuleId != null)
+                {
+                    // module.properties of a module which has just been installed is expected to differ from registry
+                    registeredStamps.remove(installedModuleId);
+                    modulePropertiesStamps.remove(installedModuleId);
+                }
+                if (!registeredStamps.equals(modulePropertiesStamps))
+                {
+                    LOGGER.debug("Registry of installed modules in {} is stale - module.properties have been modified", webappDirectory);
+                    registry = null;
+                }
+            }
+        }
+        return registry;
+    }
+
+    private static Properties loadRegistry(final InputStream is) throws IOException
+    {
+        try (InputStream effectiveIs = is)
+        {
+            return AmpUnArchiver.PROPERTIES_READER.readFile(effectiveIs);
+        }
+    }
+
+    private static InstalledModuleIndex fromRegistry(final Properties registry, final long stamp) throws ArchiverException
+    {
+        final int moduleCount = parseCount(registry.getProperty(REGISTRY_MODULES, "0"), REGISTRY_MODULES);
+        final List<Properties> moduleProperties = new ArrayList<>(moduleCount);
+        for (int idx = 0; idx < moduleCount; idx++)
+        {
+            moduleProperties.add(new Properties());
+        }
+
+        for (final Entry<Object, Object> entry : registry.entrySet())
+        {
+            final String key = String.valueOf(entry.getKey());
+            final int separator = key.indexOf('.');
+            if (separator > 0 && Character.isDigit(key.charAt(0)))
+            {
+                final int idx = parseCount(key.substring(0, separator), key);
+                if (idx < moduleCount)
+                {
+                    moduleProperties.get(idx).setProperty(key.substring(separator + 1), String.valueOf(entry.getValue()));
+                }
+            }
+        }
+
+        final Map<String, Registration> registrationsById = new TreeMap<>();
+        for (final Properties properties : moduleProperties)
+        {
+            final int fileCount = parseCount((String) properties.remove(REGISTRY_FILE_COUNT), REGISTRY_FILE_COUNT);
+            final Registration registration = new Registration(properties, fileCount);
+            registrationsById.put(registration.details.getId(), registration);
+        }
+
+        return new InstalledModuleIndex(stamp, splitDirectories(registry.getProperty(REGISTRY_DIRECTORIES)), registrationsById);
+    }
+
+    private static int parseCount(final String value, final String key) throws ArchiverException
+    {
+        if (value == null)
+        {
+            throw new ArchiverException("Missing value of " + key + " in registry of installed modules");
+        }
+
+        final int count;
+        try
+        {
+            count = Integer.parseInt(value);
+        }
+        catch (final NumberFormatException nfe)
+        {
+            throw new ArchiverException("Invalid value of " + key + " in registry of installed modules: " + value, nfe);
+        }
+        if (count < 0)
+        {
+            throw new ArchiverException("Negative value of " + key + " in registry of installed modules: " + value);
+        }
+        return count;
+    }
+
+    private void storeRegistry(final File webappDirectory) throws IOException
+    {
+        final Path registryPath = webappDirectory.toPath().resolve(REGISTRY_PATH);
+        Files.createDirectories(registryPath.getParent());
+
+        final Map<String, String> modulePropertiesStamps = listModulePropertiesStamps(webappDirectory, this.moduleDirectories);
+        AtomicFiles.write(registryPath, os -> this.writeRegistry(os, modulePropertiesStamps));
+    }
+
+    private void writeRegistry(final OutputStream os, final Map<String, String> modulePropertiesStamps) throws IOException
+    {
+        final SortedMap<String, String> registry = new TreeMap<>();
+        registry.put(REGISTRY_DIRECTORIES, String.join(",", this.moduleDirectories));
+        modulePropertiesStamps.forEach((directory, stamp) -> registry.put(REGISTRY_STAMP_PREFIX + directory, stamp));
+        registry.put(REGISTRY_MODULES, String.valueOf(this.registrationsById.size()));
+
+        int idx = 0;
+        for (final Registration registration : this.registrationsById.values())
+        {
+            final String prefix = idx + ".";
+            for (final String name : registration.properties.stringPropertyNames())
+            {
+                if (REGISTRY_MODULE_PROPERTIES.contains(name) || name.startsWith(ModuleDetails.PROP_DEPENDS_PREFIX))
+                {
+                    registry.put(prefix + name, registration.properties.getProperty(name));
+                }
+            }
+            registry.put(prefix + REGISTRY_FILE_COUNT, String.valueOf(registration.fileCount));
+            idx++;
+        }
+
+        PropertiesWriter.write(os, "Modules installed in this web application - n.property=value per module", registry);
+    }
+
+    private static Set<String> splitDirectories(final String directories)
+    {
+        final Set<String> directoryNames = new TreeSet<>();
+        if (directories != null)
+        {
+            for (final String directory : directories.split(","))
+            {
+                if (!directory.trim().isEmpty())
+                {
+                    directoryNames.add(directory.trim());
+                }
+            }
+        }
+        return directoryNames;
+    }
+
+    private static Set<String> listModuleDirectories(final File webappDirectory)
+    {
+        final Set<String> directoryNames = new TreeSet<>();
+        final File[] moduleDirectories = new File(webappDirectory, AmpUnArchiver.MODULE_DIRECTORY)
+                .listFiles(InstalledModuleIndex::isModuleDirectory);
+        if (moduleDirectories != null)
+        {
+            for (final File moduleDirectory : moduleDirectories)
+            {
+                directoryNames.add(moduleDirectory.getName());
+            }
+        }
+        return directoryNames;
+    }
+
+    private static Map<String, String> listModulePropertiesStamps(final File webappDirectory, final Set<String> moduleDirectories)
+    {
+        final Map<String, String> stamps = new TreeMap<>();
+        for (final String moduleDirectory : moduleDirectories)
+        {
+            final File modulePropertiesFile = new File(webappDirectory,
+                    AmpUnArchiver.MODULE_DIRECTORY + moduleDirectory + "/" + AmpUnArchiver.MODULE_PROPERTIES);
+            stamps.put(moduleDirectory, modulePropertiesFile.length() + "," + modulePropertiesFile.lastModified());
+        }
+        return stamps;
+    }
+
+    private static boolean isModuleDirectory(final File directory)
+    {
+        // backups of files replaced by installs are kept alongside the module directories
+        return directory.isDirectory()
+                && !InstallManifest.BACKUP_DIRECTORY.equals(AmpUnArchiver.MODULE_DIRECTORY + directory.getName() + "/");
+    }
+
+    private static InstalledModuleIndex scan(final File destination, final long stamp)
+    {
+        LOGGER.debug("Scanning installed modules in {}", destination);
+
+        final Set<String> moduleDirectories = new TreeSet<>();
+        final List<Properties> moduleProperties = new ArrayList<>();
+        try
+        {
+            if (destination.isFile())
+            {
+                scanArchive(destination, moduleDirectories, moduleProperties);
+            }
+            else
+            {
+                scanDirectory(destination, moduleDirectories, moduleProperties);
+            }
+        }
+        catch (final IOException ioex)
+        {
+            throw new ArchiverException("Error scanning installed modules in " + destination, ioex);
+        }
+
+        final Map<String, Registration> registrationsById = new TreeMap<>();
+        for (final Properties properties : moduleProperties)
+        {
+            try
+            {
+                final Registration registration = new Registration(properties, -1);
+                registrationsById.put(registration.details.getId(), registration);
+            }
+            catch (final ArchiverException aex)
+            {
+                LOGGER.warn("Ignoring invalid module.properties of installed module {} in {}", properties.getProperty(ModuleDetails.PROP_ID),
+                        destination, aex);
+            }
+        }
+
+        LOGGER.debug("Found modules {} in {}", registrationsById.keySet(), destination);
+        return new InstalledModuleIndex(stamp, moduleDirectories, registrationsById);
+    }
+
+    private static void index(final Map<String, ModuleDetails> modulesByIdOrAlias, final ModuleDetails md)
+    {
+        modulesByIdOrAlias.put(md.getId(), md);
+        for (final String alias : md.getAliases())
+        {
+            modulesByIdOrAlias.putIfAbsent(alias, md);
+        }
+    }
+
+    private static void scanDirectory(final File destination, final Set<String> moduleDirectoryNames, final List<Properties> moduleProperties)
+            throws IOException
+    {
+        final File[] moduleDirectories = new File(destination, AmpUnArchiver.MODULE_DIRECTORY)
+                .listFiles(InstalledModuleIndex::isModuleDirectory);
+        if (moduleDirectories != null)
+        {
+            for (final File moduleDirectory : moduleDirectories)
+            {
+                moduleDirectoryNames.add(moduleDirectory.getName());
+                final File modulePropertiesFile = new File(moduleDirectory, AmpUnArchiver.MODULE_PROPERTIES);
+                if (modulePropertiesFile.isFile())
+                {
+                    try (InputStream is = Files.newInputStream(modulePropertiesFile.toPath()))
+                    {
+                        moduleProperties.add(AmpUnArchiver.PROPERTIES_READER.readFile(is));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void scanArchive(final File destination, final Set<String> moduleDirectoryNames, final List<Properties> moduleProperties)
+            throws IOException
+    {
+        try (ZipFile zipFile = new ZipFile(destination, StandardCharsets.UTF_8.name(), true))
+        {
+            final Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+            while (entries.hasMoreElements())
+            {
+                final ZipArchiveEntry entry = entries.nextElement();
+                final String name = entry.getName();
+                if (name.startsWith(AmpUnArchiver.MODULE_DIRECTORY) && name.endsWith("/" + AmpUnArchiver.MODULE_PROPERTIES)
+                        && name.indexOf('/', AmpUnArchiver.MODULE_DIRECTORY.length()) == name.length()
+                                - AmpUnArchiver.MODULE_PROPERTIES.length() - 1)
+                {
+                    moduleDirectoryNames.add(name.substring(AmpUnArchiver.MODULE_DIRECTORY.length(),
+                            name.length() - AmpUnArchiver.MODULE_PROPERTIES.length() - 1));
+                    try (InputStream is = zipFile.getInputStream(entry))
+                    {
+                        moduleProperties.add(AmpUnArchiver.PROPERTIES_READER.readFile(is));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -36,7 +36,7 @@ public interface ModuleDependency
      * @param moduleDetails
      *            the module details of the dependency. This must be
      *            the details of the module with the correct
-     *            {@link #getDependencyId() ID}. This may be <tt>null</tt>
+     *            {@link #getDependencyId() ID} or alias. This may be <tt>null</tt>
      *            in which case <tt>false</tt> will always be returned.
      * @return Returns true if the module satisfies the dependency
      *         requirements.
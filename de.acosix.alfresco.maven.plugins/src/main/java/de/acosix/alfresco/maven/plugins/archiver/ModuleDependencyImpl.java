@@ -1,10 +1,5 @@
 package de.acosix.alfresco.maven.plugins.archiver;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.StringTokenizer;
-
-import org.apache.maven.artifact.versioning.ComparableVersion;
 import org.codehaus.plexus.archiver.ArchiverException;
 
 /**
@@ -22,55 +17,11 @@ import org.codehaus.plexus.archiver.ArchiverException;
 public class ModuleDependencyImpl implements ModuleDependency
 {
 
-    /**
-     *
-     * @author Axel Faust
-     */
-    protected static class VersionRange
-    {
-
-        private final ComparableVersion lowerBound;
-
-        private final ComparableVersion upperBound;
-
-        protected VersionRange(final ComparableVersion lowerBound, final ComparableVersion upperBound)
-        {
-            this.lowerBound = lowerBound;
-            this.upperBound = upperBound;
-        }
-
-        /**
-         * @return the lowerBound
-         */
-        public ComparableVersion getLowerBound()
-        {
-            return this.lowerBound;
-        }
-
-        /**
-         * @return the upperBound
-         */
-        public ComparableVersion getUpperBound()
-        {
-            return this.upperBound;
-        }
-
-        public boolean matches(final ComparableVersion checkVersion)
-        {
-            boolean matches = true;
-
-            matches = matches && (this.lowerBound == null || this.lowerBound.compareTo(checkVersion) <= 0);
-            matches = matches && (this.upperBound == null || this.upperBound.compareTo(checkVersion) >= 0);
-
-            return matches;
-        }
-    }
-
     private final String dependencyId;
 
     private final String versionString;
 
-    private final List<VersionRange> versionRanges;
+    private final VersionRangeSet versionRangeSet;
 
     public ModuleDependencyImpl(final String dependencyId, final String versionString)
     {
@@ -79,7 +30,7 @@ public class ModuleDependencyImpl implements ModuleDependency
 
         try
         {
-            this.versionRanges = buildVersionRanges(versionString);
+            this.versionRangeSet = VersionRangeSet.forSpecification(versionString);
         }
         catch (final Throwable e)
         {
@@ -117,89 +68,21 @@ public class ModuleDependencyImpl implements ModuleDependency
         boolean isValid = true;
 
         isValid = isValid && moduleDetails != null;
-        isValid = isValid && moduleDetails.getId().equals(this.dependencyId);
+        // a dependency may refer to a renamed module by one of its aliases
+        isValid = isValid && (moduleDetails.getId().equals(this.dependencyId) || moduleDetails.getAliases().contains(this.dependencyId));
 
         if (isValid)
         {
-            final ComparableVersion checkVersion = moduleDetails.getVersion();
-
-            boolean versionMatches = false;
-            for (final VersionRange versionRange : this.versionRanges)
-            {
-                versionMatches = versionMatches || versionRange.matches(checkVersion);
-            }
-            isValid = isValid && versionMatches;
+            isValid = this.versionRangeSet.matches(moduleDetails.getVersion());
         }
         return isValid;
     }
 
-    private static List<VersionRange> buildVersionRanges(final String versionStr)
+    /**
+     * @return the compiled version ranges of this dependency
+     */
+    public VersionRangeSet getVersionRangeSet()
     {
-        final List<VersionRange> versionRanges = new ArrayList<>(1);
-        final StringTokenizer rangesTokenizer = new StringTokenizer(versionStr, ",");
-        while (rangesTokenizer.hasMoreTokens())
-        {
-            String range = rangesTokenizer.nextToken().trim();
-            if (range.equals("*"))
-            {
-                range = "*-*";
-            }
-            if (range.startsWith("-"))
-            {
-                range = "*" + range;
-            }
-            if (range.endsWith("-"))
-            {
-                range = range + "*";
-            }
-
-            final StringTokenizer rangeTokenizer = new StringTokenizer(range, "-", false);
-            ComparableVersion versionLower = null;
-            ComparableVersion versionUpper = null;
-            while (rangeTokenizer.hasMoreTokens())
-            {
-                String version = rangeTokenizer.nextToken();
-                version = version.trim();
-                if (versionLower == null)
-                {
-                    if (version.equals("*"))
-                    {
-                        versionLower = ModuleDetails.VERSION_ZERO;
-                    }
-                    else
-                    {
-                        versionLower = new ComparableVersion(version);
-                    }
-                }
-                else if (versionUpper == null)
-                {
-                    if (version.equals("*"))
-                    {
-                        versionUpper = ModuleDetails.VERSION_BIG;
-                    }
-                    else
-                    {
-                        versionUpper = new ComparableVersion(version);
-                    }
-                }
-            }
-            // Check
-            if (versionUpper == null && versionLower == null)
-            {
-                throw new ArchiverException("Valid dependency version ranges are: \n" + "   LOW  - HIGH \n" + "   *    - HIGH \n"
-                        + "   LOW  - *    \n" + "   *       ");
-            }
-            else if (versionUpper == null && versionLower != null)
-            {
-                versionUpper = versionLower;
-            }
-            else if (versionLower == null && versionUpper != null)
-            {
-                versionLower = versionUpper;
-            }
-
-            versionRanges.add(new VersionRange(versionLower, versionUpper));
-        }
-        return versionRanges;
+        return this.versionRangeSet;
     }
 }
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class uninstall modules from an exploded web application based on the install manifest recorded when the module was
+ * installed via this plugin. Only the files listed in the manifest are touched, so an uninstall takes time proportional to the size of the
+ * module instead of the size of the web application. Files which the install replaced are restored from their backups if the install
+ * {@link AmpUnArchiver#setBackupReplacedFiles(boolean) backed them up}, or retained if it did not, as the web application may not work
+ * without them. All other files are deleted, and the module is marked as uninstalled in its module.properties and the registry of installed
+ * modules.
+ *
+ * @author Axel Faust
+ */
+public class ModuleUninstaller
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleUninstaller.class);
+
+    private final File webappDirectory;
+
+    private boolean skipDependencyCheck = false;
+
+    public ModuleUninstaller(final File webappDirectory)
+    {
+        this.webappDirectory = webappDirectory.getAbsoluteFile();
+    }
+
+    /**
+     * @param skipDependencyCheck
+     *            the skipDependencyCheck to set
+     */
+    public void setSkipDependencyCheck(final boolean skipDependencyCheck)
+    {
+        this.skipDependencyCheck = skipDependencyCheck;
+    }
+
+    /**
+     * Uninstalls a module from the web application.
+     *
+     * @param moduleIdOrAlias
+     *            the ID or an alias of the module to uninstall
+     * @return the paths of files which the install of the module replaced without a backup, and which have been retained in the state
+     *         written by the module as the original files cannot be restored
+     */
+    public List<String> uninstall(final String moduleIdOrAlias) throws ArchiverException
+    {
+        if (!this.webappDirectory.isDirectory())
+        {
+            throw new ArchiverException("Uninstalling modules is only supported from exploded web applications - " + this.webappDirectory
+                    + " is not a directory");
+        }
+
+        final InstalledModuleIndex index = InstalledModuleIndex.forDestination(this.webappDirectory);
+        final ModuleDetails md = index.getModule(moduleIdOrAlias);
+        if (md == null)
+        {
+            throw new ArchiverException("Module " + moduleIdOrAlias + " is not installed in " + this.webappDirectory);
+        }
+        if (!this.skipDependencyCheck)
+        {
+            this.checkDependents(index, md);
+        }
+
+        final String moduleId = md.getId();
+        final Path webappPath = this.webappDirectory.toPath();
+        final InstallManifest manifest;
+        try
+        {
+            manifest = InstallManifest.load(this.webappDirectory, moduleId);
+        }
+        catch (final IOException ioex)
+        {
+            throw new ArchiverException("Error loading install manifest of " + moduleId + " from " + this.webappDirectory, ioex);
+        }
+        if (manifest.isEmpty())
+        {
+            throw new ArchiverException("Module " + moduleId + " has not been installed via this plugin - no install manifest found in "
+                    + this.webappDirectory);
+        }
+
+        final String modulePropertiesPath = AmpUnArchiver.MODULE_DIRECTORY + moduleId + "/" + AmpUnArchiver.MODULE_PROPERTIES;
+        final Map<String, InstallManifest> otherManifests = new HashMap<>();
+        final List<String> unrestorablePaths = new ArrayList<>();
+        int filesRemoved = 0;
+        int filesRestored = 0;
+        int filesRetained = 0;
+        try
+        {
+            for (final String path : new TreeSet<>(manifest.getPaths()))
+            {
+                if (path.equals(modulePropertiesPath))
+                {
+                    continue;
+                }
+
+                final InstallManifest.Record record = manifest.getRecord(path);
+                if (record.matchesContent(webappPath.resolve(path).toFile()))
+                {
+                    if (!removeInstalledFile(webappPath, moduleId, path, record))
+                    {
+                        LOGGER.warn("Retaining {} as installed by {} since the file it replaced has not been backed up", path, moduleId);
+                        unrestorablePaths.add(path);
+                    }
+                    else if (record.isBackedUp())
+                    {
+                        filesRestored++;
+                    }
+                    else
+                    {
+                        filesRemoved++;
+                    }
+                }
+                else
+                {
+                    // replaced since by another module or modified manually - only pass on what this module replaced
+                    this.handOverBackup(moduleId, path, record, otherManifests);
+                    filesRetained++;
+                }
+                removeEmptyParents(webappPath, webappPath.resolve(path).getParent());
+            }
+
+            final Path moduleBackupPath = webappPath.resolve(InstallManifest.BACKUP_DIRECTORY + moduleId);
+            deleteEmptyDirectories(moduleBackupPath);
+            removeEmptyParents(webappPath, moduleBackupPath.getParent());
+
+            this.markUninstalled(webappPath.resolve(modulePropertiesPath));
+            Files.deleteIfExists(webappPath.resolve(InstallManifest.getManifestPath(moduleId)));
+        }
+        catch (final IOException ioex)
+        {
+            throw new ArchiverException("Error uninstalling " + moduleId + " from " + this.webappDirectory, ioex);
+        }
+
+        InstalledModuleIndex.registerUninstalled(this.webappDirectory, md);
+
+        LOGGER.info("Uninstalled {} from {}: {} files removed, {} files restored from backup, {} files retained as modified since, "
+                + "{} files retained without backup", moduleId, this.webappDirectory, filesRemoved, filesRestored, filesRetained,
+                unrestorablePaths.size());
+        return unrestorablePaths;
+    }
+
+    /**
+     * Removes a file installed by a module, restoring the file it replaced if a backup exists. A file which replaced an existing file
+     * without a backup is retained, as removing it would leave the web application without the file altogether.
+     *
+     * @param webappPath
+     *            the root directory of the web application
+     * @param moduleId
+     *            the ID of the module
+     * @param path
+     *            the path of the installed file relative to the root of the web application
+     * @param record
+     *            the record of the file in the install manifest of the module
+     * @return {@code true} if the file has been removed or restored, {@code false} if it has been retained as the file it replaced cannot
+     *         be restored
+     */
+    static boolean removeInstalledFile(final Path webappPath, final String moduleId, final String path,
+            final InstallManifest.Record record) throws IOException
+    {
+        final Path targetPath = webappPath.resolve(path);
+        final Path backupPath = webappPath.resolve(InstallManifest.getBackupPath(moduleId, path));
+        boolean removed = true;
+        if (record.isReplacedWithoutBackup())
+        {
+            removed = false;
+        }
+        else if (record.isBackedUp() && Files.isRegularFile(backupPath))
+        {
+            LOGGER.debug("Restoring {} from backup", path);
+            Files.move(backupPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            removeEmptyParents(webappPath, backupPath.getParent());
+        }
+        else
+        {
+            LOGGER.debug("Removing {}", path);
+            Files.deleteIfExists(targetPath);
+        }
+        return removed;
+    }
+
+    protected void checkDependents(final InstalledModuleIndex index, final ModuleDetails md) throws ArchiverException
+    {
+        final List<String> dependents = new ArrayList<>();
+        for (final ModuleDetails installedModule : index.getModules())
+        {
+            if (!installedModule.getId().equals(md.getId()) && installedModule.getDependencies().stream()
+                    .anyMatch(dependency -> index.getModule(dependency.getDependencyId()) == md))
+            {
+                dependents.add(installedModule.getId());
+            }
+        }
+
+        if (!dependents.isEmpty())
+        {
+            throw new ArchiverException("Module " + md.getId() + " cannot be uninstalled as the installed modules " + dependents
+                    + " depend on it");
+        }
+    }
+
+    /**
+     * Passes the backup of a file replaced by a module on to the module which has replaced the file since, so that uninstalling that
+     * module restores the file as it existed before either module was installed.
+     *
+     * @param moduleId
+     *            the ID of the module being uninstalled
+     * @param path
+     *            the path of the file relative to the root of the web application
+     * @param record
+     *            the record of the file in the install manifest of the module being uninstalled
+     * @param otherManifests
+     *            the install manifests of other modules loaded so far, keyed by the ID of the module
+     */
+    protected void handOverBackup(final String moduleId, final String path, final InstallManifest.Record record,
+            final Map<String, InstallManifest> otherManifests) throws IOException
+    {
+        final Path webappPath = this.webappDirectory.toPath();
+        final Path backupPath = webappPath.resolve(InstallManifest.getBackupPath(moduleId, path));
+
+        final String otherModuleId = this.findBackedUpInOtherModule(moduleId, path, otherManifests);
+        if (otherModuleId != null)
+        {
+            final Path otherBackupPath = webappPath.resolve(InstallManifest.getBackupPath(otherModuleId, path));
+            if (record.isBackedUp() && Files.isRegularFile(backupPath))
+            {
+                LOGGER.debug("Handing over backup of {} to {}", path, otherModuleId);
+                Files.move(backupPath, otherBackupPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            else
+            {
+                // backup only holds the file as written by this module - either the file did not exist before this module was installed,
+                // so neither must it after the other module is uninstalled, or it has been replaced without a backup and cannot be restored
+                LOGGER.debug("Discarding backup of {} by {}", path, otherModuleId);
+                Files.deleteIfExists(otherBackupPath);
+                removeEmptyParents(webappPath, otherBackupPath.getParent());
+
+                final InstallManifest otherManifest = otherManifests.get(otherModuleId);
+                final InstallManifest.Record otherRecord = otherManifest.getRecord(path);
+                final InstallManifest.Origin origin = record.getOrigin() == InstallManifest.Origin.ADDED ? InstallManifest.Origin.ADDED
+                        : InstallManifest.Origin.REPLACED;
+                otherManifest.setRecord(path,
+                        new InstallManifest.Record(otherRecord.getCrc(), otherRecord.getSize(), otherRecord.getLastModified(), origin));
+                otherManifest.store(this.webappDirectory, otherModuleId);
+            }
+        }
+
+        if (Files.deleteIfExists(backupPath))
+        {
+            removeEmptyParents(webappPath, backupPath.getParent());
+        }
+    }
+
+    private String findBackedUpInOtherModule(final String moduleId, final String path, final Map<String, InstallManifest> otherManifests)
+            throws IOException
+    {
+        if (otherManifests.isEmpty())
+        {
+            // only load other manifests once needed, as files modified since install are rare
+            final File[] moduleDirectories = new File(this.webappDirectory, AmpUnArchiver.MODULE_DIRECTORY).listFiles(File::isDirectory);
+            if (moduleDirectories != null)
+            {
+                for (final File moduleDirectory : moduleDirectories)
+                {
+                    final String otherModuleId = moduleDirectory.getName();
+                    if (!otherModuleId.equals(moduleId) && new File(moduleDirectory, InstallManifest.INSTALL_MANIFEST).isFile())
+                    {
+                        otherManifests.put(otherModuleId, InstallManifest.load(this.webappDirectory, otherModuleId));
+                    }
+                }
+            }
+        }
+
+        String otherModuleId = null;
+        for (final Map.Entry<String, InstallManifest> otherManifest : otherManifests.entrySet())
+        {
+            final InstallManifest.Record otherRecord = otherManifest.getValue().getRecord(path);
+            if (otherRecord != null && otherRecord.isBackedUp())
+            {
+                otherModuleId = otherManifest.getKey();
+                break;
+            }
+        }
+        return otherModuleId;
+    }
+
+    protected void markUninstalled(final Path modulePropertiesPath) throws IOException
+    {
+        if (Files.isRegularFile(modulePropertiesPath))
+        {
+            // mirrors how install details are appended on install - last value wins when loading the properties
+            final StringBuilder suffix = new StringBuilder(48);
+            suffix.append(System.lineSeparator());
+            suffix.append(ModuleDetails.PROP_INSTALL_STATE).append("=").append(ModuleInstallState.UNINSTALLED.name());
+            suffix.append(System.lineSeparator());
+            Files.write(modulePropertiesPath, suffix.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        }
+    }
+
+    private static void deleteEmptyDirectories(final Path directory) throws IOException
+    {
+        if (Files.isDirectory(directory))
+        {
+            final List<Path> directories = new ArrayList<>();
+            try (Stream<Path> paths = Files.walk(directory))
+            {
+                paths.filter(Files::isDirectory).forEach(directories::add);
+            }
+            // deepest directories first
+            for (int idx = directories.size() - 1; idx >= 0; idx--)
+            {
+                deleteIfEmpty(directories.get(idx));
+            }
+        }
+    }
+
+    private static void removeEmptyParents(final Path webappPath, final Path directory) throws IOException
+    {
+        Path current = directory;
+        while (current != null && current.startsWith(webappPath) && !current.equals(webappPath) && deleteIfEmpty(current))
+        {
+            current = current.getParent();
+        }
+    }
+
+    private static boolean deleteIfEmpty(final Path directory) throws IOException
+    {
+        try
+        {
+            return Files.deleteIfExists(directory);
+        }
+        catch (final DirectoryNotEmptyException | NoSuchFileException e)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.codehaus.plexus.archiver.zip.DeferredScatterOutputStream;
+
+/**
+ * Instances of this class compress archive entries concurrently into temporary buffers (scatter) and then write the compressed entries as
+ * raw data into the final archive (gather). In contrast to the default parallel compression of the base ZIP archiver, entries are gathered
+ * in the order in which they have been submitted, the number of threads is configurable and each entry may use its own compression
+ * method and level. Entries are written as soon as they and all entries submitted before them have been compressed, and the number of
+ * entries in flight is limited to a small multiple of the number of threads, so that the temporary buffers held at any time do not grow
+ * with the size of the archive.
+ *
+ * @author Axel Faust
+ */
+public class ParallelEntryCompressor implements Closeable
+{
+
+    // compressed data of an individual entry is kept in memory up to this size before being offloaded into a temporary file
+    private static final int IN_MEMORY_THRESHOLD = 8 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // enough entries in flight to keep all threads busy while the oldest entry is being written
+    private static final int PENDING_ENTRIES_PER_THREAD = 2;
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    private static final class CompressedEntry
+    {
+
+        private final ZipArchiveEntry entry;
+
+        private final ScatterGatherBackingStore backingStore;
+
+        private final InputStreamSupplier rawSource;
+
+        private CompressedEntry(final ZipArchiveEntry entry, final ScatterGatherBackingStore backingStore,
+                final InputStreamSupplier rawSource)
+        {
+            this.entry = entry;
+            this.backingStore = backingStore;
+            this.rawSource = rawSource;
+        }
+
+        private InputStream getInputStream() throws IOException
+        {
+            try
+            {
+                return this.backingStore != null ? this.backingStore.getInputStream() : this.rawSource.get();
+            }
+            catch (final UncheckedIOException uioex)
+            {
+                throw uioex.getCause();
+            }
+        }
+
+        private void release() throws IOException
+        {
+            if (this.backingStore != null)
+            {
+                this.backingStore.close();
+            }
+        }
+    }
+
+    private final ZipArchiveOutputStream zos;
+
+    private final ExecutorService executor;
+
+    private final int maxPendingEntries;
+
+    private final Deque<Future<CompressedEntry>> pendingEntries = new ArrayDeque<>();
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param zos
+     *            the stream to write the compressed entries to
+     * @param threadCount
+     *            the number of threads to use for compression - a value of less than {@code 1} uses as many threads as there are available
+     *            processors
+     */
+    public ParallelEntryCompressor(final ZipArchiveOutputStream zos, final int threadCount)
+    {
+        this.zos = zos;
+        final int effectiveThreadCount = threadCount < 1 ? Runtime.getRuntime().availableProcessors() : threadCount;
+        this.maxPendingEntries = effectiveThreadCount * PENDING_ENTRIES_PER_THREAD;
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(effectiveThreadCount, r -> {
+            final Thread thread = new Thread(r, "amp-compress-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits an entry for compression, writing any entries submitted before which have been compressed in the meantime. If the maximum
+     * number of entries is in flight, this operation blocks until the oldest entry has been compressed and written.
+     *
+     * @param entry
+     *            the entry to add - its compression method determines whether the entry is deflated or stored
+     * @param source
+     *            the supplier of the entry content
+     * @param level
+     *            the deflate level to use if the entry is deflated
+     * @throws IOException
+     *             if any entry submitted before could not be compressed or written
+     */
+    public void submit(final ZipArchiveEntry entry, final InputStreamSupplier source, final int level) throws IOException
+    {
+        this.pendingEntries.add(this.executor.submit(() -> compress(entry, source, level)));
+        this.writeCompleted(this.maxPendingEntries);
+    }
+
+    /**
+     * Submits an entry of which the compressed data is already available, e.g. from another archive, to be written without any
+     * compression in the order of submission.
+     *
+     * @param entry
+     *            the entry to add - its compression method, checksum and both compressed and uncompressed size must already be set
+     * @param rawSource
+     *            the supplier of the compressed data of the entry
+     * @throws IOException
+     *             if any entry submitted before could not be compressed or written
+     */
+    public void submitRaw(final ZipArchiveEntry entry, final InputStreamSupplier rawSource) throws IOException
+    {
+        this.pendingEntries.add(CompletableFuture.completedFuture(new CompressedEntry(entry, null, rawSource)));
+        this.writeCompleted(this.maxPendingEntries);
+    }
+
+    /**
+     * Writes all remaining submitted entries in the order in which they have been submitted, waiting for their compression to complete.
+     *
+     * @throws IOException
+     *             if any entry could not be compressed or written
+     */
+    public void finish() throws IOException
+    {
+        this.writeCompleted(0);
+    }
+
+    /**
+     * Aborts any pending compression and releases all temporary buffers.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.executor.shutdownNow();
+        for (final Future<CompressedEntry> pendingEntry : this.pendingEntries)
+        {
+            if (!pendingEntry.cancel(true) && pendingEntry.isDone())
+            {
+                try
+                {
+                    pendingEntry.get().release();
+                }
+                catch (final ExecutionException | InterruptedException ignore)
+                {
+                    // nothing to release
+                }
+            }
+        }
+        this.pendingEntries.clear();
+    }
+
+    private void writeCompleted(final int maxPendingEntries) throws IOException
+    {
+        // writes the oldest entries as long as they have been compressed, or as long as too many entries are in flight
+        while (!this.pendingEntries.isEmpty()
+                && (this.pendingEntries.size() > maxPendingEntries || this.pendingEntries.peekFirst().isDone()))
+        {
+            final CompressedEntry compressedEntry = awaitCompressed(this.pendingEntries.removeFirst());
+            try (InputStream is = compressedEntry.getInputStream())
+            {
+                this.zos.addRawArchiveEntry(compressedEntry.entry, is);
+            }
+            finally
+            {
+                compressedEntry.release();
+            }
+        }
+    }
+
+    private static CompressedEntry awaitCompressed(final Future<CompressedEntry> pendingEntry) throws IOException
+    {
+        try
+        {
+            return pendingEntry.get();
+        }
+        catch (final ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException)
+            {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error compressing archive entry", cause);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing archive entries", e);
+        }
+    }
+
+    private static CompressedEntry compress(final ZipArchiveEntry entry, final InputStreamSupplier source, final int level)
+            throws IOException
+    {
+        final ScatterGatherBackingStore backingStore = new DeferredScatterOutputStream(IN_MEMORY_THRESHOLD);
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        long compressedSize = 0;
+
+        try (InputStream is = source.get())
+        {
+            if (entry.getMethod() == ZipArchiveEntry.STORED)
+            {
+                int read;
+                while ((read = is.read(buffer)) != -1)
+                {
+                    crc.update(buffer, 0, read);
+                    backingStore.writeOut(buffer, 0, read);
+                    size += read;
+                }
+                compressedSize = size;
+            }
+            else
+            {
+                final Deflater deflater = new Deflater(level, true);
+                final byte[] outBuffer = new byte[BUFFER_SIZE];
+                try
+                {
+                    int read;
+                    while ((read = is.read(buffer)) != -1)
+                    {
+                        crc.update(buffer, 0, read);
+                        size += read;
+                        deflater.setInput(buffer, 0, read);
+                        while (!deflater.needsInput())
+                        {
+                            compressedSize += drain(deflater, outBuffer, backingStore);
+                        }
+                    }
+                    deflater.finish();
+                    while (!deflater.finished())
+                    {
+                        compressedSize += drain(deflater, outBuffer, backingStore);
+                    }
+                }
+                finally
+                {
+                    deflater.end();
+                }
+            }
+            backingStore.closeForWriting();
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            backingStore.close();
+            throw e;
+        }
+
+        entry.setCrc(crc.getValue());
+        entry.setSize(size);
+        entry.setCompressedSize(compressedSize);
+        return new CompressedEntry(entry, backingStore, null);
+    }
+
+    private static int drain(final Deflater deflater, final byte[] outBuffer, final ScatterGatherBackingStore backingStore)
+            throws IOException
+    {
+        final int deflated = deflater.deflate(outBuffer, 0, outBuffer.length);
+        if (deflated > 0)
+        {
+            backingStore.writeOut(outBuffer, 0, deflated);
+        }
+        return deflated;
+    }
+}
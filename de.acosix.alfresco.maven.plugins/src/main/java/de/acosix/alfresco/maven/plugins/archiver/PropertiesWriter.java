@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+
+/**
+ * Writes properties files in the format read by {@link java.util.Properties#load(java.io.InputStream)}, but unlike
+ * {@link java.util.Properties#store(OutputStream, String)} with entries sorted by key, without a timestamp comment and with
+ * platform-independent line breaks, so that files added to a web application are identical for identical inputs.
+ *
+ * @author Axel Faust
+ */
+final class PropertiesWriter
+{
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private PropertiesWriter()
+    {
+        // no instances
+    }
+
+    /**
+     * Writes properties to a stream in ISO 8859-1 encoding, escaping all characters outside of that encoding.
+     *
+     * @param os
+     *            the stream to write to - will not be closed
+     * @param comment
+     *            the single-line comment to write as a header, or {@code null} to write no comment
+     * @param properties
+     *            the properties to write in the order of their keys
+     */
+    static void write(final OutputStream os, final String comment, final SortedMap<String, String> properties) throws IOException
+    {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.ISO_8859_1));
+        final StringBuilder line = new StringBuilder(256);
+        if (comment != null)
+        {
+            line.append('#');
+            escape(comment, false, true, line);
+            writer.write(line.toString());
+            writer.write('\n');
+        }
+
+        for (final Entry<String, String> entry : properties.entrySet())
+        {
+            line.setLength(0);
+            escape(entry.getKey(), true, false, line);
+            line.append('=');
+            escape(entry.getValue(), false, false, line);
+            writer.write(line.toString());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private static void escape(final String value, final boolean key, final boolean comment, final StringBuilder line)
+    {
+        for (int idx = 0; idx < value.length(); idx++)
+        {
+            final char c = value.charAt(idx);
+            if (c > 0x7e || (c < 0x20 && !comment))
+            {
+                switch (c)
+                {
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    case '\f':
+                        line.append("\\f");
+                        break;
+                    default:
+                        line.append("\\u").append(HEX_DIGITS[(c >> 12) & 0xf]).append(HEX_DIGITS[(c >> 8) & 0xf])
+                                .append(HEX_DIGITS[(c >> 4) & 0xf]).append(HEX_DIGITS[c & 0xf]);
+                }
+            }
+            else if (comment)
+            {
+                // line breaks would end the comment
+                line.append(c < 0x20 ? ' ' : c);
+            }
+            else if (c == ' ')
+            {
+                // only leading whitespace of values is significant
+                line.append(key || idx == 0 ? "\\ " : " ");
+            }
+            else if (c == '\\' || c == '=' || c == ':' || c == '#' || c == '!')
+            {
+                line.append('\\').append(c);
+            }
+            else
+            {
+                line.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Iterator;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.codehaus.plexus.archiver.zip.PlexusArchiverZipFileResourceCollection;
+import org.codehaus.plexus.archiver.zip.ZipResource;
+import org.codehaus.plexus.archiver.zip.ZipSymlinkResource;
+import org.codehaus.plexus.components.io.functions.InputStreamTransformer;
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResourceCollection;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+
+/**
+ * Instances of this class provide the entries of a ZIP-based archive, e.g. a JAR or another AMP, so that their compressed data may be
+ * copied verbatim into the archive being created. As resources of archived file sets may be wrapped in proxies by the archiver, the raw
+ * data of an entry is exposed via the content stream of the resource - unless the entry content is transformed, the stream is a
+ * {@link RawEntryInputStream} which only inflates the entry if it is actually read.
+ *
+ * @author Axel Faust
+ */
+public class RawCopyZipResourceCollection extends PlexusArchiverZipFileResourceCollection
+{
+
+    private Charset charset = StandardCharsets.UTF_8;
+
+    /**
+     * Instances of this class provide the content of an archive entry, and allow access to its raw, compressed data as an alternative.
+     * The entry is only opened for reading once the stream is read from.
+     *
+     * @author Axel Faust
+     */
+    public static class RawEntryInputStream extends InputStream
+    {
+
+        private final ZipFile zipFile;
+
+        private final ZipArchiveEntry entry;
+
+        private InputStream contents;
+
+        private boolean closed;
+
+        protected RawEntryInputStream(final ZipFile zipFile, final ZipArchiveEntry entry)
+        {
+            this.zipFile = zipFile;
+            this.entry = entry;
+        }
+
+        /**
+         * @return the entry as read from the central directory of the source archive
+         */
+        public ZipArchiveEntry getEntry()
+        {
+            return this.entry;
+        }
+
+        /**
+         * Checks whether the raw data of the entry can be copied into another archive, i.e. whether it has been stored or deflated
+         * without encryption and its sizes and checksum are known.
+         *
+         * @return {@code true} if the raw data of the entry can be copied, {@code false} otherwise
+         */
+        public boolean isRawCopySupported()
+        {
+            final int method = this.entry.getMethod();
+            return (method == ZipArchiveEntry.STORED || method == ZipArchiveEntry.DEFLATED)
+                    && !this.entry.getGeneralPurposeBit().usesEncryption() && this.zipFile.canReadEntryData(this.entry)
+                    && this.entry.getCrc() != -1 && this.entry.getSize() != ZipArchiveEntry.SIZE_UNKNOWN
+                    && this.entry.getCompressedSize() != ZipArchiveEntry.SIZE_UNKNOWN;
+        }
+
+        /**
+         * Opens the raw, i.e. still compressed, data of the entry.
+         *
+         * @return the stream of the raw data
+         */
+        public InputStream openRawStream() throws IOException
+        {
+            final InputStream rawStream = this.zipFile.getRawInputStream(this.entry);
+            if (rawStream == null)
+            {
+                throw new IOException("Raw data of " + this.entry.getName() + " is not accessible");
+            }
+            return rawStream;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException
+        {
+            return this.getContents().read();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            return this.getContents().read(b, off, len);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public long skip(final long n) throws IOException
+        {
+            return this.getContents().skip(n);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public int available() throws IOException
+        {
+            return this.contents != null ? this.contents.available() : 0;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException
+        {
+            this.closed = true;
+            if (this.contents != null)
+            {
+                this.contents.close();
+            }
+        }
+
+        private InputStream getContents() throws IOException
+        {
+            if (this.closed)
+            {
+                throw new IOException("Stream of " + this.entry.getName() + " has already been closed");
+            }
+            if (this.contents == null)
+            {
+                this.contents = this.zipFile.getInputStream(this.entry);
+            }
+            return this.contents;
+        }
+    }
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    private static class RawCopyZipResource extends ZipResource
+    {
+
+        private final ZipFile zipFile;
+
+        private final ZipArchiveEntry entry;
+
+        private final InputStreamTransformer streamTransformer;
+
+        private RawCopyZipResource(final ZipFile zipFile, final ZipArchiveEntry entry, final InputStreamTransformer streamTransformer)
+        {
+            super(zipFile, entry, streamTransformer);
+            this.zipFile = zipFile;
+            this.entry = entry;
+            this.streamTransformer = streamTransformer;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public InputStream getContents() throws IOException
+        {
+            final InputStream contents;
+            // raw data can only be copied if the content is not transformed
+            if (this.streamTransformer == null || this.streamTransformer == AbstractPlexusIoResourceCollection.identityTransformer)
+            {
+                contents = new RawEntryInputStream(this.zipFile, this.entry);
+            }
+            else
+            {
+                contents = super.getContents();
+            }
+            return contents;
+        }
+    }
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    private class RawCopyIterator implements Iterator<PlexusIoResource>, Closeable
+    {
+
+        private final ZipFile zipFile;
+
+        private final Enumeration<ZipArchiveEntry> entries;
+
+        private RawCopyIterator(final ZipFile zipFile)
+        {
+            this.zipFile = zipFile;
+            this.entries = zipFile.getEntriesInPhysicalOrder();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext()
+        {
+            return this.entries.hasMoreElements();
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public PlexusIoResource next()
+        {
+            final ZipArchiveEntry entry = this.entries.nextElement();
+            final InputStreamTransformer streamTransformer = RawCopyZipResourceCollection.this.getStreamTransformer();
+            return entry.isUnixSymlink() ? new ZipSymlinkResource(this.zipFile, entry, streamTransformer)
+                    : new RawCopyZipResource(this.zipFile, entry, streamTransformer);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException
+        {
+            this.zipFile.close();
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void setEncoding(final Charset charset)
+    {
+        super.setEncoding(charset);
+        this.charset = charset;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected Iterator<PlexusIoResource> getEntries() throws IOException
+    {
+        final File file = this.getFile();
+        if (file == null)
+        {
+            throw new IOException("The archive file has not been set.");
+        }
+        final ZipFile zipFile = new ZipFile(file, this.charset != null ? this.charset.name() : StandardCharsets.UTF_8.name());
+        return new RawCopyIterator(zipFile);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Instances of this class provide read-only access to an archive file, reading ahead in large windows instead of issuing a separate read
+ * for each of the small buffers with which entry data is typically consumed. As entries are extracted in the order in which they are
+ * stored, consecutive reads are served from the same window, and the archive is read front to back in large sequential reads which the
+ * operating system can serve efficiently even with a cold file cache. This only benefits sequential extraction - the channel holds a single
+ * window, and as {@link org.apache.commons.compress.archivers.zip.ZipFile} serialises all reads from channels other than a
+ * {@link FileChannel}, concurrent extraction should read from the file channel directly.
+ *
+ * @author Axel Faust
+ */
+public class ReadAheadChannel implements SeekableByteChannel
+{
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int windowSize;
+
+    private final ByteBuffer window;
+
+    private long windowStart;
+
+    private long position;
+
+    /**
+     * Creates a new channel reading ahead from a file.
+     *
+     * @param channel
+     *            the channel of the file - will be closed when this channel is closed
+     * @param windowSize
+     *            the number of bytes to read ahead at a time
+     */
+    public ReadAheadChannel(final FileChannel channel, final int windowSize) throws IOException
+    {
+        this.channel = channel;
+        // archives are never modified while being read
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.window = ByteBuffer.allocate(windowSize);
+        this.window.limit(0);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int read(final ByteBuffer dst) throws IOException
+    {
+        final int read = this.read(dst, this.position);
+        if (read > 0)
+        {
+            this.position += read;
+        }
+        return read;
+    }
+
+    /**
+     * Reads a sequence of bytes from a given position without modifying the position of this channel.
+     *
+     * @param dst
+     *            the buffer into which to read
+     * @param position
+     *            the position at which to start reading
+     * @return the number of bytes read, or {@code -1} if the position is at or beyond the end of the file
+     */
+    public synchronized int read(final ByteBuffer dst, final long position) throws IOException
+    {
+        if (!this.channel.isOpen())
+        {
+            throw new ClosedChannelException();
+        }
+        if (position >= this.size)
+        {
+            return -1;
+        }
+        if (!dst.hasRemaining())
+        {
+            return 0;
+        }
+        if (dst.remaining() >= this.windowSize)
+        {
+            // nothing to gain from reading ahead
+            return this.channel.read(dst, position);
+        }
+
+        if (position < this.windowStart || position >= this.windowStart + this.window.limit())
+        {
+            this.fill(position);
+        }
+
+        final int offset = (int) (position - this.windowStart);
+        final int count = Math.min(dst.remaining(), this.window.limit() - offset);
+        final ByteBuffer source = this.window.duplicate();
+        source.limit(offset + count).position(offset);
+        dst.put(source);
+        return count;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int write(final ByteBuffer src)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long position()
+    {
+        return this.position;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized SeekableByteChannel position(final long newPosition)
+    {
+        if (newPosition < 0)
+        {
+            throw new IllegalArgumentException("Position must not be negative");
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public long size()
+    {
+        return this.size;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public SeekableByteChannel truncate(final long size)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen()
+    {
+        return this.channel.isOpen();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.channel.close();
+    }
+
+    private void fill(final long position) throws IOException
+    {
+        long start = position;
+        if (this.window.limit() > 0 && position < this.windowStart && position >= this.windowStart - this.windowSize)
+        {
+            // stepping backwards, e.g. while locating the central directory - extend the window backwards instead of re-reading the tail
+            start = Math.max(0, this.windowStart - this.windowSize);
+        }
+
+        this.window.clear();
+        long readPosition = start;
+        while (this.window.hasRemaining() && readPosition < this.size)
+        {
+            final int read = this.channel.read(this.window, readPosition);
+            if (read == -1)
+            {
+                break;
+            }
+            readPosition += read;
+        }
+        this.window.flip();
+        this.windowStart = start;
+
+        if (position >= start + this.window.limit())
+        {
+            throw new IOException("Unexpected end of file at position " + position);
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+/**
+ * Instances of this class represent a precompiled set of version ranges as used in module dependencies. Ranges are merged into a sorted
+ * list of disjoint intervals on construction so that versions can be matched via binary search. Both the Alfresco format of
+ * {@code LOW-HIGH} ranges, with {@code *} denoting an open bound, and the Maven format of {@code [LOW,HIGH)} restrictions are supported,
+ * and may be mixed in a comma-separated list of ranges.
+ *
+ * Parsed range sets and versions are interned for the lifetime of the JVM as the same specifications tend to be used by many modules.
+ *
+ * @author Axel Faust
+ */
+public final class VersionRangeSet
+{
+
+    private static final ConcurrentMap<String, ComparableVersion> VERSIONS = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, VersionRangeSet> RANGE_SETS = new ConcurrentHashMap<>();
+
+    private static final String WILDCARD = "*";
+
+    private static final Comparator<Interval> LOWER_BOUND_ORDER = (a, b) -> {
+        int res;
+        if (a.lower == null || b.lower == null)
+        {
+            res = a.lower == null ? (b.lower == null ? 0 : -1) : 1;
+        }
+        else
+        {
+            res = a.lower.compareTo(b.lower);
+        }
+
+        if (res == 0 && a.lowerInclusive != b.lowerInclusive)
+        {
+            res = a.lowerInclusive ? -1 : 1;
+        }
+        return res;
+    };
+
+    /**
+     * A single interval of versions - a bound of {@code null} denotes an unbounded interval.
+     *
+     * @author Axel Faust
+     */
+    private static final class Interval
+    {
+
+        private final ComparableVersion lower;
+
+        private final boolean lowerInclusive;
+
+        private final ComparableVersion upper;
+
+        private final boolean upperInclusive;
+
+        private Interval(final ComparableVersion lower, final boolean lowerInclusive, final ComparableVersion upper,
+                final boolean upperInclusive)
+        {
+            this.lower = lower;
+            this.lowerInclusive = lowerInclusive;
+            this.upper = upper;
+            this.upperInclusive = upperInclusive;
+        }
+
+        private boolean isEmpty()
+        {
+            boolean empty = false;
+            if (this.lower != null && this.upper != null)
+            {
+                final int res = this.lower.compareTo(this.upper);
+                empty = res > 0 || (res == 0 && !(this.lowerInclusive && this.upperInclusive));
+            }
+            return empty;
+        }
+
+        private boolean admitsAsLower(final ComparableVersion version)
+        {
+            boolean admits = this.lower == null;
+            if (!admits)
+            {
+                final int res = this.lower.compareTo(version);
+                admits = res < 0 || (res == 0 && this.lowerInclusive);
+            }
+            return admits;
+        }
+
+        private boolean admitsAsUpper(final ComparableVersion version)
+        {
+            boolean admits = this.upper == null;
+            if (!admits)
+            {
+                final int res = this.upper.compareTo(version);
+                admits = res > 0 || (res == 0 && this.upperInclusive);
+            }
+            return admits;
+        }
+
+        private boolean overlapsOrTouches(final Interval next)
+        {
+            boolean overlaps = this.upper == null || next.lower == null;
+            if (!overlaps)
+            {
+                final int res = next.lower.compareTo(this.upper);
+                overlaps = res < 0 || (res == 0 && (this.upperInclusive || next.lowerInclusive));
+            }
+            return overlaps;
+        }
+
+        private Interval mergeWith(final Interval next)
+        {
+            final ComparableVersion upper;
+            final boolean upperInclusive;
+            if (this.upper == null || next.upper == null)
+            {
+                upper = null;
+                upperInclusive = false;
+            }
+            else
+            {
+                final int res = this.upper.compareTo(next.upper);
+                upper = res >= 0 ? this.upper : next.upper;
+                upperInclusive = res > 0 ? this.upperInclusive
+                        : (res < 0 ? next.upperInclusive : this.upperInclusive || next.upperInclusive);
+            }
+            return new Interval(this.lower, this.lowerInclusive, upper, upperInclusive);
+        }
+    }
+
+    private final String specification;
+
+    private final Interval[] intervals;
+
+    private VersionRangeSet(final String specification, final Interval[] intervals)
+    {
+        this.specification = specification;
+        this.intervals = intervals;
+    }
+
+    /**
+     * Retrieves the compiled range set for a version range specification, parsing it only if it has not been parsed before.
+     *
+     * @param specification
+     *            the specification of version ranges
+     * @return the compiled range set
+     */
+    public static VersionRangeSet forSpecification(final String specification) throws ArchiverException
+    {
+        VersionRangeSet rangeSet = RANGE_SETS.get(specification);
+        if (rangeSet == null)
+        {
+            rangeSet = parse(specification);
+            final VersionRangeSet existing = RANGE_SETS.putIfAbsent(specification, rangeSet);
+            rangeSet = existing != null ? existing : rangeSet;
+        }
+        return rangeSet;
+    }
+
+    /**
+     * Retrieves the interned instance for a version. As the instance is shared, it must never be modified via
+     * {@link ComparableVersion#parseVersion(String) parseVersion}.
+     *
+     * @param version
+     *            the version
+     * @return the interned version
+     */
+    public static ComparableVersion internVersion(final String version)
+    {
+        return VERSIONS.computeIfAbsent(version, ComparableVersion::new);
+    }
+
+    /**
+     * Evaluates many dependencies against many candidate modules in one go. Candidates are grouped by their ID and aliases and sorted by
+     * their version once, so that each dependency is matched by a single merge-like pass over its intervals and the candidates of the
+     * required module.
+     *
+     * @param dependencies
+     *            the dependencies to evaluate
+     * @param candidates
+     *            the candidate modules
+     * @return the candidates satisfying each dependency, in ascending order of their version - dependencies not satisfied by any
+     *         candidate are mapped to an empty list
+     */
+    public static Map<ModuleDependency, List<ModuleDetails>> matchAll(final Collection<? extends ModuleDependency> dependencies,
+            final Collection<? extends ModuleDetails> candidates) throws ArchiverException
+    {
+        final Map<String, List<ModuleDetails>> candidatesById = new HashMap<>();
+        for (final ModuleDetails candidate : candidates)
+        {
+            candidatesById.computeIfAbsent(candidate.getId(), id -> new ArrayList<>()).add(candidate);
+            // dependencies may refer to a renamed module by one of its aliases
+            for (final String alias : candidate.getAliases())
+            {
+                if (!alias.equals(candidate.getId()))
+                {
+                    candidatesById.computeIfAbsent(alias, id -> new ArrayList<>()).add(candidate);
+                }
+            }
+        }
+        candidatesById.values().forEach(c -> c.sort(Comparator.comparing(ModuleDetails::getVersion)));
+
+        final Map<ModuleDependency, List<ModuleDetails>> matches = new IdentityHashMap<>();
+        for (final ModuleDependency dependency : dependencies)
+        {
+            final List<ModuleDetails> dependencyCandidates = candidatesById.getOrDefault(dependency.getDependencyId(),
+                    Collections.emptyList());
+            final VersionRangeSet rangeSet = dependency instanceof ModuleDependencyImpl
+                    ? ((ModuleDependencyImpl) dependency).getVersionRangeSet()
+                    : forSpecification(dependency.getVersionString());
+            matches.put(dependency, rangeSet.matchSorted(dependencyCandidates));
+        }
+        return matches;
+    }
+
+    /**
+     * Checks whether a version is contained in any range of this set.
+     *
+     * @param version
+     *            the version to check
+     * @return {@code true} if the version is contained in this set, {@code false} otherwise
+     */
+    public boolean matches(final ComparableVersion version)
+    {
+        // find the last interval whose lower bound admits the version - intervals are disjoint and sorted, so only it may contain it
+        int low = 0;
+        int high = this.intervals.length - 1;
+        int candidate = -1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (this.intervals[mid].admitsAsLower(version))
+            {
+                candidate = mid;
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        return candidate != -1 && this.intervals[candidate].admitsAsUpper(version);
+    }
+
+    /**
+     * @return the specification this set has been compiled from
+     */
+    public String getSpecification()
+    {
+        return this.specification;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder(this.intervals.length * 16);
+        for (final Interval interval : this.intervals)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(',');
+            }
+            sb.append(interval.lowerInclusive ? '[' : '(');
+            sb.append(interval.lower != null ? interval.lower : "");
+            sb.append(',');
+            sb.append(interval.upper != null ? interval.upper : "");
+            sb.append(interval.upperInclusive ? ']' : ')');
+        }
+        return sb.toString();
+    }
+
+    private List<ModuleDetails> matchSorted(final List<ModuleDetails> sortedCandidates)
+    {
+        final List<ModuleDetails> matches = new ArrayList<>();
+        int intervalIdx = 0;
+        for (final ModuleDetails candidate : sortedCandidates)
+        {
+            final ComparableVersion version = candidate.getVersion();
+            while (intervalIdx < this.intervals.length && !this.intervals[intervalIdx].admitsAsUpper(version))
+            {
+                intervalIdx++;
+            }
+            if (intervalIdx == this.intervals.length)
+            {
+                break;
+            }
+            if (this.intervals[intervalIdx].admitsAsLower(version))
+            {
+                matches.add(candidate);
+            }
+        }
+        return matches;
+    }
+
+    private static VersionRangeSet parse(final String specification) throws ArchiverException
+    {
+        final List<Interval> intervals = new ArrayList<>(2);
+
+        final int length = specification.length();
+        int idx = 0;
+        while (idx < length)
+        {
+            final char c = specification.charAt(idx);
+            if (c == '[' || c == '(')
+            {
+                int end = idx + 1;
+                while (end < length && specification.charAt(end) != ']' && specification.charAt(end) != ')')
+                {
+                    end++;
+                }
+                if (end == length)
+                {
+                    throw new ArchiverException("Unterminated version range in " + specification);
+                }
+                intervals.add(parseRestriction(specification.substring(idx, end + 1)));
+                idx = end + 1;
+            }
+            else if (c == ',' || Character.isWhitespace(c))
+            {
+                idx++;
+            }
+            else
+            {
+                int end = specification.indexOf(',', idx);
+                end = end == -1 ? length : end;
+                intervals.add(parseLegacyRange(specification.substring(idx, end).trim()));
+                idx = end;
+            }
+        }
+
+        intervals.removeIf(Interval::isEmpty);
+        intervals.sort(LOWER_BOUND_ORDER);
+
+        final List<Interval> merged = new ArrayList<>(intervals.size());
+        for (final Interval interval : intervals)
+        {
+            final int lastIdx = merged.size() - 1;
+            if (lastIdx >= 0 && merged.get(lastIdx).overlapsOrTouches(interval))
+            {
+                merged.set(lastIdx, merged.get(lastIdx).mergeWith(interval));
+            }
+            else
+            {
+                merged.add(interval);
+            }
+        }
+
+        return new VersionRangeSet(specification, merged.toArray(new Interval[0]));
+    }
+
+    private static Interval parseRestriction(final String restriction) throws ArchiverException
+    {
+        final boolean lowerInclusive = restriction.charAt(0) == '[';
+        final boolean upperInclusive = restriction.charAt(restriction.length() - 1) == ']';
+        final String content = restriction.substring(1, restriction.length() - 1).trim();
+
+        final Interval interval;
+        final int separator = content.indexOf(',');
+        if (separator == -1)
+        {
+            if (!lowerInclusive || !upperInclusive || content.isEmpty())
+            {
+                throw new ArchiverException("Single version restriction must be specified as [EXACT]: " + restriction);
+            }
+            final ComparableVersion version = internVersion(content);
+            interval = new Interval(version, true, version, true);
+        }
+        else
+        {
+            final String lower = content.substring(0, separator).trim();
+            final String upper = content.substring(separator + 1).trim();
+            if (upper.indexOf(',') != -1)
+            {
+                throw new ArchiverException("Version restriction must only specify a lower and an upper bound: " + restriction);
+            }
+            interval = new Interval(lower.isEmpty() ? null : internVersion(lower), lowerInclusive && !lower.isEmpty(),
+                    upper.isEmpty() ? null : internVersion(upper), upperInclusive && !upper.isEmpty());
+        }
+        return interval;
+    }
+
+    private static Interval parseLegacyRange(final String range) throws ArchiverException
+    {
+        String effectiveRange = range;
+        if (effectiveRange.equals(WILDCARD))
+        {
+            effectiveRange = "*-*";
+        }
+        if (effectiveRange.startsWith("-"))
+        {
+            effectiveRange = WILDCARD + effectiveRange;
+        }
+        if (effectiveRange.endsWith("-"))
+        {
+            effectiveRange = effectiveRange + WILDCARD;
+        }
+
+        // mirrors the original tokenization - empty tokens are skipped and anything after the second token is ignored
+        ComparableVersion versionLower = null;
+        ComparableVersion versionUpper = null;
+        int start = 0;
+        while (start <= effectiveRange.length() && versionUpper == null)
+        {
+            int end = effectiveRange.indexOf('-', start);
+            end = end == -1 ? effectiveRange.length() : end;
+            final String version = effectiveRange.substring(start, end).trim();
+            if (!version.isEmpty())
+            {
+                if (versionLower == null)
+                {
+                    versionLower = version.equals(WILDCARD) ? ModuleDetails.VERSION_ZERO : internVersion(version);
+                }
+                else
+                {
+                    versionUpper = version.equals(WILDCARD) ? ModuleDetails.VERSION_BIG : internVersion(version);
+                }
+            }
+            start = end + 1;
+        }
+
+        if (versionLower == null)
+        {
+            throw new ArchiverException("Valid dependency version ranges are: \n" + "   LOW  - HIGH \n" + "   *    - HIGH \n"
+                    + "   LOW  - *    \n" + "   *       \n" + "   [LOW,HIGH) / (LOW,HIGH] / [LOW,) / (,HIGH] / [EXACT]");
+        }
+        else if (versionUpper == null)
+        {
+            versionUpper = versionLower;
+        }
+
+        return new Interval(versionLower, true, versionUpper, true);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Instances of this class rewrite a web application archive by streaming all of its entries into a new archive, merging in entries
+ * contributed from AMPs or generated during installation. Entries which are neither overridden nor generated are copied as raw compressed
+ * data, i.e. without inflating and deflating them again, so that rewriting a WAR is mostly bound by I/O and not CPU. Entries contributed
+ * from other archives are copied raw as well, only renamed to their target name, while generated entries are compressed as usual.
+ *
+ * Contributions are keyed by their target name, so that a later contribution overrides any earlier contribution for the same name.
+ *
+ * @author Axel Faust
+ */
+public class WarArchiveRewriter
+{
+
+    /**
+     *
+     * @author Axel Faust
+     */
+    private static final class Contribution
+    {
+
+        private final ZipFile sourceArchive;
+
+        private final ZipArchiveEntry sourceEntry;
+
+        private final byte[] content;
+
+        private final long time;
+
+        private Contribution(final ZipFile sourceArchive, final ZipArchiveEntry sourceEntry)
+        {
+            this.sourceArchive = sourceArchive;
+            this.sourceEntry = sourceEntry;
+            this.content = null;
+            this.time = sourceEntry.getTime();
+        }
+
+        private Contribution(final byte[] content, final long time)
+        {
+            this.sourceArchive = null;
+            this.sourceEntry = null;
+            this.content = content;
+            this.time = time;
+        }
+
+        private boolean isDirectory()
+        {
+            return this.sourceEntry != null && this.sourceEntry.isDirectory();
+        }
+    }
+
+    private final File sourceWar;
+
+    private final File targetWar;
+
+    private final String encoding;
+
+    private final Map<String, Contribution> contributions = new LinkedHashMap<>();
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param sourceWar
+     *            the web application archive to use as the base
+     * @param targetWar
+     *            the web application archive to write - may be the same file as the source
+     * @param encoding
+     *            the encoding to use for entry names
+     */
+    public WarArchiveRewriter(final File sourceWar, final File targetWar, final String encoding)
+    {
+        this.sourceWar = sourceWar;
+        this.targetWar = targetWar;
+        this.encoding = encoding;
+    }
+
+    /**
+     * @return the web application archive to write
+     */
+    public File getTargetFile()
+    {
+        return this.targetWar;
+    }
+
+    /**
+     * Adds an entry from another archive to be copied into the web application archive. Directory entries are only added if the web
+     * application archive or a previous contribution does not already contain an entry of the same name.
+     *
+     * @param targetName
+     *            the name of the entry in the web application archive
+     * @param sourceArchive
+     *            the archive containing the entry - must remain open until {@link #write() the web application archive has been written}
+     * @param sourceEntry
+     *            the entry to copy
+     */
+    public void addEntry(final String targetName, final ZipFile sourceArchive, final ZipArchiveEntry sourceEntry)
+    {
+        if (sourceEntry.isDirectory())
+        {
+            this.contributions.putIfAbsent(targetName, new Contribution(sourceArchive, sourceEntry));
+        }
+        else
+        {
+            this.contributions.put(targetName, new Contribution(sourceArchive, sourceEntry));
+        }
+    }
+
+    /**
+     * Adds a generated entry to be written into the web application archive.
+     *
+     * @param targetName
+     *            the name of the entry in the web application archive
+     * @param content
+     *            the content of the entry
+     * @param time
+     *            the modification time of the entry
+     */
+    public void addContent(final String targetName, final byte[] content, final long time)
+    {
+        this.contributions.put(targetName, new Contribution(content, time));
+    }
+
+    /**
+     * Retrieves the content of a generated entry previously added.
+     *
+     * @param targetName
+     *            the name of the entry in the web application archive
+     * @return the content of the entry, or {@code null} if no generated entry of that name has been added
+     */
+    public byte[] getContent(final String targetName)
+    {
+        final Contribution contribution = this.contributions.get(targetName);
+        return contribution != null ? contribution.content : null;
+    }
+
+    /**
+     * Writes the web application archive, replacing the target file once all entries have been written.
+     *
+     * @throws IOException
+     *             if any error occurs reading the source archives or writing the target archive
+     */
+    public void write() throws IOException
+    {
+        final Path targetPath = this.targetWar.toPath().toAbsolutePath();
+        final Path tempPath = Files.createTempFile(targetPath.getParent(), targetPath.getFileName().toString(), ".tmp");
+        try
+        {
+            try (ZipFile war = new ZipFile(this.sourceWar, this.encoding, true);
+                    ZipArchiveOutputStream zos = new ZipArchiveOutputStream(tempPath.toFile()))
+            {
+                zos.setEncoding(this.encoding);
+
+                final Map<String, Contribution> pendingContributions = new LinkedHashMap<>(this.contributions);
+                final Enumeration<ZipArchiveEntry> warEntries = war.getEntriesInPhysicalOrder();
+                while (warEntries.hasMoreElements())
+                {
+                    final ZipArchiveEntry warEntry = warEntries.nextElement();
+                    final Contribution contribution = pendingContributions.remove(warEntry.getName());
+                    if (contribution == null || contribution.isDirectory())
+                    {
+                        try (InputStream rawStream = war.getRawInputStream(warEntry))
+                        {
+                            zos.addRawArchiveEntry(warEntry, rawStream);
+                        }
+                    }
+                    else
+                    {
+                        // write overriding entries in place to keep any order-sensitive entries, e.g. the manifest, in place
+                        writeContribution(zos, warEntry.getName(), contribution);
+                    }
+                }
+
+                for (final Map.Entry<String, Contribution> contributionEntry : pendingContributions.entrySet())
+                {
+                    writeContribution(zos, contributionEntry.getKey(), contributionEntry.getValue());
+                }
+            }
+
+            AtomicFiles.move(tempPath, targetPath);
+        }
+        finally
+        {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private static void writeContribution(final ZipArchiveOutputStream zos, final String targetName, final Contribution contribution)
+            throws IOException
+    {
+        final ZipArchiveEntry targetEntry = new ZipArchiveEntry(targetName);
+        targetEntry.setTime(contribution.time);
+
+        if (contribution.sourceEntry != null)
+        {
+            final ZipArchiveEntry sourceEntry = contribution.sourceEntry;
+            targetEntry.setMethod(sourceEntry.getMethod());
+            targetEntry.setCrc(sourceEntry.getCrc());
+            targetEntry.setSize(sourceEntry.getSize());
+            targetEntry.setCompressedSize(sourceEntry.getCompressedSize());
+            targetEntry.setInternalAttributes(sourceEntry.getInternalAttributes());
+            if (sourceEntry.getPlatform() == ZipArchiveEntry.PLATFORM_UNIX)
+            {
+                targetEntry.setUnixMode(sourceEntry.getUnixMode());
+            }
+            else
+            {
+                targetEntry.setExternalAttributes(sourceEntry.getExternalAttributes());
+            }
+
+            try (InputStream rawStream = contribution.sourceArchive.getRawInputStream(sourceEntry))
+            {
+                zos.addRawArchiveEntry(targetEntry, rawStream);
+            }
+        }
+        else
+        {
+            targetEntry.setMethod(ZipArchiveEntry.DEFLATED);
+            zos.putArchiveEntry(targetEntry);
+            zos.write(contribution.content);
+            zos.closeArchiveEntry();
+        }
+    }
+}
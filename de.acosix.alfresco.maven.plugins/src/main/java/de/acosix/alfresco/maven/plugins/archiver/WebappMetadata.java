@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instances of this class hold the version and edition of a web application as parsed from its version.properties and / or manifest.
+ * Metadata is cached for the lifetime of the JVM, keyed by the web application and the modification time and size of the files it has
+ * been read from, so that installing multiple AMPs into the same web application - even using separate unarchiver instances - only reads
+ * and parses the metadata once.
+ *
+ * @author Axel Faust
+ */
+public final class WebappMetadata
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebappMetadata.class);
+
+    private static final ConcurrentMap<File, WebappMetadata> METADATA_BY_DESTINATION = new ConcurrentHashMap<>();
+
+    private final long modifiedStamp;
+
+    private final long sizeStamp;
+
+    private final boolean versionPropertiesPresent;
+
+    private final ComparableVersion version;
+
+    private final String edition;
+
+    private final boolean manifestPresent;
+
+    private final Attributes manifestAttributes;
+
+    private final String manifestVersionString;
+
+    private final ComparableVersion manifestVersion;
+
+    private final String manifestEdition;
+
+    private WebappMetadata(final long modifiedStamp, final long sizeStamp, final Properties versionProperties, final Manifest manifest)
+    {
+        this.modifiedStamp = modifiedStamp;
+        this.sizeStamp = sizeStamp;
+
+        this.versionPropertiesPresent = versionProperties != null;
+        if (versionProperties != null)
+        {
+            final StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(versionProperties.getProperty("version.major"));
+            stringBuilder.append(".");
+            stringBuilder.append(versionProperties.getProperty("version.minor"));
+            stringBuilder.append(".");
+            stringBuilder.append(versionProperties.getProperty("version.revision"));
+            this.version = new ComparableVersion(stringBuilder.toString());
+            this.edition = versionProperties.getProperty("version.edition");
+        }
+        else
+        {
+            this.version = null;
+            this.edition = null;
+        }
+
+        this.manifestPresent = manifest != null;
+        if (manifest != null)
+        {
+            this.manifestAttributes = new Attributes(manifest.getMainAttributes());
+            this.manifestVersionString = this.manifestAttributes.getValue(AmpUnArchiver.MANIFEST_SPECIFICATION_VERSION);
+            this.manifestEdition = this.manifestAttributes.getValue(AmpUnArchiver.MANIFEST_IMPLEMENTATION_TITLE);
+            this.manifestVersion = this.manifestVersionString != null && this.manifestVersionString.length() > 0
+                    && this.manifestVersionString.matches(AmpUnArchiver.REGEX_NUMBER_OR_DOT)
+                            ? new ComparableVersion(this.manifestVersionString)
+                            : null;
+        }
+        else
+        {
+            this.manifestAttributes = null;
+            this.manifestVersionString = null;
+            this.manifestVersion = null;
+            this.manifestEdition = null;
+        }
+    }
+
+    /**
+     * Creates metadata from already loaded files without caching it.
+     *
+     * @param versionProperties
+     *            the version.properties of the web application - may be {@code null}
+     * @param manifest
+     *            the manifest of the web application - may be {@code null}
+     * @return the metadata
+     */
+    public static WebappMetadata of(final Properties versionProperties, final Manifest manifest)
+    {
+        return new WebappMetadata(0, 0, versionProperties, manifest);
+    }
+
+    /**
+     * Retrieves the metadata of a web application, reading it only if it has not been cached or the files it has been read from have
+     * been modified since.
+     *
+     * @param destination
+     *            the web application - either a web application archive or the root directory of an exploded web application
+     * @param encoding
+     *            the encoding of entry names in a web application archive
+     * @return the metadata of the web application
+     */
+    public static WebappMetadata forDestination(final File destination, final String encoding) throws ArchiverException
+    {
+        final File key = destination.getAbsoluteFile();
+        final long modifiedStamp;
+        final long sizeStamp;
+        if (key.isFile())
+        {
+            modifiedStamp = key.lastModified();
+            sizeStamp = key.length();
+        }
+        else
+        {
+            final File versionPropertiesFile = new File(key, AmpUnArchiver.VERSION_PROPERTIES);
+            final File manifestFile = new File(key, AmpUnArchiver.MANIFEST_FILE);
+            modifiedStamp = versionPropertiesFile.lastModified() * 31 + manifestFile.lastModified();
+            sizeStamp = versionPropertiesFile.length() * 31 + manifestFile.length();
+        }
+
+        return METADATA_BY_DESTINATION.compute(key, (k, metadata) -> {
+            if (metadata != null && metadata.modifiedStamp == modifiedStamp && metadata.sizeStamp == sizeStamp)
+            {
+                return metadata;
+            }
+            return load(k, encoding, modifiedStamp, sizeStamp);
+        });
+    }
+
+    /**
+     * @return {@code true} if the web application contains a version.properties, {@code false} otherwise
+     */
+    public boolean hasVersionProperties()
+    {
+        return this.versionPropertiesPresent;
+    }
+
+    /**
+     * @return the version of the web application as specified in the version.properties
+     */
+    public ComparableVersion getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * @return the edition of the web application as specified in the version.properties
+     */
+    public String getEdition()
+    {
+        return this.edition;
+    }
+
+    /**
+     * @return {@code true} if the web application contains a manifest, {@code false} otherwise
+     */
+    public boolean hasManifest()
+    {
+        return this.manifestPresent;
+    }
+
+    /**
+     * @return a copy of the main attributes of the manifest of the web application
+     */
+    public Attributes getManifestAttributes()
+    {
+        return this.manifestAttributes != null ? new Attributes(this.manifestAttributes) : null;
+    }
+
+    /**
+     * @return the version of the web application as specified in the manifest
+     */
+    public String getManifestVersionString()
+    {
+        return this.manifestVersionString;
+    }
+
+    /**
+     * @return the version of the web application as specified in the manifest, or {@code null} if the version is not numeric
+     */
+    public ComparableVersion getManifestVersion()
+    {
+        return this.manifestVersion;
+    }
+
+    /**
+     * @return the edition of the web application as specified in the manifest
+     */
+    public String getManifestEdition()
+    {
+        return this.manifestEdition;
+    }
+
+    private static WebappMetadata load(final File destination, final String encoding, final long modifiedStamp, final long sizeStamp)
+    {
+        LOGGER.debug("Reading web application metadata from {}", destination);
+        try
+        {
+            final Properties versionProperties;
+            final Manifest manifest;
+            if (destination.isFile())
+            {
+                try (CentralDirectoryReader reader = new CentralDirectoryReader(destination, encoding))
+                {
+                    versionProperties = read(reader.getInputStream(AmpUnArchiver.VERSION_PROPERTIES), AmpUnArchiver.PROPERTIES_READER);
+                    manifest = read(reader.getInputStream(AmpUnArchiver.MANIFEST_FILE), AmpUnArchiver.MANIFEST_READER);
+                }
+            }
+            else
+            {
+                versionProperties = read(new File(destination, AmpUnArchiver.VERSION_PROPERTIES), AmpUnArchiver.PROPERTIES_READER);
+                manifest = read(new File(destination, AmpUnArchiver.MANIFEST_FILE), AmpUnArchiver.MANIFEST_READER);
+            }
+            return new WebappMetadata(modifiedStamp, sizeStamp, versionProperties, manifest);
+        }
+        catch (final IOException ioex)
+        {
+            throw new ArchiverException("Error loading web application metadata from " + destination.getAbsolutePath(), ioex);
+        }
+    }
+
+    private static <T> T read(final File file, final AmpUnArchiver.FileReader<T> reader) throws IOException
+    {
+        T meta = null;
+        if (file.isFile())
+        {
+            meta = read(Files.newInputStream(file.toPath()), reader);
+        }
+        return meta;
+    }
+
+    private static <T> T read(final InputStream is, final AmpUnArchiver.FileReader<T> reader) throws IOException
+    {
+        T meta = null;
+        if (is != null)
+        {
+            try (InputStream effectiveIs = is)
+            {
+                meta = reader.readFile(effectiveIs);
+            }
+        }
+        return meta;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.mojo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+import de.acosix.alfresco.maven.plugins.archiver.AmpBatchInstaller;
+
+/**
+ * Installs multiple AMPs into a web application in a single pass, ordered by their declared module dependencies.
+ *
+ * @author Axel Faust
+ */
+@Mojo(name = "install-amps", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.RUNTIME, threadSafe = true)
+public class InstallAmpsMojo extends AbstractMojo
+{
+
+    @Parameter(defaultValue = "${project.artifacts}", readonly = true, required = true)
+    protected Set<Artifact> projectArtifacts;
+
+    /**
+     * The web application to install into - either an existing web application archive or the root directory of an exploded web
+     * application.
+     */
+    @Parameter(property = "aco6alf.installAmps.target", required = true)
+    protected File target;
+
+    /**
+     * Additional AMP files to install, independent of any AMP dependencies of the project.
+     */
+    @Parameter
+    protected List<File> amps;
+
+    /**
+     * Whether the AMP dependencies of the project should be installed.
+     */
+    @Parameter(property = "aco6alf.installAmps.includeAmpDependencies", defaultValue = "true")
+    protected boolean includeAmpDependencies;
+
+    /**
+     * The encoding of entry names within the AMPs.
+     */
+    @Parameter(property = "aco6alf.installAmps.encoding", defaultValue = "UTF-8")
+    protected String encoding;
+
+    /**
+     * The number of threads to use for extracting entries of each AMP - a value of less than 1 uses as many threads as there are
+     * available processors.
+     */
+    @Parameter(property = "aco6alf.installAmps.extractionThreadCount", defaultValue = "1")
+    protected int extractionThreadCount;
+
+    /**
+     * The number of threads writing extracted files while a single thread reads and inflates the entries of each AMP - a value of less
+     * than 1 disables pipelined extraction. Only used if entries are not extracted by multiple threads.
+     */
+    @Parameter(property = "aco6alf.installAmps.pipelineWriterThreadCount", defaultValue = "0")
+    protected int pipelineWriterThreadCount;
+
+    /**
+     * Whether to only write files which differ from a previous install of the same modules.
+     */
+    @Parameter(property = "aco6alf.installAmps.deltaInstall", defaultValue = "false")
+    protected boolean deltaInstall;
+
+    /**
+     * Whether to back up existing files replaced by the AMPs, so that they can be restored when the modules are uninstalled via the
+     * uninstall-modules goal. Without backups, such files are retained as installed when uninstalling the modules.
+     */
+    @Parameter(property = "aco6alf.installAmps.backupReplacedFiles", defaultValue = "false")
+    protected boolean backupReplacedFiles;
+
+    /**
+     * Whether to skip checking the dependencies of modules against the modules installed in the web application.
+     */
+    @Parameter(property = "aco6alf.installAmps.skipDependencyCheck", defaultValue = "false")
+    protected boolean skipDependencyCheck;
+
+    /**
+     * The file to which to write a JSON summary of the phase timings and entry / byte counters of all AMP installs.
+     */
+    @Parameter(property = "aco6alf.installAmps.metricsFile", defaultValue = "${project.build.directory}/amp-install-metrics.json")
+    protected File metricsFile;
+
+    /**
+     * The directory of a local cache of extracted AMPs, shared between builds. If set, AMPs installed into an exploded web application
+     * are only extracted once into the cache and subsequently installed by copying the cached files into the web application.
+     */
+    @Parameter(property = "aco6alf.installAmps.extractionCacheDirectory")
+    protected File extractionCacheDirectory;
+
+    /**
+     * Whether to hard link files from the cache of extracted AMPs into the web application instead of copying them. This must only be
+     * enabled if files of the web application are never modified in place, e.g. by resource filtering or overlays, as such
+     * modifications would also affect the cache.
+     */
+    @Parameter(property = "aco6alf.installAmps.linkExtractionCacheFiles", defaultValue = "false")
+    protected boolean linkExtractionCacheFiles;
+
+    @Parameter(property = "aco6alf.installAmps.skip", defaultValue = "false")
+    protected boolean skip;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() throws MojoExecutionException
+    {
+        if (this.skip)
+        {
+            this.getLog().info("Skipping installation of AMPs");
+            return;
+        }
+
+        final List<File> ampFiles = new ArrayList<>();
+        if (this.includeAmpDependencies && this.projectArtifacts != null)
+        {
+            for (final Artifact artifact : this.projectArtifacts)
+            {
+                if ("amp".equals(artifact.getType()) && artifact.getFile() != null)
+                {
+                    ampFiles.add(artifact.getFile());
+                }
+            }
+        }
+        if (this.amps != null)
+        {
+            ampFiles.addAll(this.amps);
+        }
+
+        if (ampFiles.isEmpty())
+        {
+            this.getLog().info("No AMPs to install");
+            return;
+        }
+
+        final AmpBatchInstaller installer = new AmpBatchInstaller(ampFiles);
+        installer.setEncoding(this.encoding);
+        installer.setExtractionThreadCount(this.extractionThreadCount);
+        installer.setPipelineWriterThreadCount(this.pipelineWriterThreadCount);
+        installer.setDeltaInstall(this.deltaInstall);
+        installer.setBackupReplacedFiles(this.backupReplacedFiles);
+        installer.setSkipDependencyCheck(this.skipDependencyCheck);
+        installer.setMetricsFile(this.metricsFile);
+        installer.setExtractionCacheDirectory(this.extractionCacheDirectory);
+        installer.setLinkExtractionCacheFiles(this.linkExtractionCacheFiles);
+
+        try
+        {
+            installer.install(this.target);
+        }
+        catch (final ArchiverException aex)
+        {
+            throw new MojoExecutionException("Failed to install AMPs into " + this.target, aex);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.mojo;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+import de.acosix.alfresco.maven.plugins.archiver.ModuleUninstaller;
+
+/**
+ * Uninstalls modules from an exploded web application, restoring exactly the files recorded in the install manifests of the modules. Files
+ * which replaced existing files of the web application without a backup cannot be restored and are retained, listing them in a warning.
+ *
+ * @author Axel Faust
+ */
+@Mojo(name = "uninstall-modules", threadSafe = true)
+public class UninstallModulesMojo extends AbstractMojo
+{
+
+    /**
+     * The root directory of the exploded web application to uninstall from.
+     */
+    @Parameter(property = "aco6alf.uninstallModules.target", required = true)
+    protected File target;
+
+    /**
+     * The IDs or aliases of the modules to uninstall, in the order in which to uninstall them.
+     */
+    @Parameter(property = "aco6alf.uninstallModules.modules", required = true)
+    protected List<String> modules;
+
+    /**
+     * Whether to skip checking that no other installed module depends on a module to uninstall.
+     */
+    @Parameter(property = "aco6alf.uninstallModules.skipDependencyCheck", defaultValue = "false")
+    protected boolean skipDependencyCheck;
+
+    @Parameter(property = "aco6alf.uninstallModules.skip", defaultValue = "false")
+    protected boolean skip;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() throws MojoExecutionException
+    {
+        if (this.skip)
+        {
+            this.getLog().info("Skipping uninstallation of modules");
+            return;
+        }
+
+        final ModuleUninstaller uninstaller = new ModuleUninstaller(this.target);
+        uninstaller.setSkipDependencyCheck(this.skipDependencyCheck);
+
+        for (final String module : this.modules)
+        {
+            try
+            {
+                final List<String> unrestorablePaths = uninstaller.uninstall(module);
+                if (!unrestorablePaths.isEmpty())
+                {
+                    this.getLog().warn("Retained " + unrestorablePaths.size() + " files of " + module
+                            + " which replaced files of the web application without a backup, and need to be restored manually: "
+                            + unrestorablePaths);
+                }
+            }
+            catch (final ArchiverException aex)
+            {
+                throw new MojoExecutionException("Failed to uninstall " + module + " from " + this.target, aex);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Axel Faust
+ */
+public class AmpUnArchiverTest
+{
+
+    private static final String MODULE_ID = "mod.a";
+
+    private static final int FILE_COUNT = 200;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File ampFile;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.ampFile = ArchiverTestFixtures.amp(this.temporaryFolder.newFile("a.amp"), MODULE_ID, FILE_COUNT);
+    }
+
+    @Test
+    public void parallelAndPipelinedExtractionMatchSequentialExtraction() throws IOException
+    {
+        final File sequential = ArchiverTestFixtures.webapp(this.temporaryFolder.newFolder("sequential"));
+        this.newUnArchiver(sequential).extract();
+        final Map<String, String> expectedFiles = ArchiverTestFixtures.files(sequential);
+        assertEquals(FILE_COUNT + 1, expectedFiles.size());
+
+        final File parallel = ArchiverTestFixtures.webapp(this.temporaryFolder.newFolder("parallel"));
+        final AmpUnArchiver parallelUnArchiver = this.newUnArchiver(parallel);
+        parallelUnArchiver.setExtractionThreadCount(4);
+        parallelUnArchiver.extract();
+        assertEquals(expectedFiles, ArchiverTestFixtures.files(parallel));
+
+        final File pipelined = ArchiverTestFixtures.webapp(this.temporaryFolder.newFolder("pipelined"));
+        final AmpUnArchiver pipelinedUnArchiver = this.newUnArchiver(pipelined);
+        pipelinedUnArchiver.setPipelineWriterThreadCount(2);
+        pipelinedUnArchiver.extract();
+        assertEquals(expectedFiles, ArchiverTestFixtures.files(pipelined));
+    }
+
+    @Test
+    public void deltaInstallOnlyWritesChangedFiles() throws IOException
+    {
+        final File webappDirectory = ArchiverTestFixtures.webapp(this.temporaryFolder.newFolder("webapp"));
+        this.newUnArchiver(webappDirectory).extract();
+        final Map<String, String> expectedFiles = ArchiverTestFixtures.files(webappDirectory);
+
+        final Path modifiedFile = webappDirectory.toPath().resolve(ArchiverTestFixtures.SHARED_PATH + "f7.xml");
+        Files.write(modifiedFile, "<config modified=\"true\" />\n".getBytes(StandardCharsets.UTF_8));
+
+        final AmpUnArchiver unArchiver = this.newUnArchiver(webappDirectory);
+        unArchiver.setDeltaInstall(true);
+        unArchiver.extract();
+
+        // module.properties is always written as its installed state differs from the AMP
+        assertEquals(FILE_COUNT - 1, unArchiver.getInstallMetrics().getEntriesSkipped());
+        assertEquals(2, unArchiver.getInstallMetrics().getEntriesWritten());
+        assertArrayEquals(ArchiverTestFixtures.content(MODULE_ID, 7), Files.readAllBytes(modifiedFile));
+        assertEquals(expectedFiles, ArchiverTestFixtures.files(webappDirectory));
+    }
+
+    private AmpUnArchiver newUnArchiver(final File webappDirectory)
+    {
+        final AmpUnArchiver unArchiver = new AmpUnArchiver(this.ampFile);
+        unArchiver.setDestDirectory(webappDirectory);
+        return unArchiver;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Provides the AMPs and web applications used by the tests of the archiver classes.
+ *
+ * @author Axel Faust
+ */
+final class ArchiverTestFixtures
+{
+
+    static final String SHARED_PATH = "WEB-INF/classes/alfresco/shared/";
+
+    private ArchiverTestFixtures()
+    {
+        // no instances
+    }
+
+    /**
+     * Creates a minimal exploded web application.
+     *
+     * @param directory
+     *            the directory of the web application
+     * @return the directory of the web application
+     */
+    static File webapp(final File directory) throws IOException
+    {
+        final Path versionProperties = directory.toPath().resolve("WEB-INF/classes/alfresco/version.properties");
+        Files.createDirectories(versionProperties.getParent());
+        Files.write(versionProperties, "version.major=7\nversion.minor=4\nversion.revision=0\n".getBytes(StandardCharsets.UTF_8));
+        return directory;
+    }
+
+    /**
+     * Creates an AMP with a number of configuration files, which are extracted into {@link #SHARED_PATH} as {@code f<index>.xml}.
+     *
+     * @param ampFile
+     *            the AMP to create
+     * @param moduleId
+     *            the ID of the module
+     * @param fileCount
+     *            the number of configuration files
+     * @return the AMP
+     */
+    static File amp(final File ampFile, final String moduleId, final int fileCount) throws IOException
+    {
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(ampFile)))
+        {
+            zos.putNextEntry(new ZipEntry(AmpUnArchiver.MODULE_PROPERTIES));
+            zos.write(("module.id=" + moduleId + "\nmodule.version=1.0\nmodule.title=" + moduleId + "\nmodule.description=Test module\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+
+            for (int idx = 0; idx < fileCount; idx++)
+            {
+                zos.putNextEntry(new ZipEntry("config/alfresco/shared/f" + idx + ".xml"));
+                zos.write(content(moduleId, idx));
+                zos.closeEntry();
+            }
+        }
+        return ampFile;
+    }
+
+    /**
+     * Provides the content of a configuration file in an AMP created via {@link #amp(File, String, int) amp}.
+     *
+     * @param moduleId
+     *            the ID of the module
+     * @param index
+     *            the index of the file
+     * @return the content of the file
+     */
+    static byte[] content(final String moduleId, final int index)
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("<config module=\"").append(moduleId).append("\">\n");
+        for (int line = 0; line < 10 + index % 50; line++)
+        {
+            builder.append("    <entry index=\"").append(index).append("\" line=\"").append(line).append("\" />\n");
+        }
+        builder.append("</config>\n");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the files of a web application apart from the module metadata, which is retained after modules have been uninstalled.
+     *
+     * @param webappDirectory
+     *            the directory of the web application
+     * @return the content of the files keyed by their path relative to the web application
+     */
+    static Map<String, String> files(final File webappDirectory) throws IOException
+    {
+        final Path webappPath = webappDirectory.toPath();
+        final Path modulePath = webappPath.resolve(AmpUnArchiver.MODULE_DIRECTORY);
+        final Map<String, String> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(webappPath))
+        {
+            for (final Path path : (Iterable<Path>) paths::iterator)
+            {
+                if (Files.isRegularFile(path) && !path.startsWith(modulePath))
+                {
+                    files.put(webappPath.relativize(path).toString().replace(File.separatorChar, '/'),
+                            new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return files;
+    }
+}
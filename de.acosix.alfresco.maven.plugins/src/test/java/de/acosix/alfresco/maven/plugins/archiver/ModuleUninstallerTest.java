@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 - 2025 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.maven.plugins.archiver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Axel Faust
+ */
+public class ModuleUninstallerTest
+{
+
+    private static final String ORIGINAL_CONTENT = "<config module=\"webapp\" />\n";
+
+    private static final int OVERLAPPING_INDEX = 5;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File webappDirectory;
+
+    private Path overlappingFile;
+
+    private Map<String, String> originalFiles;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.webappDirectory = ArchiverTestFixtures.webapp(this.temporaryFolder.newFolder("webapp"));
+        this.overlappingFile = this.webappDirectory.toPath().resolve(ArchiverTestFixtures.SHARED_PATH + "f" + OVERLAPPING_INDEX + ".xml");
+        Files.createDirectories(this.overlappingFile.getParent());
+        Files.write(this.overlappingFile, ORIGINAL_CONTENT.getBytes(StandardCharsets.UTF_8));
+        this.originalFiles = ArchiverTestFixtures.files(this.webappDirectory);
+    }
+
+    @Test
+    public void uninstallRestoresReplacedFile() throws IOException
+    {
+        this.install(ArchiverTestFixtures.amp(this.temporaryFolder.newFile("a.amp"), "mod.a", 20), true);
+        assertArrayEquals(ArchiverTestFixtures.content("mod.a", OVERLAPPING_INDEX), Files.readAllBytes(this.overlappingFile));
+
+        final List<String> retainedPaths = new ModuleUninstaller(this.webappDirectory).uninstall("mod.a");
+
+        assertEquals(Collections.emptyList(), retainedPaths);
+        assertEquals(this.originalFiles, ArchiverTestFixtures.files(this.webappDirectory));
+    }
+
+    @Test
+    public void uninstallRetainsFileReplacedWithoutBackup() throws IOException
+    {
+        this.install(ArchiverTestFixtures.amp(this.temporaryFolder.newFile("a.amp"), "mod.a", 20), false);
+
+        final List<String> retainedPaths = new ModuleUninstaller(this.webappDirectory).uninstall("mod.a");
+
+        final String overlappingPath = ArchiverTestFixtures.SHARED_PATH + "f" + OVERLAPPING_INDEX + ".xml";
+        assertEquals(Collections.singletonList(overlappingPath), retainedPaths);
+        assertArrayEquals(ArchiverTestFixtures.content("mod.a", OVERLAPPING_INDEX), Files.readAllBytes(this.overlappingFile));
+
+        final Map<String, String> files = ArchiverTestFixtures.files(this.webappDirectory);
+        files.remove(overlappingPath);
+        final Map<String, String> expectedFiles = this.originalFiles;
+        expectedFiles.remove(overlappingPath);
+        assertEquals(expectedFiles, files);
+    }
+
+    @Test
+    public void uninstallHandsOverBackupToModuleInstalledLater() throws IOException
+    {
+        this.install(ArchiverTestFixtures.amp(this.temporaryFolder.newFile("a.amp"), "mod.a", 20), true);
+        this.install(ArchiverTestFixtures.amp(this.temporaryFolder.newFile("b.amp"), "mod.b", 10), true);
+
+        // module B holds a backup of the file of module A, while module A holds the backup of the original file
+        final ModuleUninstaller uninstaller = new ModuleUninstaller(this.webappDirectory);
+        assertEquals(Collections.emptyList(), uninstaller.uninstall("mod.a"));
+        assertArrayEquals(ArchiverTestFixtures.content("mod.b", OVERLAPPING_INDEX), Files.readAllBytes(this.overlappingFile));
+        // files only installed by module A are removed
+        assertFalse(Files.exists(this.webappDirectory.toPath().resolve(ArchiverTestFixtures.SHARED_PATH + "f15.xml")));
+
+        assertEquals(Collections.emptyList(), uninstaller.uninstall("mod.b"));
+        assertEquals(this.originalFiles, ArchiverTestFixtures.files(this.webappDirectory));
+    }
+
+    private void install(final File ampFile, final boolean backupReplacedFiles)
+    {
+        final AmpUnArchiver unArchiver = new AmpUnArchiver(ampFile);
+        unArchiver.setDestDirectory(this.webappDirectory);
+        unArchiver.setBackupReplacedFiles(backupReplacedFiles);
+        unArchiver.extract();
+    }
+}